@@ -1,12 +1,22 @@
 package com.hason.shorturl;
 
-import com.hason.shorturl.http.HttpClientUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.hason.shorturl.http.common.Deadline;
 import com.hason.shorturl.http.common.HttpConfig;
 import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.commons.lang3.Validate;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * URL 转换器的抽象骨架类，支持同时转换多个 URL
@@ -18,34 +28,360 @@ import java.util.Map;
  * @date 2018/6/15
  */
 public abstract class AbstractHttpMultiUrlConverter extends AbstractHttpUrlConverter
-        implements MultiUrlConverter {
+        implements StreamingUrlConverter {
+
+    /** 默认的流式转换窗口大小 */
+    private static final int DEFAULT_STREAM_WINDOW = 1000;
+
+    /** 默认每种操作缓存的网址数 */
+    private static final long DEFAULT_RESULT_CACHE_SIZE = 10000;
+
+    /** 转换结果的本地缓存，按操作划分，为 null 时不缓存 */
+    private final Map<UrlOperation, Cache<String, String>> resultCaches = new EnumMap<>(UrlOperation.class);
+
+    /** 流式转换时每次读取的网址数 */
+    private volatile int streamWindow = DEFAULT_STREAM_WINDOW;
+
+    protected AbstractHttpMultiUrlConverter() {
+        setResultCacheSize(DEFAULT_RESULT_CACHE_SIZE);
+    }
 
     @Override
     public Map<String, String> shorten(Collection<String> longUrls) {
-        try {
-            return handleShorten(HttpClientUtil.send(shortenConfig(longUrls)));
-        } catch (HttpProcessException e) {
-            throw new UrlConvertException("调用 API 缩短网址失败", e);
-        }
+        return shorten(longUrls, null);
     }
 
     @Override
     public Map<String, String> lengthen(Collection<String> shortUrls) {
-        try {
-            return handleLengthen(HttpClientUtil.send(lengthenConfig(shortUrls)));
-        } catch (HttpProcessException e) {
-            throw new UrlConvertException("调用 API 还原网址失败", e);
+        return lengthen(shortUrls, null);
+    }
+
+    @Override
+    public void shorten(Iterator<String> longUrls, ResultSink sink) {
+        shorten(longUrls, sink, null, Priority.BULK);
+    }
+
+    @Override
+    public void lengthen(Iterator<String> shortUrls, ResultSink sink) {
+        lengthen(shortUrls, sink, null, Priority.BULK);
+    }
+
+    /**
+     * 流式缩短网址，每次读取 {@link #getStreamWindow()} 个网址批量转换后回调 sink
+     *
+     * @param longUrls 待缩短的网址
+     * @param sink     结果接收器，每个输入网址回调一次
+     * @param deadline 截止时间，为 null 时不限制
+     * @param priority 优先级
+     * @throws UrlConvertException 舱壁已满、熔断等无法发送请求时抛出此异常，之前窗口的结果已回调
+     */
+    public void shorten(Iterator<String> longUrls, ResultSink sink, Deadline deadline, Priority priority) {
+        stream(UrlOperation.SHORTEN, longUrls, sink, deadline, priority);
+    }
+
+    /**
+     * 流式还原网址，每次读取 {@link #getStreamWindow()} 个网址批量转换后回调 sink
+     *
+     * @param shortUrls 短网址
+     * @param sink      结果接收器，每个输入网址回调一次
+     * @param deadline  截止时间，为 null 时不限制
+     * @param priority  优先级
+     * @throws UrlConvertException 舱壁已满、熔断等无法发送请求时抛出此异常，之前窗口的结果已回调
+     */
+    public void lengthen(Iterator<String> shortUrls, ResultSink sink, Deadline deadline, Priority priority) {
+        stream(UrlOperation.LENGTHEN, shortUrls, sink, deadline, priority);
+    }
+
+    private void stream(UrlOperation operation, Iterator<String> urls, ResultSink sink, Deadline deadline,
+                        Priority priority) {
+        Validate.notNull(urls, "urls");
+        Validate.notNull(sink, "sink");
+        int window = streamWindow;
+        List<String> chunk = new ArrayList<>(window);
+        while (urls.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < window && urls.hasNext()) {
+                chunk.add(urls.next());
+            }
+            BatchResult result = operation == UrlOperation.SHORTEN
+                    ? shortenBatch(chunk, deadline, priority) : lengthenBatch(chunk, deadline, priority);
+            result.forEach(chunk, sink);
+        }
+    }
+
+    /**
+     * 在截止时间内缩短网址，到期后中止请求
+     *
+     * @param longUrls 待缩短的网址集合
+     * @param deadline 截止时间，为 null 时不限制
+     * @return 缩短结果，{key: longUrl, value: Result}
+     * @throws UrlConvertException 如果失败抛出此异常
+     */
+    public Map<String, String> shorten(Collection<String> longUrls, Deadline deadline) {
+        return shorten(longUrls, deadline, Priority.BULK);
+    }
+
+    /**
+     * 在截止时间内还原网址，到期后中止请求
+     *
+     * @param shortUrls 短网址集合
+     * @param deadline  截止时间，为 null 时不限制
+     * @return 还原结果，{key: shortUrl, value: Result}
+     * @throws UrlConvertException 如果失败抛出此异常
+     */
+    public Map<String, String> lengthen(Collection<String> shortUrls, Deadline deadline) {
+        return lengthen(shortUrls, deadline, Priority.BULK);
+    }
+
+    /**
+     * 以指定优先级缩短网址，不同优先级使用各自的舱壁
+     *
+     * @param longUrls 待缩短的网址集合
+     * @param deadline 截止时间，为 null 时不限制
+     * @param priority 优先级
+     * @return 缩短结果，{key: longUrl, value: Result}
+     * @throws UrlConvertException 如果失败抛出此异常，部分失败时为 {@link BatchConvertException}
+     */
+    public Map<String, String> shorten(Collection<String> longUrls, Deadline deadline, Priority priority) {
+        return shortenBatch(longUrls, deadline, priority).getOrThrow();
+    }
+
+    /**
+     * 以指定优先级还原网址，不同优先级使用各自的舱壁
+     *
+     * @param shortUrls 短网址集合
+     * @param deadline  截止时间，为 null 时不限制
+     * @param priority  优先级
+     * @return 还原结果，{key: shortUrl, value: Result}
+     * @throws UrlConvertException 如果失败抛出此异常，部分失败时为 {@link BatchConvertException}
+     */
+    public Map<String, String> lengthen(Collection<String> shortUrls, Deadline deadline, Priority priority) {
+        return lengthenBatch(shortUrls, deadline, priority).getOrThrow();
+    }
+
+    /**
+     * 批量缩短网址，返回每个网址的结果或失败原因
+     * <p>
+     * 入参中重复的网址只转换一次，已缓存结果的网址不再请求，只重试失败的网址
+     *
+     * @param longUrls 待缩短的网址集合
+     * @param deadline 截止时间，为 null 时不限制
+     * @param priority 优先级
+     * @return 批量转换结果，包含入参中的每个网址
+     * @throws UrlConvertException 舱壁已满、熔断等无法发送请求时抛出此异常
+     */
+    public BatchResult shortenBatch(Collection<String> longUrls, Deadline deadline, Priority priority) {
+        return assembleBatch(UrlOperation.SHORTEN, longUrls, deadline, priority);
+    }
+
+    /**
+     * 批量还原网址，返回每个网址的结果或失败原因
+     * <p>
+     * 入参中重复的网址只转换一次，已缓存结果的网址不再请求，只重试失败的网址
+     *
+     * @param shortUrls 短网址集合
+     * @param deadline  截止时间，为 null 时不限制
+     * @param priority  优先级
+     * @return 批量转换结果，包含入参中的每个网址
+     * @throws UrlConvertException 舱壁已满、熔断等无法发送请求时抛出此异常
+     */
+    public BatchResult lengthenBatch(Collection<String> shortUrls, Deadline deadline, Priority priority) {
+        return assembleBatch(UrlOperation.LENGTHEN, shortUrls, deadline, priority);
+    }
+
+    /**
+     * 转换去重后且未缓存的网址，子类可重写以按服务提供方的限制分配到多个请求中
+     *
+     * @param longUrls 待缩短的网址，不重复
+     * @param deadline 截止时间，为 null 时不限制
+     * @param priority 优先级
+     * @return 批量转换结果
+     */
+    protected BatchResult doShortenBatch(List<String> longUrls, Deadline deadline, Priority priority) {
+        return convertBatch(UrlOperation.SHORTEN, longUrls, deadline, priority);
+    }
+
+    /**
+     * 转换去重后且未缓存的网址，子类可重写以按服务提供方的限制分配到多个请求中
+     *
+     * @param shortUrls 待还原的网址，不重复
+     * @param deadline  截止时间，为 null 时不限制
+     * @param priority  优先级
+     * @return 批量转换结果
+     */
+    protected BatchResult doLengthenBatch(List<String> shortUrls, Deadline deadline, Priority priority) {
+        return convertBatch(UrlOperation.LENGTHEN, shortUrls, deadline, priority);
+    }
+
+    /**
+     * 去重、查询缓存后只转换未命中的网址，再按入参顺序组装结果（子类可能打乱请求的顺序）
+     */
+    private BatchResult assembleBatch(UrlOperation operation, Collection<String> urls, Deadline deadline,
+                                      Priority priority) {
+        Validate.notNull(urls, "urls");
+        Set<String> unique = new LinkedHashSet<>(urls);
+        Cache<String, String> cache = resultCaches.get(operation);
+        Map<String, String> cached = cache == null
+                ? Collections.<String, String>emptyMap() : cache.getAllPresent(unique);
+        List<String> misses = new ArrayList<>(unique.size() - cached.size());
+        for (String url : unique) {
+            if (!cached.containsKey(url)) {
+                misses.add(url);
+            }
+        }
+        BatchResult fetched = misses.isEmpty() ? new BatchResult() : operation == UrlOperation.SHORTEN
+                ? doShortenBatch(misses, deadline, priority) : doLengthenBatch(misses, deadline, priority);
+        cacheResults(cache, fetched);
+        BatchResult result = new BatchResult();
+        for (String url : unique) {
+            String value = cached.get(url);
+            if (value == null) {
+                value = fetched.getResults().get(url);
+            }
+            if (value != null) {
+                result.success(url, value);
+            } else {
+                UrlConvertException cause = fetched.getFailures().get(url);
+                result.failure(url, cause != null ? cause
+                        : new ProviderErrorException("服务提供方未返回结果：" + url, null, false));
+            }
+        }
+        return result;
+    }
+
+    private static void cacheResults(Cache<String, String> cache, BatchResult result) {
+        if (cache != null) {
+            cache.putAll(result.getResults());
+        }
+    }
+
+    /**
+     * 在一个请求中转换一批网址
+     *
+     * <pre>
+     *   1. 单个网址的可重试错误：只把这些网址放入下一次请求
+     *   2. 整批的可重试错误（如系统繁忙）：整批重试
+     *   3. 整批的、可能由单个网址引起的错误（{@link #isUrlAttributable}）：对半拆分后分别请求，直到定位到出错的网址
+     *   4. 整批的其他不可重试错误（频率超限、鉴权失败、未知错误）：整批失败，拆分只会放大负载
+     *   5. 请求失败（网络错误、截止时间到期）：整批失败
+     * </pre>
+     *
+     * 整个过程（含重试、拆分）只向重试预算存入一次令牌
+     */
+    private BatchResult convertBatch(UrlOperation operation, List<String> urls, Deadline deadline, Priority priority) {
+        depositRetryBudget();
+        return sendBatch(operation, urls, deadline, priority);
+    }
+
+    private BatchResult sendBatch(UrlOperation operation, List<String> urls, Deadline deadline, Priority priority) {
+        BatchResult result = new BatchResult();
+        List<String> pending = urls;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            List<String> retry = new ArrayList<>();
+            ProviderErrorException retryCause = null;
+            BatchResponseHandler handler = new BatchResponseHandler(operation, pending);
+            try {
+                HttpConfig config = operation == UrlOperation.SHORTEN ? shortenConfig(pending) : lengthenConfig(pending);
+                BatchResult batch = send(operation, priority, budgetDeposited(config.deadline(deadline)), handler);
+                for (Map.Entry<String, String> entry : batch.getResults().entrySet()) {
+                    result.success(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry<String, UrlConvertException> entry : batch.getFailures().entrySet()) {
+                    UrlConvertException cause = entry.getValue();
+                    if (cause instanceof ProviderErrorException && ((ProviderErrorException) cause).isRetryable()) {
+                        retry.add(entry.getKey());
+                        retryCause = (ProviderErrorException) cause;
+                    } else {
+                        result.failure(entry.getKey(), cause);
+                    }
+                }
+                onBatchRequest(operation, pending.size(), handler.elapsedNanos,
+                        !batch.getResults().isEmpty() || retry.isEmpty());
+            } catch (HttpProcessException e) {
+                if (handler.elapsedNanos >= 0) {
+                    onBatchRequest(operation, pending.size(), handler.elapsedNanos, false);
+                }
+                UrlConvertException cause = new UrlConvertException(operation == UrlOperation.SHORTEN
+                        ? "调用 API 缩短网址失败" : "调用 API 还原网址失败", e);
+                for (String url : pending) {
+                    result.failure(url, cause);
+                }
+                return result;
+            } catch (ProviderErrorException e) {
+                if (e.isRetryable()) {
+                    onBatchRequest(operation, pending.size(), handler.elapsedNanos, false);
+                    retry = pending;
+                    retryCause = e;
+                } else if (pending.size() > 1 && isUrlAttributable(e)) {
+                    int half = pending.size() / 2;
+                    result.merge(sendBatch(operation, pending.subList(0, half), deadline, priority));
+                    result.merge(sendBatch(operation, pending.subList(half, pending.size()), deadline, priority));
+                    return result;
+                } else {
+                    for (String url : pending) {
+                        result.failure(url, e);
+                    }
+                }
+            }
+            if (!retry.isEmpty() && !awaitRetry(retryCause, attempt, deadline)) {
+                for (String url : retry) {
+                    result.failure(url, retryCause);
+                }
+                break;
+            }
+            pending = retry;
+        }
+        return result;
+    }
+
+    /**
+     * 设置流式转换时每次读取的网址数，即同时在内存中的最大网址数
+     */
+    public void setStreamWindow(int streamWindow) {
+        Validate.isTrue(streamWindow > 0, "streamWindow 必须大于 0");
+        this.streamWindow = streamWindow;
+    }
+
+    /**
+     * 获取流式转换时每次读取的网址数
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * 设置转换结果的本地缓存大小，缩短、还原各自缓存，0 表示不缓存
+     * <p>
+     * 同一网址的转换结果不变，批量转换时已缓存的网址不再请求服务提供方
+     *
+     * @param maxSize 每种操作缓存的最大网址数
+     */
+    public void setResultCacheSize(long maxSize) {
+        Validate.isTrue(maxSize >= 0, "maxSize 不能小于 0");
+        for (UrlOperation operation : UrlOperation.values()) {
+            resultCaches.put(operation, maxSize == 0 ? null
+                    : CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().<String, String>build());
         }
     }
 
+    /**
+     * 获取转换结果缓存的统计信息，未开启缓存时返回 null
+     *
+     * @param operation 转换操作
+     */
+    public CacheStats getResultCacheStats(UrlOperation operation) {
+        Cache<String, String> cache = resultCaches.get(operation);
+        return cache == null ? null : cache.stats();
+    }
+
     @Override
-    public String shorten(String longUrl) {
-        return shorten(Collections.singleton(longUrl)).get(longUrl);
+    public String shorten(String longUrl, Deadline deadline) {
+        return shorten(Collections.singleton(longUrl), deadline, Priority.INTERACTIVE).get(longUrl);
     }
 
     @Override
-    public String lengthen(String shortUrl) {
-        return lengthen(Collections.singleton(shortUrl)).get(shortUrl);
+    public String lengthen(String shortUrl, Deadline deadline) {
+        return lengthen(Collections.singleton(shortUrl), deadline, Priority.INTERACTIVE).get(shortUrl);
     }
 
     @Override
@@ -116,6 +452,113 @@ public abstract class AbstractHttpMultiUrlConverter extends AbstractHttpUrlConve
      */
     protected abstract Map<String, String> handleLengthen(String result);
 
+    /**
+     * 处理 API 返回内容，按入参网址返回每个网址的结果或失败原因
+     * <p>
+     * 默认以 {@link #handleShorten(String)} 的结果为准，结果中缺少的网址视为不可重试的失败。
+     * 整批失败时抛出 {@link ProviderErrorException}
+     *
+     * @param result   HTTP API 返回内容
+     * @param longUrls 本次请求的网址
+     * @return 批量转换结果
+     */
+    protected BatchResult handleShortenBatch(String result, List<String> longUrls) {
+        return toBatchResult(handleShorten(result), longUrls);
+    }
+
+    /**
+     * 处理 API 返回内容，按入参网址返回每个网址的结果或失败原因
+     * <p>
+     * 默认以 {@link #handleLengthen(String)} 的结果为准，结果中缺少的网址视为不可重试的失败。
+     * 整批失败时抛出 {@link ProviderErrorException}
+     *
+     * @param result    HTTP API 返回内容
+     * @param shortUrls 本次请求的网址
+     * @return 批量转换结果
+     */
+    protected BatchResult handleLengthenBatch(String result, List<String> shortUrls) {
+        return toBatchResult(handleLengthen(result), shortUrls);
+    }
+
+    /**
+     * 每个批量请求完成后回调，可用于按实测延迟调整批量大小，默认不处理
+     * <p>
+     * 整批的不可重试错误（频率超限、参数错误等）与服务端负载无关，不回调；
+     * 舱壁已满或熔断中未发出请求时也不回调
+     *
+     * @param operation    转换操作
+     * @param size         本次请求的网址数
+     * @param elapsedNanos 传输层调用的耗时，不含舱壁排队、熔断判断与解析，单位-纳秒
+     * @param success      是否正常返回；请求失败（超时等）、整批或全部网址可重试失败（服务繁忙等）时为 false
+     */
+    protected void onBatchRequest(UrlOperation operation, int size, long elapsedNanos, boolean success) {
+    }
+
+    /**
+     * 整批失败的错误是否可能由其中某个网址引起（如网址无效），是则对半拆分定位出错的网址
+     * <p>
+     * 默认为 false：频率超限、鉴权失败及未知错误拆分后重发只会放大负载
+     *
+     * @param e 整批失败的错误
+     */
+    protected boolean isUrlAttributable(ProviderErrorException e) {
+        return false;
+    }
+
+    /**
+     * 在熔断器的统计范围内解析批量响应，全部网址均为可重试失败（如逐个返回系统繁忙）时视为整批失败
+     */
+    private class BatchResponseHandler implements ResponseHandler<BatchResult> {
+
+        private final UrlOperation operation;
+        private final List<String> urls;
+        /** 传输层调用的耗时，未发出请求时为 -1 */
+        private long elapsedNanos = -1;
+
+        private BatchResponseHandler(UrlOperation operation, List<String> urls) {
+            this.operation = operation;
+            this.urls = urls;
+        }
+
+        @Override
+        public void onTransport(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public BatchResult handle(String response) {
+            BatchResult batch = operation == UrlOperation.SHORTEN
+                    ? handleShortenBatch(response, urls) : handleLengthenBatch(response, urls);
+            if (!batch.getResults().isEmpty()) {
+                return batch;
+            }
+            ProviderErrorException cause = null;
+            for (UrlConvertException failure : batch.getFailures().values()) {
+                if (!(failure instanceof ProviderErrorException) || !((ProviderErrorException) failure).isRetryable()) {
+                    return batch;
+                }
+                cause = (ProviderErrorException) failure;
+            }
+            if (cause != null) {
+                throw cause;
+            }
+            return batch;
+        }
+    }
+
+    private static BatchResult toBatchResult(Map<String, String> map, List<String> urls) {
+        BatchResult result = new BatchResult();
+        for (String url : urls) {
+            String value = map.get(url);
+            if (value != null) {
+                result.success(url, value);
+            } else {
+                result.failure(url, new ProviderErrorException("服务提供方未返回结果：" + url, null, false));
+            }
+        }
+        return result;
+    }
+
     /**
      * 缩短网址的请求配置
      *
@@ -1,64 +1,331 @@
 package com.hason.shorturl;
 
 import com.hason.shorturl.util.ExceptionUtil;
-import com.hason.shorturl.http.HttpClientUtil;
+import com.hason.shorturl.http.HttpClientRegistry;
 import com.hason.shorturl.http.builder.HCB;
+import com.hason.shorturl.http.common.Deadline;
 import com.hason.shorturl.http.common.HttpConfig;
 import com.hason.shorturl.http.common.HttpHeader;
 import com.hason.shorturl.http.common.HttpMethod;
 import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.policy.Bulkhead;
+import com.hason.shorturl.http.policy.CircuitBreaker;
+import com.hason.shorturl.http.policy.HedgingPolicy;
+import com.hason.shorturl.http.policy.RetryPolicy;
+import com.hason.shorturl.http.pool.ConnectionWarmer;
+import com.hason.shorturl.http.pool.InstrumentedConnectionManager;
+import com.hason.shorturl.http.transport.ApacheTransport;
+import com.hason.shorturl.http.transport.Transport;
+import com.hason.shorturl.http.transport.TransportResponse;
+import org.apache.commons.lang3.Validate;
 import org.apache.http.Header;
 import org.apache.http.client.HttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 /**
  * URL 转换器的抽象骨架类，基于 Apache HttpClient + JSON 实现第三方接口转换短网址
  *
+ * 默认从 {@link HttpClientRegistry} 租用共享的 client，所有实例共用一个连接池，
+ * 不再使用时调用 {@link #close()} 释放租约
+ *
  * @date 2018/6/13
  */
-public abstract class AbstractHttpUrlConverter implements UrlConverter {
+public abstract class AbstractHttpUrlConverter implements UrlConverter, Closeable {
 
     /** 连接数 */
-    private static final int MAX_POOL_SIZE = 100;
+    private static final int MAX_POOL_SIZE = HttpClientRegistry.DEFAULT_POOL_SIZE;
+
+    /** 交互式调用的舱壁排队时间，单位-毫秒 */
+    private static final long INTERACTIVE_MAX_WAIT = 1000;
+
+    /** 批量调用的舱壁排队时间，单位-毫秒 */
+    private static final long BULK_MAX_WAIT = 30000;
 
     /** 客户端 */
     private HttpClient client;
 
+    /** 共享客户端的租约，使用自定义客户端时为 null */
+    private HttpClientRegistry.Lease lease;
+
+    /**
+     * 舱壁，按 [操作][优先级] 划分连接池配额，为 null 时不限制
+     * 默认交互式调用各占 30%，批量调用各占 20%，合计不超过连接池大小；
+     * 默认舱壁由租用共享 client 的所有转换器共用，多个实例合计也不会超过配额
+     */
+    private final Bulkhead[][] bulkheads = new Bulkhead[UrlOperation.values().length][Priority.values().length];
+
+    /** 熔断器，为 null 时不熔断；默认熔断器按服务提供方由租用共享 client 的所有转换器共用 */
+    private CircuitBreaker circuitBreaker;
+
+    /** 对冲策略，为 null 时不对冲 */
+    private HedgingPolicy hedgingPolicy;
+
+    /** 传输层，默认使用 Apache HttpClient */
+    private volatile Transport transport = ApacheTransport.INSTANCE;
+
+    /** 重试策略，与客户端共享重试预算 */
+    private RetryPolicy retryPolicy;
+
     private static final String METHOD = HttpMethod.GET.getName();
 
     private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
 
+    /** 原样返回响应内容 */
+    private static final ResponseHandler<String> AS_STRING = new ResponseHandler<String>() {
+        @Override
+        public String handle(String response) {
+            return response;
+        }
+
+        @Override
+        public void onTransport(long elapsedNanos) {
+        }
+    };
+
+    /** 声明支持 gzip、deflate 压缩，批量转换的响应由传输层流式解压 */
     private static final Header[] HEADERS
-            = HttpHeader.custom().contentType(CONTENT_TYPE).build();
+            = HttpHeader.custom().contentType(CONTENT_TYPE).acceptEncoding("gzip, deflate").build();
 
     protected AbstractHttpUrlConverter() {
         try {
-            client = HCB.custom()
-                    .ssl()
-                    .pool(MAX_POOL_SIZE, MAX_POOL_SIZE)
-                    .build();
+            HttpClientRegistry registry = HttpClientRegistry.getInstance();
+            lease = registry.acquireDefault();
+            client = lease.getClient();
+            retryPolicy = registry.getDefaultRetryPolicy();
         } catch (HttpProcessException e) {
             throw ExceptionUtil.unchecked(e);
         }
+        circuitBreaker = lease.circuitBreaker(getClass().getSimpleName());
+        for (UrlOperation operation : UrlOperation.values()) {
+            setBulkhead(operation, Priority.INTERACTIVE, lease.bulkhead(operation + "-" + Priority.INTERACTIVE,
+                    MAX_POOL_SIZE * 3 / 10, INTERACTIVE_MAX_WAIT));
+            setBulkhead(operation, Priority.BULK, lease.bulkhead(operation + "-" + Priority.BULK,
+                    MAX_POOL_SIZE / 5, BULK_MAX_WAIT));
+        }
     }
 
     @Override
     public String shorten(String longUrl) {
+        return shorten(longUrl, null);
+    }
+
+    @Override
+    public String lengthen(String shortUrl) {
+        return lengthen(shortUrl, null);
+    }
+
+    /**
+     * 在截止时间内缩短网址，到期后中止请求
+     *
+     * @param longUrl  待缩短的网址
+     * @param deadline 截止时间，为 null 时不限制
+     * @return 缩短结果
+     * @throws UrlConvertException 如果失败抛出此异常
+     */
+    public String shorten(String longUrl, Deadline deadline) {
         try {
-            return HttpClientUtil.send(shortenConfig(longUrl));
+            return send(UrlOperation.SHORTEN, Priority.INTERACTIVE, shortenConfig(longUrl).deadline(deadline));
         } catch (HttpProcessException e) {
             throw ExceptionUtil.unchecked(e);
         }
     }
 
-    @Override
-    public String lengthen(String shortUrl) {
+    /**
+     * 在截止时间内还原网址，到期后中止请求
+     *
+     * @param shortUrl 短网址
+     * @param deadline 截止时间，为 null 时不限制
+     * @return 还原结果
+     * @throws UrlConvertException 如果失败抛出此异常
+     */
+    public String lengthen(String shortUrl, Deadline deadline) {
         try {
-            return HttpClientUtil.send(lengthenConfig(shortUrl));
+            return send(UrlOperation.LENGTHEN, Priority.INTERACTIVE, lengthenConfig(shortUrl).deadline(deadline));
         } catch (HttpProcessException e) {
             throw ExceptionUtil.unchecked(e);
         }
     }
 
+    /**
+     * 依次经过舱壁、熔断器发送请求
+     *
+     * 舱壁排队超时抛出 {@link BulkheadFullException}，
+     * 熔断器打开时不占用连接和线程，直接抛出 {@link CircuitBreakerOpenException}
+     *
+     * @param operation 转换操作
+     * @param priority  优先级
+     * @param config    请求配置
+     * @return 返回处理结果
+     * @throws HttpProcessException http处理异常
+     */
+    protected String send(UrlOperation operation, Priority priority, HttpConfig config) throws HttpProcessException {
+        return send(operation, priority, config, AS_STRING);
+    }
+
+    /**
+     * 依次经过舱壁、熔断器发送请求，并在熔断器的统计范围内解析响应
+     *
+     * @param operation 转换操作
+     * @param priority  优先级
+     * @param config    请求配置
+     * @param handler   响应处理器
+     * @return 返回处理结果
+     * @throws HttpProcessException http处理异常
+     */
+    protected <T> T send(UrlOperation operation, Priority priority, HttpConfig config, ResponseHandler<T> handler)
+            throws HttpProcessException {
+        Bulkhead bulkhead = bulkheads[operation.ordinal()][priority.ordinal()];
+        if (bulkhead == null) {
+            return sendThroughBreaker(config, handler);
+        }
+        Deadline deadline = config.deadline();
+        long waitMillis = deadline == null ? bulkhead.getMaxWaitMillis() : deadline.remaining(TimeUnit.MILLISECONDS);
+        try {
+            if (!bulkhead.tryAcquire(waitMillis)) {
+                throw new BulkheadFullException("舱壁已满，排队超时：" + bulkhead.getName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HttpProcessException(e);
+        }
+        try {
+            return sendThroughBreaker(config, handler);
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * 经过熔断器发送请求，以下情况计为失败：
+     * <pre>
+     *   1. 请求失败（网络错误、超时）
+     *   2. 响应状态码为 5xx 或 429
+     *   3. 解析响应时抛出可重试的 {@link ProviderErrorException}（如系统繁忙）
+     * </pre>
+     * 耗时只统计传输层的调用，不含解析，并通过 {@link ResponseHandler#onTransport} 告知处理器
+     */
+    private <T> T sendThroughBreaker(HttpConfig config, ResponseHandler<T> handler) throws HttpProcessException {
+        CircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException("服务熔断中，快速失败：" + breaker.getName());
+        }
+        long start = System.nanoTime();
+        long duration = 0;
+        boolean success = false;
+        try {
+            TransportResponse response;
+            try {
+                response = doSend(config);
+            } finally {
+                duration = System.nanoTime() - start;
+                handler.onTransport(duration);
+            }
+            success = !isUnavailable(response.getStatusCode());
+            try {
+                return handler.handle(response.asString(config.outenc()));
+            } catch (ProviderErrorException e) {
+                success &= !e.isRetryable();
+                throw e;
+            }
+        } finally {
+            if (breaker != null) {
+                if (success) {
+                    breaker.onSuccess(duration);
+                } else {
+                    breaker.onError(duration);
+                }
+            }
+        }
+    }
+
+    /**
+     * 服务端不可用（5xx）或请求过多（429）
+     */
+    private static boolean isUnavailable(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * 预热连接：并行建立到服务提供方的连接并放入连接池，建议在创建转换器后、流量到来前调用
+     * <p>
+     * 仅对共享的默认客户端生效，使用自定义客户端时直接返回 null
+     *
+     * @param connectionsPerRoute 每个路由预热的连接数
+     * @param timeoutMillis       建立连接的超时时间，单位-毫秒
+     * @return 预热结果，包含预热耗时
+     */
+    public ConnectionWarmer.WarmUpResult warmUp(int connectionsPerRoute, int timeoutMillis) {
+        InstrumentedConnectionManager manager = lease == null
+                ? null : HttpClientRegistry.getInstance().getDefaultConnectionManager();
+        if (manager == null) {
+            return null;
+        }
+        return ConnectionWarmer.warmUp(manager, getWarmUpUris(), connectionsPerRoute, timeoutMillis);
+    }
+
+    /**
+     * 需要预热连接的服务地址，默认不预热
+     */
+    protected Collection<String> getWarmUpUris() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 记录一次逻辑请求，向重试预算存入令牌，与使用的传输层无关
+     *
+     * 逻辑请求内的各次 HTTP 请求应通过 {@link #budgetDeposited} 标记，避免客户端的重试拦截器重复存入
+     */
+    protected void depositRetryBudget() {
+        RetryPolicy policy = retryPolicy;
+        if (policy != null) {
+            policy.onRequest();
+        }
+    }
+
+    /**
+     * 标记请求已由调用方存入重试预算，见 {@link HCB#RETRY_BUDGET_DEPOSITED}
+     *
+     * @param config 请求配置，已有的 HttpContext 作为父上下文，不会被修改
+     * @return 返回 config
+     */
+    protected static HttpConfig budgetDeposited(HttpConfig config) {
+        HttpContext context = new BasicHttpContext(config.context());
+        context.setAttribute(HCB.RETRY_BUDGET_DEPOSITED, Boolean.TRUE);
+        return config.context(context);
+    }
+
+    /**
+     * 判断服务提供方错误是否应当重试，应当重试时先退避等待
+     *
+     * @param e        服务提供方错误
+     * @param attempt  已执行的次数（包含首次）
+     * @param deadline 截止时间，已到期时不再重试
+     * @return true 表示应当重试
+     */
+    protected boolean awaitRetry(ProviderErrorException e, int attempt, Deadline deadline) {
+        RetryPolicy policy = retryPolicy;
+        return policy != null
+                && e.isRetryable()
+                && (deadline == null || !deadline.isExpired())
+                && policy.tryAcquireRetry(attempt)
+                && policy.backoff(attempt);
+    }
+
+    /**
+     * 发送请求，配置了对冲策略时以对冲方式发送
+     */
+    private TransportResponse doSend(HttpConfig config) throws HttpProcessException {
+        HedgingPolicy hedging = hedgingPolicy;
+        Transport current = transport;
+        return hedging == null ? current.execute(config) : hedging.execute(current, config);
+    }
+
     /**
      * 生成缩短网址的 HTTP API 请求配置
      *
@@ -142,10 +409,26 @@ public abstract class AbstractHttpUrlConverter implements UrlConverter {
     }
 
     /**
-     * 设置 HTTP 客户端
+     * 设置 HTTP 客户端，同时释放共享客户端的租约
      */
     public void setClient(HttpClient client) {
         this.client = client;
+        releaseLease();
+    }
+
+    /**
+     * 释放共享客户端的租约，最后一个使用方释放时关闭连接池
+     */
+    @Override
+    public void close() {
+        releaseLease();
+    }
+
+    private synchronized void releaseLease() {
+        if (lease != null) {
+            lease.close();
+            lease = null;
+        }
     }
 
     /**
@@ -154,4 +437,106 @@ public abstract class AbstractHttpUrlConverter implements UrlConverter {
     public HttpClient getClient() {
         return client;
     }
+
+    /**
+     * 设置舱壁，为 null 时不限制该类调用的并发
+     *
+     * @param operation 转换操作
+     * @param priority  优先级
+     * @param bulkhead  舱壁
+     */
+    public void setBulkhead(UrlOperation operation, Priority priority, Bulkhead bulkhead) {
+        bulkheads[operation.ordinal()][priority.ordinal()] = bulkhead;
+    }
+
+    /**
+     * 获取舱壁
+     */
+    public Bulkhead getBulkhead(UrlOperation operation, Priority priority) {
+        return bulkheads[operation.ordinal()][priority.ordinal()];
+    }
+
+    /**
+     * 设置熔断器，为 null 时关闭熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 获取熔断器
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 设置服务提供方错误的重试策略，为 null 时不重试
+     * <p>
+     * 注意：不会影响已创建的客户端，客户端的重试策略请通过 {@link HCB#retry(RetryPolicy)} 设置
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * 获取重试策略
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * 设置对冲策略，为 null 时关闭对冲
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * 获取对冲策略
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * 设置传输层，如 {@link com.hason.shorturl.http.transport.JdkTransport}
+     * 或测试用的 {@link com.hason.shorturl.http.transport.InMemoryTransport}
+     */
+    public void setTransport(Transport transport) {
+        this.transport = Validate.notNull(transport, "transport");
+    }
+
+    /**
+     * 获取传输层
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * 响应处理器，在熔断器的统计范围内解析响应内容，
+     * 抛出可重试的 {@link ProviderErrorException}（如系统繁忙）时本次调用计为失败
+     *
+     * @param <T> 解析结果的类型
+     */
+    protected interface ResponseHandler<T> {
+
+        /**
+         * 解析响应内容
+         *
+         * @param response 响应内容
+         * @return 解析结果
+         * @throws ProviderErrorException 服务提供方返回错误
+         */
+        T handle(String response);
+
+        /**
+         * 传输层调用结束（包括失败）后回调，舱壁已满或熔断中未发出请求时不回调
+         *
+         * @param elapsedNanos 传输层调用的耗时，不含舱壁排队与解析，单位-纳秒
+         */
+        void onTransport(long elapsedNanos);
+    }
 }
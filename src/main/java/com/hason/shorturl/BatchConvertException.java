@@ -0,0 +1,28 @@
+package com.hason.shorturl;
+
+/**
+ * 批量转换中部分网址失败时抛出的异常，可从中取得成功的结果及每个网址的失败原因
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/11
+ */
+public class BatchConvertException extends UrlConvertException {
+
+    private static final long serialVersionUID = 5120927841352791408L;
+
+    private final transient BatchResult result;
+
+    public BatchConvertException(BatchResult result) {
+        super(result.getFailures().size() + " 个网址转换失败，" + result.getResults().size() + " 个成功",
+                result.getFailures().isEmpty() ? null : result.getFailures().values().iterator().next());
+        this.result = result;
+    }
+
+    /**
+     * 批量转换结果
+     */
+    public BatchResult getResult() {
+        return result;
+    }
+}
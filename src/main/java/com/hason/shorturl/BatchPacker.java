@@ -0,0 +1,193 @@
+package com.hason.shorturl;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 批量请求的装箱器，按数量上限和字节预算把网址分配到尽可能少的请求中
+ *
+ * <pre>
+ *   1. 每个请求的网址数不超过 maxCount，编码后的参数字节数不超过 maxBytes
+ *   2. 使用最佳适应递减（Best-Fit Decreasing）算法：按大小从大到小，放入剩余空间最小且放得下的请求，
+ *      只受字节预算约束时请求数不超过最优解的 11/9 + 1，复杂度 O(n log n)
+ *   3. 单个超过字节预算的网址不参与装箱，单独返回，由调用方以其他方式（如 POST 请求体）发送
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/12
+ */
+public class BatchPacker {
+
+    private final int maxCount;
+    private final long maxBytes;
+
+    private BatchPacker(Builder builder) {
+        this.maxCount = builder.maxCount;
+        this.maxBytes = builder.maxBytes;
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 装箱
+     *
+     * @param items 待分配的网址
+     * @param sizes 每个网址编码后占用的字节数，与 items 一一对应
+     * @return 装箱结果
+     */
+    public Packing pack(final List<String> items, final long[] sizes) {
+        Validate.isTrue(items.size() == sizes.length, "items 与 sizes 的长度必须相同");
+        List<String> oversized = new ArrayList<>();
+        List<Integer> order = new ArrayList<>(items.size());
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > maxBytes) {
+                oversized.add(items.get(i));
+            } else {
+                order.add(i);
+            }
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(sizes[b], sizes[a]);
+            }
+        });
+
+        List<Bin> bins = new ArrayList<>();
+        // 剩余字节数 -> 未满的请求
+        TreeMap<Long, Deque<Bin>> open = new TreeMap<>();
+        for (int index : order) {
+            long size = sizes[index];
+            Map.Entry<Long, Deque<Bin>> fit = open.ceilingEntry(size);
+            Bin bin;
+            if (fit == null) {
+                bin = new Bin(maxBytes);
+                bins.add(bin);
+            } else {
+                bin = fit.getValue().pollFirst();
+                if (fit.getValue().isEmpty()) {
+                    open.remove(fit.getKey());
+                }
+            }
+            bin.items.add(items.get(index));
+            bin.remaining -= size;
+            if (bin.items.size() < maxCount && bin.remaining > 0) {
+                Deque<Bin> same = open.get(bin.remaining);
+                if (same == null) {
+                    same = new ArrayDeque<>();
+                    open.put(bin.remaining, same);
+                }
+                same.addLast(bin);
+            }
+        }
+
+        List<List<String>> batches = new ArrayList<>(bins.size());
+        for (Bin bin : bins) {
+            batches.add(bin.items);
+        }
+        return new Packing(batches, oversized);
+    }
+
+    /**
+     * 按数量上限切分，不限制字节数
+     *
+     * @param items 待分配的网址
+     * @return 每个请求的网址
+     */
+    public List<List<String>> partition(List<String> items) {
+        List<List<String>> batches = new ArrayList<>((items.size() + maxCount - 1) / maxCount);
+        for (int from = 0; from < items.size(); from += maxCount) {
+            batches.add(items.subList(from, Math.min(items.size(), from + maxCount)));
+        }
+        return batches;
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static final class Bin {
+        final List<String> items = new ArrayList<>();
+        long remaining;
+
+        Bin(long capacity) {
+            this.remaining = capacity;
+        }
+    }
+
+    /**
+     * 装箱结果
+     */
+    public static final class Packing {
+
+        private final List<List<String>> batches;
+        private final List<String> oversized;
+
+        Packing(List<List<String>> batches, List<String> oversized) {
+            this.batches = batches;
+            this.oversized = oversized;
+        }
+
+        /**
+         * 每个请求的网址
+         */
+        public List<List<String>> getBatches() {
+            return batches;
+        }
+
+        /**
+         * 超过字节预算的网址
+         */
+        public List<String> getOversized() {
+            return oversized;
+        }
+
+        @Override
+        public String toString() {
+            return "Packing{batches=" + batches.size() + ", oversized=" + oversized.size() + '}';
+        }
+    }
+
+    public static class Builder {
+
+        private int maxCount = 20;
+        private long maxBytes = Long.MAX_VALUE;
+
+        /**
+         * 每个请求的最大网址数
+         */
+        public Builder maxCount(int maxCount) {
+            Validate.isTrue(maxCount > 0, "maxCount 必须大于 0");
+            this.maxCount = maxCount;
+            return this;
+        }
+
+        /**
+         * 每个请求的参数字节预算
+         */
+        public Builder maxBytes(long maxBytes) {
+            Validate.isTrue(maxBytes > 0, "maxBytes 必须大于 0");
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public BatchPacker build() {
+            return new BatchPacker(this);
+        }
+    }
+}
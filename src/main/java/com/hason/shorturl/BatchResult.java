@@ -0,0 +1,125 @@
+package com.hason.shorturl;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量转换结果，分别记录每个网址的转换结果或失败原因
+ *
+ * 非线程安全
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/11
+ */
+public class BatchResult {
+
+    /** 转换成功的网址，{key: 入参网址, value: 转换结果} */
+    private final Map<String, String> results = new LinkedHashMap<>();
+
+    /** 转换失败的网址，{key: 入参网址, value: 失败原因} */
+    private final Map<String, UrlConvertException> failures = new LinkedHashMap<>();
+
+    /**
+     * 记录转换成功的网址
+     */
+    public void success(String url, String result) {
+        failures.remove(url);
+        results.put(url, result);
+    }
+
+    /**
+     * 记录转换失败的网址
+     */
+    public void failure(String url, UrlConvertException cause) {
+        results.remove(url);
+        failures.put(url, cause);
+    }
+
+    /**
+     * 合并另一批结果
+     */
+    public void merge(BatchResult other) {
+        for (Map.Entry<String, String> entry : other.results.entrySet()) {
+            success(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, UrlConvertException> entry : other.failures.entrySet()) {
+            failure(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 转换成功的网址，{key: 入参网址, value: 转换结果}
+     */
+    public Map<String, String> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    /**
+     * 转换失败的网址，{key: 入参网址, value: 失败原因}
+     */
+    public Map<String, UrlConvertException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * 按入参顺序把每个网址的结果交给 sink，重复的网址重复回调，没有结果的网址视为失败
+     *
+     * @param urls 入参网址
+     * @param sink 结果接收器
+     */
+    public void forEach(Iterable<String> urls, ResultSink sink) {
+        for (String url : urls) {
+            String result = results.get(url);
+            if (result != null) {
+                sink.onSuccess(url, result);
+                continue;
+            }
+            UrlConvertException cause = failures.get(url);
+            sink.onFailure(url, cause != null ? cause
+                    : new ProviderErrorException("服务提供方未返回结果：" + url, null, false));
+        }
+    }
+
+    /**
+     * 是否全部转换成功
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * 全部成功时返回转换结果，否则抛出异常
+     * <p>
+     * 全部失败且原因相同（如整批请求失败）时直接抛出该原因，
+     * 否则抛出 {@link BatchConvertException}，可从中取得部分成功的结果
+     *
+     * @return 转换结果，{key: 入参网址, value: 转换结果}
+     * @throws UrlConvertException 存在失败的网址
+     */
+    public Map<String, String> getOrThrow() {
+        if (failures.isEmpty()) {
+            return results;
+        }
+        if (results.isEmpty()) {
+            UrlConvertException first = failures.values().iterator().next();
+            boolean same = true;
+            for (UrlConvertException cause : failures.values()) {
+                if (cause != first) {
+                    same = false;
+                    break;
+                }
+            }
+            if (same) {
+                throw first;
+            }
+        }
+        throw new BatchConvertException(this);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{results=" + results.size() + ", failures=" + failures.keySet() + '}';
+    }
+}
@@ -0,0 +1,216 @@
+package com.hason.shorturl;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量请求大小的自适应控制器，按实测延迟选择吞吐量（网址数/秒）最高的批量大小
+ *
+ * <pre>
+ *   1. 按批量大小分别记录请求延迟的指数加权移动平均（EWMA），新样本的权重为 alpha
+ *   2. 每记录 window 个样本重新选择一次：取已测量的批量大小中 size / 延迟 最大者；
+ *      其相邻大小（±step）尚未测量时先试探相邻大小，否则以 exploreRate 的概率试探，使估计随负载变化持续更新
+ *   3. 整批失败（超时、服务繁忙等）视为过载，批量大小立即减半
+ *   4. 初始为 maxSize，与固定分批的行为一致
+ * </pre>
+ *
+ * 线程安全
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/13
+ */
+public class BatchSizeController {
+
+    private final int minSize;
+    private final int maxSize;
+    private final int step;
+    private final int window;
+    private final double alpha;
+    private final double exploreRate;
+
+    /** 每个批量大小的平均延迟（纳秒），下标为批量大小，0 表示尚未测量 */
+    private final double[] latencies;
+
+    /** 当前批量大小 */
+    private int current;
+
+    /** 当前窗口内的样本数 */
+    private int samples;
+
+    private BatchSizeController(Builder builder) {
+        Validate.isTrue(builder.minSize <= builder.maxSize, "minSize 不能大于 maxSize");
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.step = builder.step;
+        this.window = builder.window;
+        this.alpha = builder.alpha;
+        this.exploreRate = builder.exploreRate;
+        this.latencies = new double[maxSize + 1];
+        this.current = maxSize;
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 当前应使用的批量大小
+     */
+    public synchronized int current() {
+        return current;
+    }
+
+    /**
+     * 记录一次批量请求的结果
+     *
+     * @param size    本次请求的网址数
+     * @param elapsed 耗时
+     * @param unit    耗时的单位
+     * @param success 是否成功，整批失败（超时、服务繁忙等）时为 false
+     */
+    public synchronized void record(int size, long elapsed, TimeUnit unit, boolean success) {
+        if (size < 1 || size > maxSize) {
+            return;
+        }
+        if (!success) {
+            current = Math.max(minSize, current / 2);
+            samples = 0;
+            return;
+        }
+        double latency = Math.max(1, unit.toNanos(elapsed));
+        latencies[size] = latencies[size] == 0 ? latency : latencies[size] + alpha * (latency - latencies[size]);
+        if (++samples >= window) {
+            samples = 0;
+            current = choose();
+        }
+    }
+
+    /**
+     * 选择吞吐量最高的批量大小，或试探其相邻大小
+     */
+    private int choose() {
+        int best = current;
+        double bestThroughput = throughput(current);
+        for (int size = minSize; size <= maxSize; size++) {
+            double throughput = throughput(size);
+            if (throughput > bestThroughput) {
+                best = size;
+                bestThroughput = throughput;
+            }
+        }
+        int lower = Math.max(minSize, best - step);
+        int upper = Math.min(maxSize, best + step);
+        if (lower != best && latencies[lower] == 0) {
+            return lower;
+        }
+        if (upper != best && latencies[upper] == 0) {
+            return upper;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextDouble() < exploreRate) {
+            return random.nextBoolean() ? lower : upper;
+        }
+        return best;
+    }
+
+    /**
+     * 吞吐量，网址数/纳秒，尚未测量时为 0
+     */
+    private double throughput(int size) {
+        return latencies[size] == 0 ? 0 : size / latencies[size];
+    }
+
+    /**
+     * 指定批量大小的平均延迟
+     *
+     * @return 毫秒，尚未测量时返回 -1
+     */
+    public synchronized double getLatencyMillis(int size) {
+        Validate.inclusiveBetween(1, maxSize, size, "size 超出范围");
+        return latencies[size] == 0 ? -1 : latencies[size] / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BatchSizeController{current=" + current + ", minSize=" + minSize + ", maxSize=" + maxSize + '}';
+    }
+
+    public static class Builder {
+
+        private int minSize = 1;
+        private int maxSize = 20;
+        private int step = 2;
+        private int window = 5;
+        private double alpha = 0.3;
+        private double exploreRate = 0.05;
+
+        /**
+         * 最小批量大小
+         */
+        public Builder minSize(int minSize) {
+            Validate.isTrue(minSize > 0, "minSize 必须大于 0");
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * 最大批量大小，即服务提供方的限制
+         */
+        public Builder maxSize(int maxSize) {
+            Validate.isTrue(maxSize > 0, "maxSize 必须大于 0");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * 每次调整的步长
+         */
+        public Builder step(int step) {
+            Validate.isTrue(step > 0, "step 必须大于 0");
+            this.step = step;
+            return this;
+        }
+
+        /**
+         * 每次调整前需要的样本数
+         */
+        public Builder window(int window) {
+            Validate.isTrue(window > 0, "window 必须大于 0");
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * 新样本在平均延迟中的权重，0 ~ 1，越大对负载变化越敏感
+         */
+        public Builder alpha(double alpha) {
+            Validate.isTrue(alpha > 0 && alpha <= 1, "alpha 取值为 (0, 1]");
+            this.alpha = alpha;
+            return this;
+        }
+
+        /**
+         * 试探相邻批量大小的概率，0 ~ 1
+         */
+        public Builder exploreRate(double exploreRate) {
+            Validate.inclusiveBetween(0.0, 1.0, exploreRate, "exploreRate 取值为 [0, 1]");
+            this.exploreRate = exploreRate;
+            return this;
+        }
+
+        public BatchSizeController build() {
+            return new BatchSizeController(this);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.hason.shorturl;
+
+/**
+ * 舱壁已满、排队超时时抛出的异常
+ *
+ * 过载期间该异常会被高频抛出，因此不填充 StackTrace
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/26
+ */
+public class BulkheadFullException extends UrlConvertException {
+
+    private static final long serialVersionUID = -1503478930183916525L;
+
+    public BulkheadFullException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,24 @@
+package com.hason.shorturl;
+
+/**
+ * 熔断器打开时快速失败抛出的异常
+ *
+ * 熔断期间该异常会被高频抛出，因此不填充 StackTrace，以降低快速失败的开销
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/20
+ */
+public class CircuitBreakerOpenException extends UrlConvertException {
+
+    private static final long serialVersionUID = 4306164236513526085L;
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,22 @@
+package com.hason.shorturl;
+
+/**
+ * 调用的优先级，不同优先级使用各自的舱壁，互不抢占连接
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/26
+ */
+public enum Priority {
+
+    /**
+     * 交互式调用，对延迟敏感，如单个网址的转换
+     */
+    INTERACTIVE,
+
+    /**
+     * 批量调用，对吞吐敏感，如多个网址的转换
+     */
+    BULK
+
+}
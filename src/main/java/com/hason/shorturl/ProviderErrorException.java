@@ -0,0 +1,49 @@
+package com.hason.shorturl;
+
+/**
+ * 服务提供方返回错误时抛出的异常
+ *
+ * 由具体的转换器根据错误码判断是否可重试：临时性故障（如系统繁忙）可重试，
+ * 参数错误、鉴权失败、频率超限等重试只会放大负载的错误不可重试。
+ * 频率超限另行标记，与网址本身无关，调用方可稍后整体重试（如批量文件转换不提交该窗口）。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/22
+ */
+public class ProviderErrorException extends UrlConvertException {
+
+    private static final long serialVersionUID = -3460279946414530813L;
+
+    /** 错误码 */
+    private final String errorCode;
+
+    /** 是否可重试 */
+    private final boolean retryable;
+
+    /** 是否为频率超限 */
+    private final boolean rateLimited;
+
+    public ProviderErrorException(String message, String errorCode, boolean retryable) {
+        this(message, errorCode, retryable, false);
+    }
+
+    public ProviderErrorException(String message, String errorCode, boolean retryable, boolean rateLimited) {
+        super(message);
+        this.errorCode = errorCode;
+        this.retryable = retryable;
+        this.rateLimited = rateLimited;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    public boolean isRateLimited() {
+        return rateLimited;
+    }
+}
@@ -0,0 +1,29 @@
+package com.hason.shorturl;
+
+/**
+ * 流式批量转换的结果接收器，每个输入网址回调一次
+ *
+ * 由调用转换方法的线程按输入顺序回调
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/14
+ */
+public interface ResultSink {
+
+    /**
+     * 转换成功
+     *
+     * @param url    入参网址
+     * @param result 转换结果
+     */
+    void onSuccess(String url, String result);
+
+    /**
+     * 转换失败
+     *
+     * @param url   入参网址
+     * @param cause 失败原因
+     */
+    void onFailure(String url, UrlConvertException cause);
+}
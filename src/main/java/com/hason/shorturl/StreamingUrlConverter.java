@@ -0,0 +1,32 @@
+package com.hason.shorturl;
+
+import java.util.Iterator;
+
+/**
+ * 支持流式批量转换的短网址转换器，输入逐个窗口读取，结果逐个回调，适用于数据量超出内存的场景
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/14
+ */
+public interface StreamingUrlConverter extends MultiUrlConverter {
+
+    /**
+     * 流式缩短网址，逐个窗口读取输入并把结果交给 sink，内存占用只与窗口大小有关，与输入总量无关
+     *
+     * @param longUrls 待缩短的网址
+     * @param sink     结果接收器，每个输入网址回调一次
+     * @throws UrlConvertException 无法继续发送请求（如熔断）时抛出此异常，之前的结果已回调
+     */
+    void shorten(Iterator<String> longUrls, ResultSink sink);
+
+    /**
+     * 流式还原网址，逐个窗口读取输入并把结果交给 sink，内存占用只与窗口大小有关，与输入总量无关
+     *
+     * @param shortUrls 短网址
+     * @param sink      结果接收器，每个输入网址回调一次
+     * @throws UrlConvertException 无法继续发送请求（如熔断）时抛出此异常，之前的结果已回调
+     */
+    void lengthen(Iterator<String> shortUrls, ResultSink sink);
+
+}
@@ -0,0 +1,22 @@
+package com.hason.shorturl;
+
+/**
+ * 网址转换操作
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/26
+ */
+public enum UrlOperation {
+
+    /**
+     * 缩短网址
+     */
+    SHORTEN,
+
+    /**
+     * 还原网址
+     */
+    LENGTHEN
+
+}
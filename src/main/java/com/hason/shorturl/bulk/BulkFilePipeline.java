@@ -0,0 +1,466 @@
+package com.hason.shorturl.bulk;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.BulkheadFullException;
+import com.hason.shorturl.CircuitBreakerOpenException;
+import com.hason.shorturl.ProviderErrorException;
+import com.hason.shorturl.ResultSink;
+import com.hason.shorturl.StreamingUrlConverter;
+import com.hason.shorturl.UrlConvertException;
+import com.hason.shorturl.UrlOperation;
+import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.commons.lang3.Validate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 批量转换 CSV 文件中的网址，支持从检查点续传
+ *
+ * <pre>
+ *   1. 流式读取输入文件，每 window 行为一个窗口，最多 parallelism 个窗口同时转换，内存占用与文件大小无关
+ *   2. 每个窗口交给转换器的流式接口（{@link StreamingUrlConverter#shorten(java.util.Iterator, ResultSink)}），
+ *      由转换器负责去重、缓存、分批及重试
+ *   3. 按输入顺序逐个窗口追加写出：原始行 + 转换结果 + 失败原因 两列，失败原因只记录网址本身的错误
+ *   4. 每提交 checkpointEvery 个窗口，刷盘后保存检查点（输入、输出的字节偏移量）；
+ *      与网址无关的失败（网络错误、超时、服务繁忙、频率超限、熔断）时不提交该窗口，保存已提交的进度后抛出异常
+ *   5. 再次运行时从检查点的输入位置继续读取，输出文件截断到检查点的输出位置，丢弃未提交的内容
+ * </pre>
+ *
+ * 不支持字段内换行的 CSV。空行跳过，不写出。
+ *
+ * 用法：
+ * <pre>
+ *   try (BulkFilePipeline pipeline = BulkFilePipeline.custom(converter).column(1).header(true).build()) {
+ *       Checkpoint done = pipeline.run(input, output, new File(output.getPath() + ".checkpoint"));
+ *   }
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/15
+ */
+public class BulkFilePipeline implements Closeable {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String RESULT_HEADER = ",result,error";
+
+    private final StreamingUrlConverter converter;
+    private final UrlOperation operation;
+    private final int column;
+    private final boolean header;
+    private final int window;
+    private final int parallelism;
+    private final int checkpointEvery;
+    private final Charset charset;
+    private final ExecutorService executor;
+
+    private BulkFilePipeline(Builder builder) {
+        this.converter = builder.converter;
+        this.operation = builder.operation;
+        this.column = builder.column;
+        this.header = builder.header;
+        this.window = builder.window;
+        this.parallelism = builder.parallelism;
+        this.checkpointEvery = builder.checkpointEvery;
+        this.charset = builder.charset;
+        this.executor = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("bulk-pipeline-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @param converter 转换器
+     */
+    public static Builder custom(StreamingUrlConverter converter) {
+        return new Builder(converter);
+    }
+
+    /**
+     * 转换文件，检查点文件存在时从中记录的位置继续
+     *
+     * @param input      输入文件
+     * @param output     输出文件
+     * @param checkpoint 检查点文件
+     * @return 完成时的检查点
+     * @throws IOException         读写文件失败，或输入、输出文件与检查点不一致
+     * @throws UrlConvertException 与网址无关的失败（网络错误、频率超限、熔断等），已提交的进度已保存
+     */
+    public Checkpoint run(File input, File output, File checkpoint) throws IOException {
+        Checkpoint committed = Checkpoint.load(checkpoint);
+        try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (in.size() < committed.getInputOffset() || out.size() < committed.getOutputOffset()) {
+                throw new IOException("输入或输出文件比检查点记录的短，可能已被修改：" + committed);
+            }
+            // 丢弃上次运行中未提交的输出
+            out.truncate(committed.getOutputOffset());
+            out.position(committed.getOutputOffset());
+
+            OffsetLineReader reader = new OffsetLineReader(in, committed.getInputOffset(), charset);
+            int uncheckpointed = 0;
+            if (header && committed.getInputOffset() == 0) {
+                String line = reader.readLine();
+                if (line != null) {
+                    write(out, line + RESULT_HEADER + '\n');
+                    // 表头计入下次保存的检查点，否则只有表头时续传会重复写出表头
+                    committed = committed.advance(reader.getOffset(), out.position(), 0, 0, 0);
+                    uncheckpointed++;
+                }
+            }
+
+            Deque<Future<Window>> inFlight = new ArrayDeque<>(parallelism);
+            try {
+                while (true) {
+                    while (inFlight.size() < parallelism) {
+                        Window next = readWindow(reader);
+                        if (next == null) {
+                            break;
+                        }
+                        inFlight.addLast(executor.submit(next));
+                    }
+                    if (inFlight.isEmpty()) {
+                        break;
+                    }
+                    Window done = await(inFlight.pollFirst());
+                    write(out, done.output);
+                    committed = committed.advance(done.endOffset, out.position(),
+                            done.lines, done.succeeded, done.failed);
+                    if (++uncheckpointed >= checkpointEvery) {
+                        save(out, committed, checkpoint);
+                        uncheckpointed = 0;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Future<Window> future : inFlight) {
+                    future.cancel(true);
+                }
+                if (uncheckpointed > 0) {
+                    saveQuietly(out, committed, checkpoint);
+                }
+                throw e;
+            }
+            if (uncheckpointed > 0 || !checkpoint.exists()) {
+                save(out, committed, checkpoint);
+            }
+        }
+        return committed;
+    }
+
+    /**
+     * 读取下一个窗口
+     *
+     * @return 已到文件末尾时返回 null
+     */
+    private Window readWindow(OffsetLineReader reader) throws IOException {
+        List<String> lines = new ArrayList<>(window);
+        String line;
+        while (lines.size() < window && (line = reader.readLine()) != null) {
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+        if (lines.isEmpty()) {
+            return null;
+        }
+        return new Window(lines, reader.getOffset());
+    }
+
+    private static Window await(Future<Window> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("批量转换被中断");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new UrlConvertException("批量转换失败", e.getCause());
+        }
+    }
+
+    private void write(FileChannel out, CharSequence text) throws IOException {
+        ByteBuffer buffer = charset.encode(text.toString());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void save(FileChannel out, Checkpoint committed, File checkpoint) throws IOException {
+        // 输出刷盘后才能保存检查点，否则崩溃后检查点可能指向未落盘的内容
+        out.force(false);
+        committed.save(checkpoint);
+    }
+
+    private static void saveQuietly(FileChannel out, Checkpoint committed, File checkpoint) {
+        try {
+            save(out, committed, checkpoint);
+        } catch (IOException e) {
+            Utils.infoException("保存检查点失败：" + committed, e);
+        }
+    }
+
+    /**
+     * 失败是否与网址本身无关、稍后重试可能成功：网络错误、超时、服务繁忙、频率超限、舱壁已满、熔断
+     */
+    static boolean isTransient(UrlConvertException cause) {
+        if (cause instanceof ProviderErrorException) {
+            ProviderErrorException e = (ProviderErrorException) cause;
+            return e.isRetryable() || e.isRateLimited();
+        }
+        return cause instanceof BulkheadFullException || cause instanceof CircuitBreakerOpenException
+                || cause.getCause() instanceof HttpProcessException;
+    }
+
+    /**
+     * 取 CSV 行中的指定列，支持双引号包围的字段
+     *
+     * @return 列不存在时返回 null
+     */
+    static String field(String line, int column) {
+        int index = 0;
+        int i = 0;
+        int n = line.length();
+        while (true) {
+            String value;
+            int end;
+            if (i < n && line.charAt(i) == QUOTE) {
+                StringBuilder quoted = new StringBuilder();
+                i++;
+                while (i < n) {
+                    char c = line.charAt(i++);
+                    if (c != QUOTE) {
+                        quoted.append(c);
+                    } else if (i < n && line.charAt(i) == QUOTE) {
+                        quoted.append(QUOTE);
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                end = line.indexOf(SEPARATOR, i);
+                value = quoted.toString();
+            } else {
+                end = line.indexOf(SEPARATOR, i);
+                value = line.substring(i, end < 0 ? n : end);
+            }
+            if (index == column) {
+                return value.trim();
+            }
+            if (end < 0) {
+                return null;
+            }
+            i = end + 1;
+            index++;
+        }
+    }
+
+    /**
+     * 按 CSV 规则转义字段
+     */
+    static void appendField(StringBuilder builder, String value) {
+        builder.append(SEPARATOR);
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == SEPARATOR || c == QUOTE || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            builder.append(value);
+            return;
+        }
+        builder.append(QUOTE);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == QUOTE) {
+                builder.append(QUOTE);
+            }
+            builder.append(c);
+        }
+        builder.append(QUOTE);
+    }
+
+    /**
+     * 关闭转换线程池，不关闭转换器
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 一个窗口的行，在线程池中转换并生成输出内容
+     */
+    private final class Window implements Callable<Window> {
+
+        private final List<String> rows;
+        private final long endOffset;
+
+        private StringBuilder output;
+        private int lines;
+        private int succeeded;
+        private int failed;
+
+        Window(List<String> rows, long endOffset) {
+            this.rows = rows;
+            this.endOffset = endOffset;
+        }
+
+        @Override
+        public Window call() {
+            final String[] results = new String[rows.size()];
+            final String[] errors = new String[rows.size()];
+            final List<Integer> positions = new ArrayList<>(rows.size());
+            List<String> urls = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                String url = field(rows.get(i), column);
+                if (url == null || url.isEmpty()) {
+                    errors[i] = "缺少网址列";
+                } else {
+                    urls.add(url);
+                    positions.add(i);
+                }
+            }
+            if (!urls.isEmpty()) {
+                // 每个输入网址按顺序回调一次
+                ResultSink sink = new ResultSink() {
+                    private int next;
+
+                    @Override
+                    public void onSuccess(String url, String result) {
+                        results[positions.get(next++)] = result;
+                    }
+
+                    @Override
+                    public void onFailure(String url, UrlConvertException cause) {
+                        if (isTransient(cause)) {
+                            // 与网址本身无关的失败不写出，整个窗口不提交，续传时重新转换
+                            throw cause;
+                        }
+                        errors[positions.get(next++)] = String.valueOf(cause.getMessage());
+                    }
+                };
+                if (operation == UrlOperation.SHORTEN) {
+                    converter.shorten(urls.iterator(), sink);
+                } else {
+                    converter.lengthen(urls.iterator(), sink);
+                }
+            }
+
+            output = new StringBuilder(rows.size() * 128);
+            for (int i = 0; i < rows.size(); i++) {
+                output.append(rows.get(i));
+                appendField(output, results[i]);
+                appendField(output, errors[i]);
+                output.append('\n');
+                if (results[i] != null) {
+                    succeeded++;
+                } else {
+                    failed++;
+                }
+            }
+            lines = rows.size();
+            return this;
+        }
+    }
+
+    public static class Builder {
+
+        private final StreamingUrlConverter converter;
+        private UrlOperation operation = UrlOperation.SHORTEN;
+        private int column = 0;
+        private boolean header = false;
+        private int window = 1000;
+        private int parallelism = 4;
+        private int checkpointEvery = 1;
+        private Charset charset = Charset.forName("UTF-8");
+
+        Builder(StreamingUrlConverter converter) {
+            this.converter = Validate.notNull(converter, "converter");
+        }
+
+        /**
+         * 转换操作，默认为缩短
+         */
+        public Builder operation(UrlOperation operation) {
+            this.operation = Validate.notNull(operation, "operation");
+            return this;
+        }
+
+        /**
+         * 网址所在的列，从 0 开始
+         */
+        public Builder column(int column) {
+            Validate.isTrue(column >= 0, "column 不能小于 0");
+            this.column = column;
+            return this;
+        }
+
+        /**
+         * 第一行是否为表头，表头原样写出并追加结果列名
+         */
+        public Builder header(boolean header) {
+            this.header = header;
+            return this;
+        }
+
+        /**
+         * 每个窗口的行数
+         */
+        public Builder window(int window) {
+            Validate.isTrue(window > 0, "window 必须大于 0");
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * 同时转换的窗口数
+         */
+        public Builder parallelism(int parallelism) {
+            Validate.isTrue(parallelism > 0, "parallelism 必须大于 0");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * 每提交多少个窗口保存一次检查点
+         */
+        public Builder checkpointEvery(int checkpointEvery) {
+            Validate.isTrue(checkpointEvery > 0, "checkpointEvery 必须大于 0");
+            this.checkpointEvery = checkpointEvery;
+            return this;
+        }
+
+        /**
+         * 输入、输出文件的编码，需兼容 ASCII，默认为 UTF-8
+         */
+        public Builder charset(String charset) {
+            this.charset = Charset.forName(charset);
+            return this;
+        }
+
+        public BulkFilePipeline build() {
+            return new BulkFilePipeline(this);
+        }
+    }
+}
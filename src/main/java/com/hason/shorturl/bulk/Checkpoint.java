@@ -0,0 +1,144 @@
+package com.hason.shorturl.bulk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 批量转换的检查点，记录已提交的输入、输出位置及统计
+ *
+ * <pre>
+ *   1. 输入、输出位置均为字节偏移量，续传时从 inputOffset 继续读取，输出文件截断到 outputOffset
+ *   2. 以 properties 格式保存：先写临时文件并刷盘，再原子地替换原文件，进程崩溃时不会留下不完整的检查点
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/15
+ */
+public final class Checkpoint {
+
+    private static final String INPUT_OFFSET = "inputOffset";
+    private static final String OUTPUT_OFFSET = "outputOffset";
+    private static final String LINES = "lines";
+    private static final String SUCCEEDED = "succeeded";
+    private static final String FAILED = "failed";
+
+    /** 初始状态 */
+    static final Checkpoint START = new Checkpoint(0, 0, 0, 0, 0);
+
+    private final long inputOffset;
+    private final long outputOffset;
+    private final long lines;
+    private final long succeeded;
+    private final long failed;
+
+    Checkpoint(long inputOffset, long outputOffset, long lines, long succeeded, long failed) {
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.lines = lines;
+        this.succeeded = succeeded;
+        this.failed = failed;
+    }
+
+    /**
+     * 读取检查点文件
+     *
+     * @return 文件不存在时返回初始状态
+     */
+    static Checkpoint load(File file) throws IOException {
+        if (!file.exists()) {
+            return START;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        }
+        return new Checkpoint(get(props, INPUT_OFFSET), get(props, OUTPUT_OFFSET), get(props, LINES),
+                get(props, SUCCEEDED), get(props, FAILED));
+    }
+
+    private static long get(Properties props, String key) throws IOException {
+        String value = props.getProperty(key);
+        if (value == null) {
+            throw new IOException("检查点缺少 " + key);
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("检查点的 " + key + " 无效：" + value, e);
+        }
+    }
+
+    /**
+     * 原子地保存检查点
+     */
+    void save(File file) throws IOException {
+        Properties props = new Properties();
+        props.setProperty(INPUT_OFFSET, String.valueOf(inputOffset));
+        props.setProperty(OUTPUT_OFFSET, String.valueOf(outputOffset));
+        props.setProperty(LINES, String.valueOf(lines));
+        props.setProperty(SUCCEEDED, String.valueOf(succeeded));
+        props.setProperty(FAILED, String.valueOf(failed));
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, null);
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 提交一个窗口后的检查点
+     */
+    Checkpoint advance(long inputOffset, long outputOffset, long lines, long succeeded, long failed) {
+        return new Checkpoint(inputOffset, outputOffset, this.lines + lines, this.succeeded + succeeded,
+                this.failed + failed);
+    }
+
+    /**
+     * 已提交的输入字节偏移量
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * 已提交的输出字节偏移量
+     */
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    /**
+     * 已处理的行数，不含表头和空行
+     */
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * 转换成功的行数
+     */
+    public long getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * 转换失败的行数
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return "Checkpoint{inputOffset=" + inputOffset + ", outputOffset=" + outputOffset + ", lines=" + lines
+                + ", succeeded=" + succeeded + ", failed=" + failed + '}';
+    }
+}
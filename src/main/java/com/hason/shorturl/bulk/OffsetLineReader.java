@@ -0,0 +1,74 @@
+package com.hason.shorturl.bulk;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 按行读取文件并记录每行结束后的字节偏移量，用于从检查点续传
+ *
+ * 以 '\n' 分行，去掉行尾的 '\r'，适用于 UTF-8、GBK 等 ASCII 兼容的编码
+ *
+ * 非线程安全
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/15
+ */
+final class OffsetLineReader implements Closeable {
+
+    private final InputStream in;
+    private final Charset charset;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+    private long offset;
+
+    /**
+     * @param channel 文件
+     * @param offset  开始读取的位置
+     * @param charset 编码
+     */
+    OffsetLineReader(FileChannel channel, long offset, Charset charset) throws IOException {
+        this.in = new BufferedInputStream(Channels.newInputStream(channel.position(offset)), 64 * 1024);
+        this.charset = charset;
+        this.offset = offset;
+    }
+
+    /**
+     * 读取一行
+     *
+     * @return 不含换行符的行，已到文件末尾时返回 null
+     */
+    String readLine() throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1) {
+            offset++;
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String text = new String(line.toByteArray(), charset);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * 已读取内容之后的字节偏移量
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,473 @@
+package com.hason.shorturl.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.BatchResult;
+import com.hason.shorturl.BulkheadFullException;
+import com.hason.shorturl.ProviderErrorException;
+import com.hason.shorturl.ResultSink;
+import com.hason.shorturl.StreamingUrlConverter;
+import com.hason.shorturl.UrlConvertException;
+import com.hason.shorturl.http.HttpClientRegistry;
+import com.hason.shorturl.http.HttpClientUtil;
+import com.hason.shorturl.http.builder.HCB;
+import com.hason.shorturl.http.common.Deadline;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpHeader;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.policy.Bulkhead;
+import com.hason.shorturl.util.ExceptionUtil;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+
+/**
+ * 通过跟踪重定向还原任意短网址服务的短网址
+ *
+ * <pre>
+ *   1. 对短网址发送 HEAD 请求（不自动跳转），读取 3xx 响应的 Location，逐跳跟踪直到 2xx 响应；
+ *      不支持 HEAD（405、501）时改用 GET，其他状态码（4xx、5xx 等）视为失败，不把当前地址当作最终地址
+ *   2. 每个域名的并发请求数由独立的舱壁限制，避免压垮单个短网址服务
+ *   3. 使用共享的连接池，同一域名的连接复用
+ *   4. 以 2xx 结束的重定向链，链上的每个地址都缓存最终地址，再次遇到链上任意一跳时直接返回
+ *   5. 检测重定向循环，超过最大跳数时失败
+ * </pre>
+ *
+ * 不支持缩短网址。批量还原时并行处理，无法还原的短网址不出现在结果中；流式还原时每个窗口并行处理。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/8
+ */
+public class RedirectResolvingUrlConverter implements StreamingUrlConverter, Closeable {
+
+    private static final Header[] HEADERS = HttpHeader.custom()
+            .userAgent("Mozilla/5.0 (compatible; shorturl-resolver)")
+            .build();
+
+    /** 最多保留舱壁的域名数 */
+    private static final int MAX_HOSTS = 10000;
+
+    /** 域名的舱壁闲置多久后移除，远大于请求超时，移除时不会有请求占用配额，单位-分钟 */
+    private static final int HOST_IDLE_MINUTES = 10;
+
+    private final int maxRedirects;
+    private final int maxConcurrentPerHost;
+    private final long hostMaxWaitMillis;
+    private final int streamWindow;
+
+    private final HttpClientRegistry.Lease lease;
+    private final CloseableHttpClient client;
+    private final ExecutorService executor;
+    private final Cache<String, String> resolved;
+
+    /** 每个域名的舱壁；最终地址的域名同样会请求一次，数量不可控，因此限制数量并移除闲置的域名 */
+    private final ConcurrentMap<String, Bulkhead> hostBulkheads = CacheBuilder.newBuilder()
+            .maximumSize(MAX_HOSTS)
+            .expireAfterAccess(HOST_IDLE_MINUTES, TimeUnit.MINUTES)
+            .<String, Bulkhead>build()
+            .asMap();
+
+    private RedirectResolvingUrlConverter(final Builder builder) {
+        this.maxRedirects = builder.maxRedirects;
+        this.maxConcurrentPerHost = builder.maxConcurrentPerHost;
+        this.hostMaxWaitMillis = builder.hostMaxWaitMillis;
+        this.streamWindow = builder.streamWindow;
+        this.resolved = CacheBuilder.newBuilder()
+                .maximumSize(builder.cacheSize)
+                .expireAfterWrite(builder.cacheTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        try {
+            // 相同配置的实例共享一个连接池
+            this.lease = HttpClientRegistry.getInstance().acquire(
+                    "redirect-resolver:" + builder.timeout + ":" + builder.poolSize + ":" + maxConcurrentPerHost,
+                    new HttpClientRegistry.ClientFactory() {
+                        @Override
+                        public CloseableHttpClient create() throws HttpProcessException {
+                            return HCB.custom()
+                                    .timeout(builder.timeout, false)
+                                    .ssl()
+                                    .dns(HttpClientRegistry.getInstance().getDefaultDnsResolver())
+                                    .pool(builder.poolSize, maxConcurrentPerHost)
+                                    .evict(30000)
+                                    .keepAlive(30000)
+                                    .build();
+                        }
+                    });
+        } catch (HttpProcessException e) {
+            throw ExceptionUtil.unchecked(e);
+        }
+        this.client = lease.getClient();
+        this.executor = Executors.newFixedThreadPool(builder.threads,
+                new ThreadFactoryBuilder().setNameFormat("redirect-resolver-%d").setDaemon(true).build());
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public String shorten(String longUrl) {
+        throw new UnsupportedOperationException("跟踪重定向不能缩短网址");
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public Map<String, String> shorten(Collection<String> longUrls) {
+        throw new UnsupportedOperationException("跟踪重定向不能缩短网址");
+    }
+
+    /**
+     * 不支持
+     */
+    @Override
+    public void shorten(Iterator<String> longUrls, ResultSink sink) {
+        throw new UnsupportedOperationException("跟踪重定向不能缩短网址");
+    }
+
+    @Override
+    public String lengthen(String shortUrl) {
+        return lengthen(shortUrl, null);
+    }
+
+    /**
+     * 在截止时间内还原网址
+     *
+     * @param shortUrl 短网址
+     * @param deadline 截止时间，为 null 时不限制
+     * @return 最终地址
+     * @throws UrlConvertException 如果失败抛出此异常
+     */
+    public String lengthen(String shortUrl, Deadline deadline) {
+        Validate.notBlank(shortUrl, "shortUrl");
+        Set<String> chain = new LinkedHashSet<>();
+        String current = shortUrl;
+        String result = null;
+        while (result == null) {
+            String cached = resolved.getIfPresent(current);
+            if (cached != null) {
+                result = cached;
+                break;
+            }
+            if (!chain.add(current)) {
+                throw new UrlConvertException("重定向循环：" + chain + " -> " + current);
+            }
+            // chain 包含原始短网址，已跟踪的跳数为 chain.size() - 1
+            if (chain.size() - 1 > maxRedirects) {
+                throw new UrlConvertException("重定向次数超过 " + maxRedirects + "：" + shortUrl);
+            }
+            String next = follow(current, deadline);
+            if (next == null) {
+                result = current;
+            } else {
+                current = next;
+            }
+        }
+        // 只有以 2xx 结束（或非 http 地址）的链才会走到这里，失败时已抛出异常，不会缓存
+        for (String url : chain) {
+            resolved.put(url, result);
+        }
+        return result;
+    }
+
+    /**
+     * 并行还原网址，无法还原的短网址不出现在结果中
+     *
+     * @param shortUrls 短网址
+     * @return 短网址 -> 最终地址，按输入顺序排列
+     */
+    @Override
+    public Map<String, String> lengthen(Collection<String> shortUrls) {
+        return new LinkedHashMap<>(lengthenBatch(new ArrayList<>(new LinkedHashSet<>(shortUrls))).getResults());
+    }
+
+    /**
+     * 流式还原网址，每次读取一个窗口的网址并行还原后按输入顺序回调 sink
+     *
+     * @param shortUrls 短网址
+     * @param sink      结果接收器，每个输入网址回调一次
+     */
+    @Override
+    public void lengthen(Iterator<String> shortUrls, ResultSink sink) {
+        Validate.notNull(shortUrls, "shortUrls");
+        Validate.notNull(sink, "sink");
+        List<String> chunk = new ArrayList<>(streamWindow);
+        while (shortUrls.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < streamWindow && shortUrls.hasNext()) {
+                chunk.add(shortUrls.next());
+            }
+            lengthenBatch(new ArrayList<>(new LinkedHashSet<>(chunk))).forEach(chunk, sink);
+        }
+    }
+
+    /**
+     * 并行还原网址，记录每个网址的结果或失败原因
+     *
+     * @param urls 短网址，不重复
+     */
+    private BatchResult lengthenBatch(List<String> urls) {
+        List<Future<String>> futures = new ArrayList<>(urls.size());
+        for (final String url : urls) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() {
+                    return lengthen(url);
+                }
+            }));
+        }
+        BatchResult result = new BatchResult();
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                try {
+                    result.success(urls.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Utils.infoException("还原网址失败：" + urls.get(i), e.getCause());
+                    result.failure(urls.get(i), e.getCause() instanceof UrlConvertException
+                            ? (UrlConvertException) e.getCause()
+                            : new UrlConvertException("还原网址失败：" + urls.get(i), e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<String> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new UrlConvertException("还原网址被中断", e);
+        }
+        return result;
+    }
+
+    /**
+     * 缓存的网址数
+     */
+    public long getCacheSize() {
+        return resolved.size();
+    }
+
+    /**
+     * 清空重定向链缓存
+     */
+    public void clearCache() {
+        resolved.invalidateAll();
+    }
+
+    /**
+     * 关闭批量还原的线程池，并释放共享客户端的租约
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        lease.close();
+    }
+
+    /**
+     * 请求一跳，先发送 HEAD 请求，服务不支持 HEAD（405、501）时改用 GET
+     *
+     * @return 重定向的目标地址，2xx 响应（即最终地址）时返回 null
+     * @throws UrlConvertException 请求失败，或响应既不是 2xx 也不是带 Location 的重定向
+     */
+    private String follow(String url, Deadline deadline) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new UrlConvertException("无效的网址：" + url, e);
+        }
+        String scheme = uri.getScheme();
+        if (uri.getHost() == null || !("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))) {
+            // 非 http 地址（如 App 协议）即为最终地址
+            return null;
+        }
+
+        Bulkhead bulkhead = bulkhead(uri.getHost().toLowerCase());
+        HttpConfig config = HttpConfig.custom().client(client).url(url).headers(HEADERS, true).deadline(deadline);
+        int status = send(config.method(HttpMethod.HEAD), bulkhead, deadline);
+        if (status == 405 || status == 501) {
+            config = HttpConfig.custom().client(client).url(url).headers(HEADERS, true).deadline(deadline);
+            status = send(config.method(HttpMethod.GET), bulkhead, deadline);
+        }
+        if (status >= 200 && status < 300) {
+            return null;
+        }
+        if (status == 429 || status >= 500) {
+            // 临时故障同样失败，避免把短网址本身当作结果缓存
+            throw new ProviderErrorException("还原网址失败，状态码 " + status + "：" + url,
+                    String.valueOf(status), status >= 500, status == 429);
+        }
+        if (status < 300 || status >= 400 || status == 304) {
+            throw new UrlConvertException("还原网址失败，状态码 " + status + "：" + url);
+        }
+        String location = null;
+        for (Header header : config.headers()) {
+            if ("Location".equalsIgnoreCase(header.getName())) {
+                location = header.getValue().trim();
+                break;
+            }
+        }
+        if (location == null || location.isEmpty()) {
+            throw new UrlConvertException("重定向缺少 Location，状态码 " + status + "：" + url);
+        }
+        try {
+            return uri.resolve(location).toString();
+        } catch (IllegalArgumentException e) {
+            throw new UrlConvertException("无效的重定向地址：" + location, e);
+        }
+    }
+
+    /**
+     * 在域名的并发配额内发送请求
+     *
+     * @return 状态码，响应头保存在 config 中
+     */
+    private int send(HttpConfig config, Bulkhead bulkhead, Deadline deadline) {
+        long waitMillis = deadline == null ? hostMaxWaitMillis : deadline.remaining(TimeUnit.MILLISECONDS);
+        try {
+            if (!bulkhead.tryAcquire(waitMillis)) {
+                throw new BulkheadFullException("舱壁已满，排队超时：" + bulkhead.getName());
+            }
+            try {
+                return HttpClientUtil.status(config);
+            } finally {
+                bulkhead.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UrlConvertException("还原网址被中断：" + config.url(), e);
+        } catch (HttpProcessException e) {
+            throw new UrlConvertException("请求失败：" + config.url(), e);
+        }
+    }
+
+    private Bulkhead bulkhead(String host) {
+        Bulkhead bulkhead = hostBulkheads.get(host);
+        if (bulkhead == null) {
+            bulkhead = new Bulkhead("host-" + host, maxConcurrentPerHost, hostMaxWaitMillis);
+            Bulkhead existing = hostBulkheads.putIfAbsent(host, bulkhead);
+            if (existing != null) {
+                bulkhead = existing;
+            }
+        }
+        return bulkhead;
+    }
+
+    public static class Builder {
+
+        private int maxRedirects = 10;
+        private int maxConcurrentPerHost = 8;
+        private long hostMaxWaitMillis = 30000;
+        private int timeout = 5000;
+        private int poolSize = 200;
+        private int threads = 32;
+        private long cacheSize = 100000;
+        private long cacheTtlMillis = TimeUnit.HOURS.toMillis(1);
+        private int streamWindow = 1000;
+
+        /**
+         * 最大重定向次数
+         */
+        public Builder maxRedirects(int maxRedirects) {
+            Validate.isTrue(maxRedirects > 0, "maxRedirects 必须大于 0");
+            this.maxRedirects = maxRedirects;
+            return this;
+        }
+
+        /**
+         * 每个域名的最大并发请求数，同时也是连接池中每个路由的最大连接数
+         */
+        public Builder maxConcurrentPerHost(int maxConcurrentPerHost) {
+            Validate.isTrue(maxConcurrentPerHost > 0, "maxConcurrentPerHost 必须大于 0");
+            this.maxConcurrentPerHost = maxConcurrentPerHost;
+            return this;
+        }
+
+        /**
+         * 等待域名并发配额的最长时间，单位-毫秒
+         */
+        public Builder hostMaxWaitMillis(long hostMaxWaitMillis) {
+            Validate.isTrue(hostMaxWaitMillis >= 0, "hostMaxWaitMillis 不能小于 0");
+            this.hostMaxWaitMillis = hostMaxWaitMillis;
+            return this;
+        }
+
+        /**
+         * 连接、读取超时时间，单位-毫秒
+         */
+        public Builder timeout(int timeout) {
+            Validate.isTrue(timeout > 0, "timeout 必须大于 0");
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * 连接池大小
+         */
+        public Builder poolSize(int poolSize) {
+            Validate.isTrue(poolSize > 0, "poolSize 必须大于 0");
+            this.poolSize = poolSize;
+            return this;
+        }
+
+        /**
+         * 批量还原的并行线程数
+         */
+        public Builder threads(int threads) {
+            Validate.isTrue(threads > 0, "threads 必须大于 0");
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * 重定向链缓存的最大网址数及有效期
+         *
+         * @param cacheSize      最大网址数
+         * @param cacheTtlMillis 有效期，单位-毫秒
+         */
+        public Builder cache(long cacheSize, long cacheTtlMillis) {
+            Validate.isTrue(cacheSize >= 0, "cacheSize 不能小于 0");
+            Validate.isTrue(cacheTtlMillis > 0, "cacheTtlMillis 必须大于 0");
+            this.cacheSize = cacheSize;
+            this.cacheTtlMillis = cacheTtlMillis;
+            return this;
+        }
+
+        /**
+         * 流式还原时每次读取的网址数
+         */
+        public Builder streamWindow(int streamWindow) {
+            Validate.isTrue(streamWindow > 0, "streamWindow 必须大于 0");
+            this.streamWindow = streamWindow;
+            return this;
+        }
+
+        public RedirectResolvingUrlConverter build() {
+            return new RedirectResolvingUrlConverter(this);
+        }
+    }
+}
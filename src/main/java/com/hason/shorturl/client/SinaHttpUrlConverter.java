@@ -1,19 +1,35 @@
 package com.hason.shorturl.client;
 
 import com.fasterxml.jackson.databind.JavaType;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.hason.shorturl.util.JsonMapper;
 import com.hason.shorturl.AbstractHttpMultiUrlConverter;
-import com.hason.shorturl.UrlConvertException;
+import com.hason.shorturl.BatchPacker;
+import com.hason.shorturl.BatchResult;
+import com.hason.shorturl.BatchSizeController;
+import com.hason.shorturl.Priority;
+import com.hason.shorturl.ProviderErrorException;
+import com.hason.shorturl.UrlOperation;
+import com.hason.shorturl.http.common.Deadline;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpHeader;
+import com.hason.shorturl.http.common.HttpMethod;
 import com.hason.shorturl.output.SinaShortUrl;
+import com.hason.shorturl.util.ExceptionUtil;
 import com.hason.shorturl.util.StringBuilderHolder;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 使用新浪 API 实现短网址服务
@@ -42,34 +58,100 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
     /** 最大允许的参数数量（包含该值） */
     private static final int MAX_PARAM = 20;
 
+    /** 默认的请求地址最大长度，常见服务端的请求行限制为 8KB */
+    private static final int DEFAULT_MAX_URI_LENGTH = 8000;
+
+    /** POST 请求的请求头 */
+    private static final Header[] FORM_HEADERS = HttpHeader.custom()
+            .contentType("application/x-www-form-urlencoded;charset=UTF-8")
+            .acceptEncoding("gzip, deflate")
+            .build();
+
+    /** 请求地址最大长度，超过时改为 POST 请求 */
+    private volatile int maxUriLength = DEFAULT_MAX_URI_LENGTH;
+
+    /** 缩短、还原各自的批量大小控制器，为 null 时固定为 {@link #MAX_PARAM} */
+    private volatile BatchSizeController shortenBatchSize = newBatchSizeController();
+    private volatile BatchSizeController lengthenBatchSize = newBatchSizeController();
+
+    /**
+     * 可重试的错误码，均为服务端临时性故障
+     * 10001：系统错误，10002：服务暂停，10003：远程服务错误，10009：任务过多，系统繁忙，10010：任务超时，10011：RPC错误
+     * 频率超限（10022、10023、10024）等错误重试只会放大负载，不重试
+     */
+    private static final Set<String> RETRYABLE_ERROR_CODES
+            = new HashSet<>(Arrays.asList("10001", "10002", "10003", "10009", "10010", "10011"));
+
+    /**
+     * 频率超限的错误码，10022：IP 请求频次超过上限，10023：用户请求频次超过上限，10024：用户请求特殊接口频次超过上限
+     */
+    private static final Set<String> RATE_LIMIT_ERROR_CODES = new HashSet<>(Arrays.asList("10022", "10023", "10024"));
+
+    /**
+     * 可能由单个网址引起的错误码，整批失败时拆分定位出错的网址
+     * 10008：参数错误，10017：参数值非法
+     */
+    private static final Set<String> URL_ERROR_CODES = new HashSet<>(Arrays.asList("10008", "10017"));
+
     private static JavaType resultType = JsonMapper.INSTANCE.buildCollectionType(List.class, SinaShortUrl.class);
 
     @Override
-    public Map<String, String> shorten(Collection<String> longUrls) {
+    public BatchResult shortenBatch(Collection<String> longUrls, Deadline deadline, Priority priority) {
         check(longUrls);
-        Map<String, String> result = Maps.newHashMapWithExpectedSize(longUrls.size());
-        // 分割参数列表为合适的大小
-        List<List<String>> suitableList = suitableList(longUrls);
-        for (List<String> urls : suitableList) {
+        return super.shortenBatch(longUrls, deadline, priority);
+    }
+
+    @Override
+    public BatchResult lengthenBatch(Collection<String> shortUrls, Deadline deadline, Priority priority) {
+        check(shortUrls);
+        return super.lengthenBatch(shortUrls, deadline, priority);
+    }
+
+    @Override
+    protected BatchResult doShortenBatch(List<String> longUrls, Deadline deadline, Priority priority) {
+        BatchResult result = new BatchResult();
+        // 按数量和地址长度把参数分配到尽可能少的请求中
+        for (List<String> urls : batches(SHORTEN_API, SHORTEN_PARAM_NAME, longUrls, batchSize(shortenBatchSize))) {
             // 合并结果集
-            result.putAll(super.shorten(urls));
+            result.merge(super.doShortenBatch(urls, deadline, priority));
         }
         return result;
     }
 
     @Override
-    public Map<String, String> lengthen(Collection<String> shortUrls) {
-        check(shortUrls);
-        Map<String, String> result = Maps.newHashMapWithExpectedSize(shortUrls.size());
-        // 分割参数列表为合适的大小
-        List<List<String>> suitableList = suitableList(shortUrls);
-        for (List<String> urls : suitableList) {
+    protected BatchResult doLengthenBatch(List<String> shortUrls, Deadline deadline, Priority priority) {
+        BatchResult result = new BatchResult();
+        // 按数量和地址长度把参数分配到尽可能少的请求中
+        for (List<String> urls : batches(LENGTHEN_API, LENGTHEN_PARAM_NAME, shortUrls, batchSize(lengthenBatchSize))) {
             // 合并结果集
-            result.putAll(super.lengthen(urls));
+            result.merge(super.doLengthenBatch(urls, deadline, priority));
         }
         return result;
     }
 
+    /**
+     * 地址超过 {@link #getMaxUriLength()} 时改为 POST 请求，参数放在请求体中
+     */
+    @Override
+    protected HttpConfig shortenConfig(Collection<String> longUrls) {
+        HttpConfig config = super.shortenConfig(longUrls);
+        return config.url().length() <= maxUriLength ? config : toPost(config, SHORTEN_API, SHORTEN_PARAM_NAME, longUrls);
+    }
+
+    /**
+     * 地址超过 {@link #getMaxUriLength()} 时改为 POST 请求，参数放在请求体中
+     */
+    @Override
+    protected HttpConfig lengthenConfig(Collection<String> shortUrls) {
+        HttpConfig config = super.lengthenConfig(shortUrls);
+        return config.url().length() <= maxUriLength ? config : toPost(config, LENGTHEN_API, LENGTHEN_PARAM_NAME, shortUrls);
+    }
+
+    @Override
+    protected Collection<String> getWarmUpUris() {
+        return Arrays.asList(SHORTEN_API, LENGTHEN_API);
+    }
+
     @Override
     protected String getShortenUri(Collection<String> longUrls) {
         return appendApiParams(SHORTEN_API, SHORTEN_PARAM_NAME, longUrls);
@@ -83,7 +165,7 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
     @Override
     protected Map<String, String> handleShorten(String result) {
         if (isError(result)) {
-            throw new UrlConvertException(result);
+            throw toException(result);
         }
         List<SinaShortUrl> resultList = JsonMapper.INSTANCE.fromJson(result, resultType);
         Map<String, String> urlMap = Maps.newLinkedHashMapWithExpectedSize(resultList.size());
@@ -96,7 +178,7 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
     @Override
     protected Map<String, String> handleLengthen(String result) {
         if (isError(result)) {
-            throw new UrlConvertException(result);
+            throw toException(result);
         }
         List<SinaShortUrl> resultList = JsonMapper.INSTANCE.fromJson(result, resultType);
         Map<String, String> urlMap = Maps.newLinkedHashMapWithExpectedSize(resultList.size());
@@ -106,27 +188,130 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
         return urlMap;
     }
 
+    @Override
+    protected boolean isUrlAttributable(ProviderErrorException e) {
+        return URL_ERROR_CODES.contains(e.getErrorCode());
+    }
+
+    @Override
+    protected BatchResult handleShortenBatch(String result, List<String> longUrls) {
+        return toBatchResult(result, longUrls, true);
+    }
+
+    @Override
+    protected BatchResult handleLengthenBatch(String result, List<String> shortUrls) {
+        return toBatchResult(result, shortUrls, false);
+    }
+
+    /**
+     * 解析每个网址的结果，单个网址的错误不影响其他网址
+     * <p>
+     * 结果按请求参数的顺序返回，数量一致时按位置对应（服务端可能规范化返回的网址），否则按网址匹配
+     *
+     * @param result  API 返回内容
+     * @param urls    本次请求的网址
+     * @param shorten 是否为缩短网址
+     * @return 批量转换结果
+     */
+    private BatchResult toBatchResult(String result, List<String> urls, boolean shorten) {
+        if (isError(result)) {
+            throw toException(result);
+        }
+        List<SinaShortUrl> resultList = JsonMapper.INSTANCE.fromJson(result, resultType);
+        if (resultList == null) {
+            throw new ProviderErrorException("无法解析的返回内容：" + result, null, false);
+        }
+        Map<String, SinaShortUrl> byUrl = null;
+        if (resultList.size() != urls.size()) {
+            byUrl = Maps.newHashMapWithExpectedSize(resultList.size());
+            for (SinaShortUrl url : resultList) {
+                byUrl.put(shorten ? url.getUrl_long() : url.getUrl_short(), url);
+            }
+        }
+        BatchResult batch = new BatchResult();
+        for (int i = 0; i < urls.size(); i++) {
+            String url = urls.get(i);
+            SinaShortUrl item = byUrl == null ? resultList.get(i) : byUrl.get(url);
+            String value = item == null ? null : shorten ? item.getUrl_short() : item.getUrl_long();
+            if (item != null && item.getError_code() != null) {
+                batch.failure(url, new ProviderErrorException(item.getError(), item.getError_code(),
+                        RETRYABLE_ERROR_CODES.contains(item.getError_code()),
+                        RATE_LIMIT_ERROR_CODES.contains(item.getError_code())));
+            } else if (value == null || value.isEmpty()) {
+                batch.failure(url, new ProviderErrorException("服务提供方未返回结果：" + url, null, false));
+            } else {
+                batch.success(url, value);
+            }
+        }
+        return batch;
+    }
+
+    private static BatchSizeController newBatchSizeController() {
+        return BatchSizeController.custom().maxSize(MAX_PARAM).build();
+    }
+
+    private static int batchSize(BatchSizeController controller) {
+        return controller == null ? MAX_PARAM : controller.current();
+    }
+
     /**
-     * 把参数集合大小进行合适化大小
+     * 按每个请求的实测耗时调整批量大小
+     */
+    @Override
+    protected void onBatchRequest(UrlOperation operation, int size, long elapsedNanos, boolean success) {
+        BatchSizeController controller = operation == UrlOperation.SHORTEN ? shortenBatchSize : lengthenBatchSize;
+        if (controller != null) {
+            controller.record(size, elapsedNanos, TimeUnit.NANOSECONDS, success);
+        }
+    }
+
+    /**
+     * 把参数分配到各个请求中，每个请求的网址数不超过 maxCount，地址不超过 {@link #getMaxUriLength()}
+     * <p>
+     * 单个网址即超过地址长度限制时，按数量切分，由 {@link #toPost} 以 POST 请求发送
      *
-     * @param urls 参数集合
-     * @return list
-     */
-    private static List<List<String>> suitableList(Collection<String> urls) {
-        List<String> argumentUrls = Lists.newArrayList(urls);
-        List<List<String>> resultList = new ArrayList<>((int) Math.ceil(urls.size() / ((double) PARAM_AT)));
-
-        int index = 0;
-        int argumentSize = argumentUrls.size();
-        while (index < argumentSize) {
-            // 计算子列表高端
-            int toIndex = index + MAX_PARAM;
-            toIndex = toIndex > argumentSize ? argumentSize : toIndex;
-            resultList.add(argumentUrls.subList(index, toIndex));
-            index = toIndex;
+     * @param api       api uri
+     * @param paramName 参数名
+     * @param unique    参数集合，不重复
+     * @param maxCount  每个请求的最大网址数
+     * @return 每个请求的参数
+     */
+    private List<List<String>> batches(String api, String paramName, List<String> unique, int maxCount) {
+        long[] sizes = new long[unique.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            // &paramName=encodedUrl
+            sizes[i] = paramName.length() + 2 + encode(unique.get(i)).length();
         }
+        BatchPacker packer = BatchPacker.custom().maxCount(maxCount).maxBytes(maxUriLength - api.length()).build();
+        BatchPacker.Packing packing = packer.pack(unique, sizes);
+        List<List<String>> batches = new ArrayList<>(packing.getBatches());
+        batches.addAll(packer.partition(packing.getOversized()));
+        return batches;
+    }
+
+    /**
+     * 把 GET 请求改为 POST 请求，api 中的参数与网址参数一起以表单形式放在请求体中
+     */
+    private HttpConfig toPost(HttpConfig config, String api, String paramName, Collection<String> urls) {
+        int idx = api.indexOf('?');
+        StringBuilder body = new StringBuilder();
+        body.append(api, idx + 1, api.length()).append(PARAM_AT);
+        appendApiQueryParams(body, paramName, urls);
+        return config.url(api.substring(0, idx))
+                .methodName(HttpMethod.POST.getName())
+                .headers(FORM_HEADERS)
+                .json(body.toString());
+    }
 
-        return resultList;
+    /**
+     * 以 UTF-8 编码参数值
+     */
+    private static String encode(String url) {
+        try {
+            return URLEncoder.encode(url, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw ExceptionUtil.unchecked(e);
+        }
     }
 
     /**
@@ -136,6 +321,19 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
         return result.startsWith("{");
     }
 
+    /**
+     * 根据错误码把错误结果转换为异常
+     *
+     * @param result 错误结果，如：{"error_code":"10001","error":"system error"}
+     * @return 异常
+     */
+    private ProviderErrorException toException(String result) {
+        SinaShortUrl error = JsonMapper.INSTANCE.fromJson(result, SinaShortUrl.class);
+        String errorCode = error == null ? null : error.getError_code();
+        return new ProviderErrorException(result, errorCode, RETRYABLE_ERROR_CODES.contains(errorCode),
+                RATE_LIMIT_ERROR_CODES.contains(errorCode));
+    }
+
     /**
      * 判断参数是否合法
      */
@@ -171,7 +369,7 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
         for (String url : urls) {
             builder.append(paramName)
                     .append(SYMBOL_EQ)
-                    .append(url)
+                    .append(encode(url))
                     .append(PARAM_AT);
         }
         if (builder.charAt(builder.length() - 1) == PARAM_AT) {
@@ -179,4 +377,41 @@ public class SinaHttpUrlConverter extends AbstractHttpMultiUrlConverter {
         }
     }
 
+    /**
+     * 设置请求地址最大长度，批量请求按此长度分配参数，单个网址即超过此长度时改为 POST 请求
+     *
+     * @param maxUriLength 最大长度，需大于 API 地址的长度
+     */
+    public void setMaxUriLength(int maxUriLength) {
+        Validate.isTrue(maxUriLength > Math.max(SHORTEN_API.length(), LENGTHEN_API.length()),
+                "maxUriLength 必须大于 API 地址的长度");
+        this.maxUriLength = maxUriLength;
+    }
+
+    /**
+     * 获取请求地址最大长度
+     */
+    public int getMaxUriLength() {
+        return maxUriLength;
+    }
+
+    /**
+     * 设置是否按实测延迟自适应调整每个请求的网址数，关闭时固定为 {@link #MAX_PARAM}，默认开启
+     *
+     * @see BatchSizeController
+     */
+    public void setAdaptiveBatchSize(boolean adaptive) {
+        this.shortenBatchSize = adaptive ? newBatchSizeController() : null;
+        this.lengthenBatchSize = adaptive ? newBatchSizeController() : null;
+    }
+
+    /**
+     * 获取当前每个请求的网址数
+     *
+     * @param operation 转换操作
+     */
+    public int getBatchSize(UrlOperation operation) {
+        return batchSize(operation == UrlOperation.SHORTEN ? shortenBatchSize : lengthenBatchSize);
+    }
+
 }
@@ -0,0 +1,249 @@
+package com.hason.shorturl.http;
+
+import com.hason.shorturl.http.builder.HCB;
+import com.hason.shorturl.http.common.CachingDnsResolver;
+import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.policy.Bulkhead;
+import com.hason.shorturl.http.policy.CircuitBreaker;
+import com.hason.shorturl.http.policy.RetryPolicy;
+import com.hason.shorturl.http.pool.InstrumentedConnectionManager;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * HttpClient 注册中心，按配置共享 client 并进行引用计数
+ *
+ * <pre>
+ *   1. 相同 key 的 client 只创建一次，所有使用方共享同一个连接池，最大化复用连接，避免重复的 TLS 握手
+ *   2. 每次 acquire 返回一个租约，使用方不再需要时关闭租约
+ *   3. 最后一个租约关闭时，关闭 client 并释放连接池
+ *   4. 舱壁按 client 共享（{@link Lease#bulkhead}），配额针对共享的连接池，而不是每个使用方各占一份
+ *   5. 熔断器按服务提供方共享（{@link Lease#circuitBreaker}），任一使用方观察到的故障都计入同一个熔断器
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/27
+ */
+public class HttpClientRegistry {
+
+    /** 默认 client 的 key */
+    public static final String DEFAULT_KEY = "default";
+
+    /** 默认 client 的连接数 */
+    public static final int DEFAULT_POOL_SIZE = 100;
+
+    /** 默认 client 的连接最大空闲时间，单位-毫秒 */
+    private static final long DEFAULT_MAX_IDLE = 30000;
+
+    /** 默认 client 的连接保活时间（服务端未返回 Keep-Alive 时），单位-毫秒 */
+    private static final long DEFAULT_KEEP_ALIVE = 30000;
+
+    private static final HttpClientRegistry INSTANCE = new HttpClientRegistry();
+
+    /** 默认 client 的 DNS 解析器 */
+    private final CachingDnsResolver defaultDnsResolver = CachingDnsResolver.custom().build();
+
+    /** 默认 client 的重试策略，所有使用默认 client 的地方共享重试预算 */
+    private final RetryPolicy defaultRetryPolicy = RetryPolicy.custom().build();
+
+    private final Map<Object, Entry> entries = new HashMap<>();
+
+    /** 默认 client 的连接池 */
+    private volatile InstrumentedConnectionManager defaultConnectionManager;
+
+    public static HttpClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * client 工厂，仅在 key 对应的 client 不存在时调用
+     */
+    public interface ClientFactory {
+
+        /**
+         * 创建 client
+         *
+         * @return client
+         * @throws HttpProcessException http处理异常
+         */
+        CloseableHttpClient create() throws HttpProcessException;
+    }
+
+    /**
+     * 租用默认 client（支持 http/https，连接池大小为 {@link #DEFAULT_POOL_SIZE}，使用默认重试策略）
+     *
+     * @return 租约
+     * @throws HttpProcessException http处理异常
+     */
+    public Lease acquireDefault() throws HttpProcessException {
+        return acquire(DEFAULT_KEY, new ClientFactory() {
+            @Override
+            public CloseableHttpClient create() throws HttpProcessException {
+                HCB builder = HCB.custom()
+                        .ssl()
+                        .dns(defaultDnsResolver)
+                        .pool(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE)
+                        .evict(DEFAULT_MAX_IDLE)
+                        .keepAlive(DEFAULT_KEEP_ALIVE)
+                        .retry(defaultRetryPolicy);
+                defaultConnectionManager = builder.connectionManager();
+                return builder.build();
+            }
+        });
+    }
+
+    /**
+     * 租用 key 对应的 client，不存在时使用工厂创建
+     *
+     * @param key     client 的配置标识，需正确实现 equals 与 hashCode
+     * @param factory client 工厂
+     * @return 租约
+     * @throws HttpProcessException http处理异常
+     */
+    public synchronized Lease acquire(Object key, ClientFactory factory) throws HttpProcessException {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key, factory.create());
+            entries.put(key, entry);
+        }
+        entry.refCount++;
+        return new Lease(entry);
+    }
+
+    /**
+     * 默认 client 的重试策略
+     */
+    public RetryPolicy getDefaultRetryPolicy() {
+        return defaultRetryPolicy;
+    }
+
+    /**
+     * 默认 client 的 DNS 解析器，可用于查看缓存命中统计
+     */
+    public CachingDnsResolver getDefaultDnsResolver() {
+        return defaultDnsResolver;
+    }
+
+    /**
+     * 默认 client 的连接池，可用于查看连接池统计，默认 client 尚未创建时返回 null
+     */
+    public InstrumentedConnectionManager getDefaultConnectionManager() {
+        return defaultConnectionManager;
+    }
+
+    /**
+     * 当前共享中的 client 数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * key 对应 client 的引用计数，不存在时返回 0
+     */
+    public synchronized int refCount(Object key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.refCount;
+    }
+
+    private void release(Entry entry) {
+        synchronized (this) {
+            if (--entry.refCount > 0) {
+                return;
+            }
+            entries.remove(entry.key);
+        }
+        try {
+            entry.client.close();
+        } catch (IOException e) {
+            Utils.exception(e);
+        }
+    }
+
+    private static class Entry {
+        private final Object key;
+        private final CloseableHttpClient client;
+        private final ConcurrentMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+        private int refCount;
+
+        private Entry(Object key, CloseableHttpClient client) {
+            this.key = key;
+            this.client = client;
+        }
+    }
+
+    /**
+     * client 租约，关闭租约即释放一次引用，重复关闭无副作用
+     */
+    public class Lease implements Closeable {
+
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        public CloseableHttpClient getClient() {
+            return entry.client;
+        }
+
+        /**
+         * 获取该 client 上指定名称的舱壁，所有租用同一 client 的使用方共享，不存在时按参数创建
+         *
+         * @param name          舱壁名称
+         * @param maxConcurrent 最大并发数，舱壁已存在时忽略
+         * @param maxWaitMillis 最长排队时间，舱壁已存在时忽略
+         * @return 舱壁
+         */
+        public Bulkhead bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+            Bulkhead bulkhead = entry.bulkheads.get(name);
+            if (bulkhead == null) {
+                Bulkhead created = new Bulkhead(name, maxConcurrent, maxWaitMillis);
+                bulkhead = entry.bulkheads.putIfAbsent(name, created);
+                if (bulkhead == null) {
+                    bulkhead = created;
+                }
+            }
+            return bulkhead;
+        }
+
+        /**
+         * 获取该 client 上指定服务提供方的熔断器，所有租用同一 client 的使用方共享，不存在时按默认配置创建
+         *
+         * @param name 熔断器名称，通常为服务提供方
+         * @return 熔断器
+         */
+        public CircuitBreaker circuitBreaker(String name) {
+            CircuitBreaker breaker = entry.circuitBreakers.get(name);
+            if (breaker == null) {
+                CircuitBreaker created = CircuitBreaker.custom(name).build();
+                breaker = entry.circuitBreakers.putIfAbsent(name, created);
+                if (breaker == null) {
+                    breaker = created;
+                }
+            }
+            return breaker;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(entry);
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package com.hason.shorturl.http;
 
-import com.hason.shorturl.http.builder.HCB;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.http.cache.ResponseCache;
+import com.hason.shorturl.http.common.Deadline;
 import com.hason.shorturl.http.common.HttpConfig;
 import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.common.RequestLog;
 import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.download.RangeDownloader;
 import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.transport.TransportResponse;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.entity.ContentType;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 使用 HttpClient 模拟发送（http/https）请求
@@ -33,13 +45,22 @@ public class HttpClientUtil {
     //默认采用的https协议的HttpClient对象
     private static HttpClient client4HTTPS;
 
+    //截止时间到期后中止请求的定时器
+    private static final ScheduledThreadPoolExecutor deadlineTimer = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("http-deadline-%d").setDaemon(true).build());
+
+    //响应缓存，为 null 时不缓存
+    private static volatile ResponseCache responseCache;
+
     static {
         try {
-            client4HTTP = HCB.custom().build();
-            client4HTTPS = HCB.custom().ssl().build();
+            // 与默认配置的转换器共享同一个连接池（同时支持http和https），永不释放
+            client4HTTP = HttpClientRegistry.getInstance().acquireDefault().getClient();
+            client4HTTPS = client4HTTP;
         } catch (HttpProcessException e) {
             Utils.errorException("创建https协议的HttpClient对象出错", e);
         }
+        deadlineTimer.setRemoveOnCancelPolicy(true);
     }
 
     /**
@@ -60,6 +81,29 @@ public class HttpClientUtil {
         }
     }
 
+    /**
+     * 使用配置的 HttpClient 执行请求
+     */
+    private static HttpResponse doExecute(HttpConfig config, HttpRequestBase request) throws IOException {
+        return (config.context() == null) ? config.client().execute(request) : config.client().execute(request, config.context());
+    }
+
+    /**
+     * 设置响应缓存，为 null 时关闭缓存（默认）
+     *
+     * @param cache 响应缓存
+     */
+    public static void setResponseCache(ResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * 获取响应缓存
+     */
+    public static ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
     //-----------华----丽----分----割----线--------------
     //-----------华----丽----分----割----线--------------
     //-----------华----丽----分----割----线--------------
@@ -298,7 +342,25 @@ public class HttpClientUtil {
      * @return 返回处理结果
      */
     public static OutputStream down(HttpConfig config) throws HttpProcessException {
-        return fmt2Stream(execute(config.method(HttpMethod.GET)), config.out());
+        ScheduledFuture<?> timer = watch(config);
+        try {
+            return fmt2Stream(execute(config.method(HttpMethod.GET), RequestLog.sample()), config.out());
+        } finally {
+            unwatch(config, timer);
+        }
+    }
+
+    /**
+     * 下载文件，服务端支持 Range 时分段并行下载
+     *
+     * @param config 请求参数配置
+     * @param file   目标文件
+     * @throws HttpProcessException http处理异常
+     * @return 返回文件大小
+     * @see RangeDownloader
+     */
+    public static long down(HttpConfig config, File file) throws HttpProcessException {
+        return RangeDownloader.getDefault().download(config, file);
     }
 
     /**
@@ -351,7 +413,12 @@ public class HttpClientUtil {
      * @return 返回处理结果
      */
     public static int status(HttpConfig config) throws HttpProcessException {
-        return fmt2Int(execute(config));
+        ScheduledFuture<?> timer = watch(config);
+        try {
+            return fmt2Int(execute(config, RequestLog.sample()));
+        } finally {
+            unwatch(config, timer);
+        }
     }
 
     //-----------华----丽----分----割----线--------------
@@ -366,17 +433,111 @@ public class HttpClientUtil {
      * @return 返回处理结果
      */
     public static String send(HttpConfig config) throws HttpProcessException {
-        return fmt2String(execute(config), config.outenc());
+        ScheduledFuture<?> timer = watch(config);
+        try {
+            RequestLog log = RequestLog.sample();
+            return fmt2String(execute(config, log), config.outenc(), log);
+        } finally {
+            unwatch(config, timer);
+        }
+    }
+
+    /**
+     * 请求资源或服务，返回状态码、响应头及响应内容
+     *
+     * @param config 请求参数配置
+     * @throws HttpProcessException http处理异常
+     * @return 返回响应
+     */
+    public static TransportResponse exchange(HttpConfig config) throws HttpProcessException {
+        ScheduledFuture<?> timer = watch(config);
+        try {
+            return fmt2Response(execute(config, RequestLog.sample()));
+        } finally {
+            unwatch(config, timer);
+        }
+    }
+
+    /**
+     * 如果配置了截止时间，则在到期时中止请求（包括读取响应内容的过程）
+     *
+     * @param config 请求参数配置
+     * @throws HttpProcessException 已超过截止时间
+     * @return 定时任务，未配置截止时间时返回 null
+     */
+    private static ScheduledFuture<?> watch(final HttpConfig config) throws HttpProcessException {
+        Deadline deadline = config.deadline();
+        if (deadline == null) {
+            return null;
+        }
+        long remaining = deadline.remaining(TimeUnit.NANOSECONDS);
+        if (remaining <= 0) {
+            throw new HttpProcessException("请求已超过截止时间");
+        }
+        return deadlineTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                config.abort();
+            }
+        }, remaining, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 取消截止时间定时任务，并解除请求的绑定，之后再中止该配置不会影响已结束的请求
+     *
+     * @param config 请求参数配置
+     * @param timer  定时任务
+     */
+    private static void unwatch(HttpConfig config, ScheduledFuture<?> timer) {
+        config.attach(null);
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    /**
+     * 以截止时间的剩余时间限制请求的连接池租用、建立连接和读取超时
+     *
+     * @param request 请求对象
+     * @param config  请求参数配置
+     * @throws HttpProcessException 已超过截止时间
+     */
+    private static void applyDeadline(HttpRequestBase request, HttpConfig config) throws HttpProcessException {
+        Deadline deadline = config.deadline();
+        if (deadline == null) {
+            return;
+        }
+        long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+        if (remaining <= 0) {
+            throw new HttpProcessException("请求已超过截止时间");
+        }
+        int timeout = (int) Math.min(Integer.MAX_VALUE, remaining);
+        RequestConfig base = config.client() instanceof Configurable
+                ? ((Configurable) config.client()).getConfig() : null;
+        base = base == null ? RequestConfig.DEFAULT : base;
+        request.setConfig(RequestConfig.copy(base)
+                .setConnectionRequestTimeout(limit(base.getConnectionRequestTimeout(), timeout))
+                .setConnectTimeout(limit(base.getConnectTimeout(), timeout))
+                .setSocketTimeout(limit(base.getSocketTimeout(), timeout))
+                .build());
+    }
+
+    /**
+     * 取原超时与剩余时间的较小者，原超时小于等于 0 表示不限制
+     */
+    private static int limit(int timeout, int remaining) {
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
     }
 
     /**
      * 请求资源或服务
      *
      * @param config 请求参数配置
+     * @param log    请求日志，不记录时为 null
      * @throws HttpProcessException http处理异常
      * @return 返回HttpResponse对象
      */
-    private static HttpResponse execute(HttpConfig config) throws HttpProcessException {
+    private static HttpResponse execute(HttpConfig config, RequestLog log) throws HttpProcessException {
         create(config);//获取链接
         HttpResponse resp = null;
         try {
@@ -386,6 +547,19 @@ public class HttpClientUtil {
             //设置header信息
             request.setHeaders(config.headers());
 
+            //按截止时间设置超时
+            applyDeadline(request, config);
+
+            //绑定请求，以便其他线程中止
+            final HttpRequestBase current = request;
+            config.attach(new Cancellable() {
+                @Override
+                public boolean cancel() {
+                    current.abort();
+                    return true;
+                }
+            });
+
             //判断是否支持设置entity(仅HttpPost、HttpPut、HttpPatch支持)
             if (HttpEntityEnclosingRequestBase.class.isAssignableFrom(request.getClass())) {
                 List<NameValuePair> nvps = new ArrayList<NameValuePair>();
@@ -399,22 +573,29 @@ public class HttpClientUtil {
                 //设置参数到请求对象中
                 ((HttpEntityEnclosingRequestBase) request).setEntity(entity);
 
-                Utils.info("请求地址：" + config.url());
-                if (nvps.size() > 0) {
-                    Utils.info("请求参数：" + nvps.toString());
-                }
-                if (config.json() != null) {
-                    Utils.info("请求参数：" + config.json());
+                if (log != null) {
+                    log.request(request.getMethod(), config.url(), nvps, config.json());
                 }
+            } else if (log != null) {
+                log.request(request.getMethod(), config.url(), null, null);
+            }
+            //执行请求操作，并拿到结果（同步阻塞），配置了响应缓存时经由缓存执行
+            ResponseCache cache = responseCache;
+            if (cache == null) {
+                resp = doExecute(config, request);
             } else {
-                int idx = config.url().indexOf("?");
-                Utils.info("请求地址：" + config.url().substring(0, (idx > 0 ? idx : config.url().length())));
-                if (idx > 0) {
-                    Utils.info("请求参数：" + config.url().substring(idx + 1));
-                }
+                final HttpConfig target = config;
+                resp = cache.execute(request, new ResponseCache.RequestExecutor() {
+                    @Override
+                    public HttpResponse execute(HttpRequestBase request) throws IOException {
+                        return doExecute(target, request);
+                    }
+                });
+            }
+
+            if (log != null) {
+                log.response(resp.getStatusLine().getStatusCode());
             }
-            //执行请求操作，并拿到结果（同步阻塞）
-            resp = (config.context() == null) ? config.client().execute(request) : config.client().execute(request, config.context());
 
             if (config.isReturnRespHeaders()) {
                 //获取所有response的header信息
@@ -438,16 +619,19 @@ public class HttpClientUtil {
      *
      * @param resp     响应对象
      * @param encoding 编码
+     * @param log      请求日志，不记录时为 null
      * @throws HttpProcessException http处理异常
      * @return 返回处理结果
      */
-    private static String fmt2String(HttpResponse resp, String encoding) throws HttpProcessException {
+    private static String fmt2String(HttpResponse resp, String encoding, RequestLog log) throws HttpProcessException {
         String body = "";
         try {
             if (resp.getEntity() != null) {
                 // 按指定编码转换结果实体为String类型
                 body = EntityUtils.toString(resp.getEntity(), encoding);
-                Utils.info(body);
+                if (log != null) {
+                    log.body(body);
+                }
             } else {//有可能是head请求
                 body = resp.getStatusLine().toString();
             }
@@ -460,6 +644,28 @@ public class HttpClientUtil {
         return body;
     }
 
+    /**
+     * 转化为响应对象
+     *
+     * @param resp 响应对象
+     * @throws HttpProcessException http处理异常
+     * @return 返回处理结果
+     */
+    private static TransportResponse fmt2Response(HttpResponse resp) throws HttpProcessException {
+        try {
+            HttpEntity entity = resp.getEntity();
+            byte[] body = entity == null ? new byte[0] : EntityUtils.toByteArray(entity);
+            ContentType contentType = entity == null ? null : ContentType.get(entity);
+            String charset = contentType == null || contentType.getCharset() == null
+                    ? null : contentType.getCharset().name();
+            return new TransportResponse(resp.getStatusLine().getStatusCode(), resp.getAllHeaders(), body, charset);
+        } catch (IOException | RuntimeException e) {
+            throw new HttpProcessException(e);
+        } finally {
+            close(resp);
+        }
+    }
+
     /**
      * 转化为数字
      *
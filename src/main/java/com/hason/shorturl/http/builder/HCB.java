@@ -2,21 +2,30 @@ package com.hason.shorturl.http.builder;
 
 import com.hason.shorturl.http.common.SSLs;
 import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.policy.RetryPolicy;
+import com.hason.shorturl.http.pool.InstrumentedConnectionManager;
 import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.ServiceUnavailableRetryStrategy;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestWrapper;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.HttpContext;
 
 import javax.net.ssl.SSLException;
@@ -24,6 +33,7 @@ import javax.net.ssl.SSLHandshakeException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpClient 创建者
@@ -34,8 +44,16 @@ import java.net.UnknownHostException;
  */
 public class HCB extends HttpClientBuilder {
 
+    /** 已向重试预算存入令牌的请求，保存在 HttpContext 中 */
+    private static final String RETRY_BUDGET_REQUEST = "shorturl.retry-budget.request";
+
+    /** HttpContext 中该属性为 true 时，调用方已按逻辑请求存入令牌，拦截器不再存入 */
+    public static final String RETRY_BUDGET_DEPOSITED = "shorturl.retry-budget.deposited";
+
     private boolean isSetPool = false;//记录是否设置了连接池
-    private SSLs.SSLProtocolVersion sslpv = SSLs.SSLProtocolVersion.SSLv3;//ssl 协议版本
+    private InstrumentedConnectionManager connManager;//连接池
+    private DnsResolver dnsResolver;//DNS 解析器
+    private SSLs.SSLProtocolVersion sslpv = SSLs.SSLProtocolVersion.TLS;//ssl 协议版本，默认启用 TLSv1.3 和 TLSv1.2
 
     //用于配置ssl
     private SSLs ssls = SSLs.getInstance();
@@ -134,19 +152,83 @@ public class HCB extends HttpClientBuilder {
      * @throws HttpProcessException    http处理异常
      */
     public HCB pool(int maxTotal, int defaultMaxPerRoute) throws HttpProcessException {
+        return pool(maxTotal, defaultMaxPerRoute, 2000);
+    }
+
+    /**
+     * 设置连接池（默认开启https）
+     *
+     * @param maxTotal                    最大连接数
+     * @param defaultMaxPerRoute    每个路由默认连接数
+     * @param validateAfterInactivity    连接空闲超过此时间后，租用前先校验是否失效，单位-毫秒，小于等于 0 表示不校验
+     * @return 返回当前对象
+     * @throws HttpProcessException    http处理异常
+     */
+    public HCB pool(int maxTotal, int defaultMaxPerRoute, int validateAfterInactivity) throws HttpProcessException {
         Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder
                 .<ConnectionSocketFactory>create()
                 .register("http", PlainConnectionSocketFactory.INSTANCE)
                 .register("https", ssls.getSSLCONNSF(sslpv)).build();
         //设置连接池大小
-        PoolingHttpClientConnectionManager connManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connManager = dnsResolver == null
+                ? new InstrumentedConnectionManager(socketFactoryRegistry)
+                : new InstrumentedConnectionManager(socketFactoryRegistry, dnsResolver);
         connManager.setMaxTotal(maxTotal);// Increase max total connection to $maxTotal
         connManager.setDefaultMaxPerRoute(defaultMaxPerRoute);// Increase default max connection per route to $defaultMaxPerRoute
         //connManager.setMaxPerRoute(route, max);// Increase max connections for $route(eg：localhost:80) to 50
+        connManager.setValidateAfterInactivity(validateAfterInactivity);
         isSetPool = true;
         return (HCB) this.setConnectionManager(connManager);
     }
 
+    /**
+     * 设置DNS解析器，如 {@link com.hason.shorturl.http.common.CachingDnsResolver}<br>
+     * 如果同时设置连接池，必须<b>先调用此方法，再调用pool方法</b>
+     *
+     * @param dnsResolver        DNS解析器
+     * @return 返回当前对象
+     */
+    public HCB dns(DnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+        return (HCB) this.setDnsResolver(dnsResolver);
+    }
+
+    /**
+     * 后台定期清理过期连接及空闲超过指定时间的连接（需要先设置连接池）
+     *
+     * @param maxIdleMillis        最大空闲时间，单位-毫秒
+     * @return 返回当前对象
+     */
+    public HCB evict(long maxIdleMillis) {
+        this.evictExpiredConnections();
+        return (HCB) this.evictIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置连接保活时间：优先使用服务端 Keep-Alive 响应头中的 timeout，未返回时使用默认值
+     *
+     * @param defaultKeepAliveMillis        默认保活时间，单位-毫秒
+     * @return 返回当前对象
+     */
+    public HCB keepAlive(final long defaultKeepAliveMillis) {
+        return (HCB) this.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return duration > 0 ? duration : defaultKeepAliveMillis;
+            }
+        });
+    }
+
+    /**
+     * 获取连接池，可用于查看连接池统计，未设置连接池时返回 null
+     *
+     * @return 连接池
+     */
+    public InstrumentedConnectionManager connectionManager() {
+        return connManager;
+    }
+
     /**
      * 设置代理
      *
@@ -220,10 +302,76 @@ public class HCB extends HttpClientBuilder {
         return this;
     }
 
+    /**
+     * 按重试策略重试（指数退避 + 全抖动 + 重试预算）<br>
+     * 仅重试幂等请求：连接异常，或响应状态码命中策略（默认 502、503、504）<br>
+     * 同一个策略对象可被多个 client 共享，从而共享重试预算；
+     * 自行重试的调用方可在 HttpContext 中设置 {@link #RETRY_BUDGET_DEPOSITED}，按逻辑请求存入令牌
+     *
+     * @param policy                        重试策略
+     * @return 返回当前对象
+     */
+    public HCB retry(final RetryPolicy policy) {
+        // 每个请求向重试预算存入一次令牌：拦截器在 RetryExec 内执行，重试时以同一个请求再次调用，需跳过
+        this.addInterceptorFirst(new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+                if (Boolean.TRUE.equals(context.getAttribute(RETRY_BUDGET_DEPOSITED))) {
+                    return;
+                }
+                Object original = request instanceof HttpRequestWrapper
+                        ? ((HttpRequestWrapper) request).getOriginal() : request;
+                if (context.getAttribute(RETRY_BUDGET_REQUEST) != original) {
+                    context.setAttribute(RETRY_BUDGET_REQUEST, original);
+                    policy.onRequest();
+                }
+            }
+        });
+        this.setRetryHandler(new HttpRequestRetryHandler() {
+            @Override
+            public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+                if (!policy.isRetryable(exception)) {
+                    return false;
+                }
+                HttpRequest request = HttpClientContext.adapt(context).getRequest();
+                // 非幂等请求不重试
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    return false;
+                }
+                return policy.tryAcquireRetry(executionCount) && policy.backoff(executionCount);
+            }
+        });
+        this.setServiceUnavailableRetryStrategy(new ServiceUnavailableRetryStrategy() {
+
+            // getRetryInterval 无参数，与 retryRequest 在同一线程中先后调用，借助 ThreadLocal 传递退避时间
+            private final ThreadLocal<Long> interval = new ThreadLocal<>();
+
+            @Override
+            public boolean retryRequest(HttpResponse response, int executionCount, HttpContext context) {
+                // 非幂等请求不重试：服务端返回 5xx 时可能已经处理了请求
+                if (HttpClientContext.adapt(context).getRequest() instanceof HttpEntityEnclosingRequest
+                        || !policy.isRetryable(response.getStatusLine().getStatusCode())
+                        || !policy.tryAcquireRetry(executionCount)) {
+                    return false;
+                }
+                interval.set(policy.backoffMillis(executionCount));
+                return true;
+            }
+
+            @Override
+            public long getRetryInterval() {
+                Long millis = interval.get();
+                interval.remove();
+                return millis == null ? 0 : millis;
+            }
+        });
+        return this;
+    }
+
     /**
      * 设置ssl版本<br>
      * 如果您想要设置ssl版本，必须<b><span style="color:red">先调用此方法，再调用ssl方法</span><br>
-     * 仅支持 SSLv3，TSLv1，TSLv1.1，TSLv1.2</b>
+     * 仅支持 SSLv3，TSLv1，TSLv1.1，TSLv1.2，TLSv1.3，TLS（默认，启用 TLSv1.3 和 TLSv1.2）</b>
      * @param sslpv    版本号
      * @return 返回当前对象
      */
@@ -234,7 +382,7 @@ public class HCB extends HttpClientBuilder {
     /**
      * 设置ssl版本<br>
      * 如果您想要设置ssl版本，必须<b>先调用此方法，再调用ssl方法<br>
-     * 仅支持 SSLv3，TSLv1，TSLv1.1，TSLv1.2</b>
+     * 仅支持 SSLv3，TSLv1，TSLv1.1，TSLv1.2，TLSv1.3，TLS（默认，启用 TLSv1.3 和 TLSv1.2）</b>
      * @param sslpv    版本号
      * @return 返回当前对象
      */
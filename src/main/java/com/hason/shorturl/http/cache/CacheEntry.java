@@ -0,0 +1,327 @@
+package com.hason.shorturl.http.cache;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存的响应，包含计算新鲜度（RFC 7234 第 4.2 节）所需的时间信息
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/7
+ */
+final class CacheEntry {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** 启发式新鲜期的上限 */
+    private static final long MAX_HEURISTIC_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    final String key;
+    final int statusCode;
+    final String reasonPhrase;
+    final Header[] headers;
+    /** HEAD 请求的响应为 null */
+    final byte[] body;
+    /** 发出请求、收到响应的时间，单位-毫秒 */
+    final long requestTime;
+    final long responseTime;
+    /** Vary 响应头指定的请求头及其取值 */
+    final Map<String, String> varyValues;
+
+    CacheEntry(String key, int statusCode, String reasonPhrase, Header[] headers, byte[] body,
+               long requestTime, long responseTime, Map<String, String> varyValues) {
+        this.key = key;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headers = headers;
+        this.body = body;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyValues = varyValues;
+    }
+
+    /**
+     * 根据 304 响应更新响应头及时间
+     */
+    CacheEntry revalidated(Header[] notModifiedHeaders, long requestTime, long responseTime) {
+        List<Header> merged = new ArrayList<>(Arrays.asList(headers));
+        for (Header header : notModifiedHeaders) {
+            String name = header.getName();
+            if ("Content-Length".equalsIgnoreCase(name) || "Content-Encoding".equalsIgnoreCase(name)
+                    || "Transfer-Encoding".equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (int i = merged.size() - 1; i >= 0; i--) {
+                if (merged.get(i).getName().equalsIgnoreCase(name)) {
+                    merged.remove(i);
+                }
+            }
+        }
+        for (Header header : notModifiedHeaders) {
+            String name = header.getName();
+            if (!"Content-Length".equalsIgnoreCase(name) && !"Content-Encoding".equalsIgnoreCase(name)
+                    && !"Transfer-Encoding".equalsIgnoreCase(name)) {
+                merged.add(header);
+            }
+        }
+        return new CacheEntry(key, statusCode, reasonPhrase, merged.toArray(new Header[merged.size()]),
+                body, requestTime, responseTime, varyValues);
+    }
+
+    /**
+     * 生成响应对象
+     *
+     * @param now 当前时间，用于计算 Age 响应头
+     */
+    HttpResponse toResponse(long now) {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, reasonPhrase);
+        for (Header header : headers) {
+            if (!"Age".equalsIgnoreCase(header.getName())) {
+                response.addHeader(header);
+            }
+        }
+        response.addHeader(new BasicHeader("Age", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(currentAge(now)))));
+        if (body != null) {
+            ContentType contentType = null;
+            String value = getHeader("Content-Type");
+            if (value != null) {
+                try {
+                    contentType = ContentType.parse(value);
+                } catch (RuntimeException e) {
+                    // 无法识别的 Content-Type，不设置
+                }
+            }
+            HttpEntity entity = new ByteArrayEntity(body, contentType);
+            response.setEntity(entity);
+        }
+        return response;
+    }
+
+    /**
+     * 请求头是否与缓存时 Vary 指定的请求头取值一致
+     */
+    boolean matches(HttpRequest request) {
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            String actual = headerValues(request.getHeaders(entry.getKey()));
+            if (!actual.equals(entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 对于指定请求是否新鲜，即可以不经验证直接返回
+     */
+    boolean isFresh(HttpRequest request, long now) {
+        if (hasDirective(headers, "Cache-Control", "no-cache") || hasDirective(headers, "Pragma", "no-cache")) {
+            return false;
+        }
+        Header[] requestHeaders = request.getAllHeaders();
+        if (hasDirective(requestHeaders, "Cache-Control", "no-cache")
+                || hasDirective(requestHeaders, "Pragma", "no-cache")) {
+            return false;
+        }
+        long age = currentAge(now);
+        long maxAge = directiveSeconds(requestHeaders, "max-age");
+        if (maxAge >= 0 && age > TimeUnit.SECONDS.toMillis(maxAge)) {
+            return false;
+        }
+        return age < freshnessLifetime();
+    }
+
+    /**
+     * 是否有可用于条件请求的验证器
+     */
+    boolean hasValidator() {
+        return getHeader("ETag") != null || getHeader("Last-Modified") != null;
+    }
+
+    /**
+     * 新鲜期，单位-毫秒：max-age，其次 Expires - Date，其次按 Last-Modified 启发式计算
+     */
+    long freshnessLifetime() {
+        long maxAge = directiveSeconds(headers, "max-age");
+        if (maxAge >= 0) {
+            return TimeUnit.SECONDS.toMillis(maxAge);
+        }
+        Date date = date("Date");
+        long dateValue = date == null ? responseTime : date.getTime();
+        String expires = getHeader("Expires");
+        if (expires != null) {
+            Date expiresDate = DateUtils.parseDate(expires);
+            // 无法解析的 Expires（如 0）表示已过期
+            return expiresDate == null ? 0 : Math.max(0, expiresDate.getTime() - dateValue);
+        }
+        Date lastModified = date("Last-Modified");
+        if (lastModified != null && ResponseCache.isHeuristicallyCacheable(statusCode)) {
+            return Math.min(MAX_HEURISTIC_MILLIS, Math.max(0, (dateValue - lastModified.getTime()) / 10));
+        }
+        return 0;
+    }
+
+    /**
+     * 当前年龄，单位-毫秒
+     */
+    long currentAge(long now) {
+        Date date = date("Date");
+        long apparentAge = date == null ? 0 : Math.max(0, responseTime - date.getTime());
+        long ageValue = 0;
+        String age = getHeader("Age");
+        if (age != null) {
+            try {
+                ageValue = TimeUnit.SECONDS.toMillis(Long.parseLong(age.trim()));
+            } catch (NumberFormatException e) {
+                // 忽略无效的 Age
+            }
+        }
+        long correctedInitialAge = Math.max(apparentAge, ageValue + (responseTime - requestTime));
+        return correctedInitialAge + Math.max(0, now - responseTime);
+    }
+
+    String getHeader(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 占用内存的估算值，单位-字节
+     */
+    long size() {
+        long size = 256 + key.length() * 2;
+        for (Header header : headers) {
+            size += 64 + (header.getName().length() + header.getValue().length()) * 2;
+        }
+        return size + (body == null ? 0 : body.length);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeInt(statusCode);
+        out.writeUTF(reasonPhrase == null ? "" : reasonPhrase);
+        out.writeInt(headers.length);
+        for (Header header : headers) {
+            out.writeUTF(header.getName());
+            out.writeUTF(header.getValue());
+        }
+        out.writeInt(varyValues.size());
+        for (Map.Entry<String, String> entry : varyValues.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+        out.writeLong(requestTime);
+        out.writeLong(responseTime);
+        out.writeInt(body == null ? -1 : body.length);
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
+    static CacheEntry readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("不支持的缓存文件格式");
+        }
+        String key = in.readUTF();
+        int statusCode = in.readInt();
+        String reasonPhrase = in.readUTF();
+        Header[] headers = new Header[in.readInt()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+        }
+        int varyCount = in.readInt();
+        Map<String, String> varyValues = new LinkedHashMap<>();
+        for (int i = 0; i < varyCount; i++) {
+            varyValues.put(in.readUTF(), in.readUTF());
+        }
+        long requestTime = in.readLong();
+        long responseTime = in.readLong();
+        int length = in.readInt();
+        byte[] body = null;
+        if (length >= 0) {
+            body = new byte[length];
+            in.readFully(body);
+        }
+        return new CacheEntry(key, statusCode, reasonPhrase, headers, body, requestTime, responseTime, varyValues);
+    }
+
+    private Date date(String name) {
+        String value = getHeader(name);
+        return value == null ? null : DateUtils.parseDate(value);
+    }
+
+    /**
+     * 多个同名请求头的取值，以逗号连接
+     */
+    static String headerValues(Header[] headers) {
+        StringBuilder builder = new StringBuilder();
+        for (Header header : headers) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(header.getValue().trim());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 指定头中是否包含指令，如 Cache-Control: no-cache
+     */
+    static boolean hasDirective(Header[] headers, String headerName, String directive) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(headerName)) {
+                for (HeaderElement element : header.getElements()) {
+                    if (element.getName().equalsIgnoreCase(directive)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cache-Control 指令的秒数，不存在或无效时返回 -1
+     */
+    static long directiveSeconds(Header[] headers, String directive) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase("Cache-Control")) {
+                for (HeaderElement element : header.getElements()) {
+                    if (element.getName().equalsIgnoreCase(directive)) {
+                        try {
+                            return Math.max(0, Long.parseLong(element.getValue()));
+                        } catch (NumberFormatException e) {
+                            return -1;
+                        }
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,141 @@
+package com.hason.shorturl.http.cache;
+
+import com.hason.shorturl.http.common.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 响应缓存的磁盘层，存放从内存层淘汰的条目
+ *
+ * 每个条目一个文件，文件名为缓存键的 SHA-1。索引只保存在内存中，按最近使用顺序淘汰，
+ * 因此磁盘层不跨进程保留，重启后目录中的旧文件会在写入同名条目时被覆盖。
+ * 非线程安全，由 {@link ResponseCache} 以磁盘层的锁调用。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/7
+ */
+final class DiskCacheStore {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final long maxBytes;
+
+    /** 缓存键 -> 文件大小，按访问顺序排列 */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    DiskCacheStore(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("无法创建缓存目录：" + directory);
+        }
+    }
+
+    /**
+     * 写入条目，超出容量时淘汰最久未使用的条目
+     */
+    void put(CacheEntry entry) {
+        remove(entry.key);
+        File file = file(entry.key);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            entry.writeTo(out);
+        } catch (IOException e) {
+            Utils.infoException("写入磁盘缓存失败：" + entry.key, e);
+            delete(file);
+            return;
+        }
+        long size = file.length();
+        index.put(entry.key, size);
+        totalBytes += size;
+
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            delete(file(eldest.getKey()));
+        }
+    }
+
+    /**
+     * 读取并移除条目（条目随后回到内存层）
+     *
+     * @return 条目，不存在或读取失败时返回 null
+     */
+    CacheEntry take(String key) {
+        if (!index.containsKey(key)) {
+            return null;
+        }
+        File file = file(key);
+        CacheEntry entry = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            entry = CacheEntry.readFrom(in);
+            if (!key.equals(entry.key)) {
+                entry = null;
+            }
+        } catch (IOException e) {
+            Utils.infoException("读取磁盘缓存失败：" + key, e);
+        }
+        remove(key);
+        return entry;
+    }
+
+    void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+            delete(file(key));
+        }
+    }
+
+    void clear() {
+        for (String key : index.keySet()) {
+            delete(file(key));
+        }
+        index.clear();
+        totalBytes = 0;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private File file(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            char[] name = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                name[i * 2] = HEX[(digest[i] >> 4) & 0x0F];
+                name[i * 2 + 1] = HEX[digest[i] & 0x0F];
+            }
+            return new File(directory, new String(name) + ".cache");
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package com.hason.shorturl.http.cache;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP 响应缓存（共享缓存），供 {@link com.hason.shorturl.http.HttpClientUtil} 使用，所有 client 共用
+ *
+ * <pre>
+ *   1. 只缓存 GET、HEAD 请求；遵守请求和响应的 Cache-Control（no-store、no-cache、max-age）、Pragma 及 Vary；
+ *      作为共享缓存，不缓存 private 响应，带 Authorization 的请求只缓存明确声明 public 或 s-maxage 的响应
+ *   2. 新鲜期取 max-age，其次 Expires - Date，其次按 Last-Modified 启发式计算（10%，最长 1 天）
+ *   3. 过期条目带有 ETag / Last-Modified 时，发送 If-None-Match / If-Modified-Since 条件请求，
+ *      304 时更新条目并返回缓存的响应
+ *   4. POST、PUT、DELETE、PATCH 请求成功后，使同一地址的缓存失效
+ *   5. 内存层按最近使用淘汰，总大小不超过 maxMemoryBytes；配置了磁盘目录时，淘汰的条目转存到磁盘层
+ *   6. 内存层与磁盘层各自加锁，磁盘读写不持有内存层的锁，不影响内存命中及无需缓存的请求
+ * </pre>
+ *
+ * 响应体超过 maxEntryBytes 时不缓存，响应照常流式返回。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/7
+ */
+public class ResponseCache {
+
+    /** 可启发式缓存的状态码（RFC 7231 第 6.1 节） */
+    private static final Set<Integer> HEURISTICALLY_CACHEABLE = new HashSet<>(
+            Arrays.asList(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501));
+
+    /** 有明确新鲜期时也可缓存的状态码 */
+    private static final Set<Integer> CACHEABLE_WITH_EXPLICIT_FRESHNESS = new HashSet<>(
+            Arrays.asList(302, 303, 307));
+
+    private final long maxMemoryBytes;
+    private final long maxEntryBytes;
+    private final DiskCacheStore disk;
+
+    /** 内存层，按访问顺序排列 */
+    private final LinkedHashMap<String, CacheEntry> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    /** 已从内存层淘汰、尚未写入磁盘层的条目，由内存层的锁保护 */
+    private final Map<String, CacheEntry> spilling = new HashMap<>();
+
+    /** 磁盘层的锁，持有时可以再获取内存层的锁（this），反之不可 */
+    private final Object diskLock = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+
+    private ResponseCache(Builder builder) {
+        this.maxMemoryBytes = builder.maxMemoryBytes;
+        this.maxEntryBytes = builder.maxEntryBytes;
+        this.disk = builder.diskDirectory == null ? null : new DiskCacheStore(builder.diskDirectory, builder.maxDiskBytes);
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 发送请求的回调
+     */
+    public interface RequestExecutor {
+
+        HttpResponse execute(HttpRequestBase request) throws IOException;
+    }
+
+    /**
+     * 经由缓存执行请求
+     *
+     * @param request  请求对象，过期条目需要验证时会添加条件请求头
+     * @param executor 实际发送请求
+     * @return 响应，缓存命中时为缓存的副本
+     * @throws IOException 发送请求失败
+     */
+    public HttpResponse execute(HttpRequestBase request, RequestExecutor executor) throws IOException {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            HttpResponse response = executor.execute(request);
+            if (!"OPTIONS".equals(method) && !"TRACE".equals(method)
+                    && response.getStatusLine().getStatusCode() < 400) {
+                invalidate(request.getURI().toString());
+            }
+            return response;
+        }
+        if (request.getFirstHeader("Range") != null) {
+            // 不缓存分段响应，也不以完整响应应答分段请求
+            return executor.execute(request);
+        }
+
+        String key = key(method, request.getURI().toString());
+        boolean noStore = CacheEntry.hasDirective(request.getAllHeaders(), "Cache-Control", "no-store");
+        CacheEntry cached = noStore ? null : get(key);
+        if (cached != null && !cached.matches(request)) {
+            cached = null;
+        }
+        long now = System.currentTimeMillis();
+        if (cached != null && cached.isFresh(request, now)) {
+            hits.incrementAndGet();
+            return cached.toResponse(now);
+        }
+        misses.incrementAndGet();
+
+        boolean conditional = false;
+        if (cached != null && cached.hasValidator()
+                && request.getFirstHeader("If-None-Match") == null
+                && request.getFirstHeader("If-Modified-Since") == null) {
+            String etag = cached.getHeader("ETag");
+            String lastModified = cached.getHeader("Last-Modified");
+            if (etag != null) {
+                request.setHeader("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                request.setHeader("If-Modified-Since", lastModified);
+            }
+            conditional = true;
+        }
+
+        long requestTime = System.currentTimeMillis();
+        HttpResponse response = executor.execute(request);
+        long responseTime = System.currentTimeMillis();
+        int status = response.getStatusLine().getStatusCode();
+
+        if (conditional && status == 304) {
+            EntityUtils.consume(response.getEntity());
+            closeQuietly(response);
+            revalidations.incrementAndGet();
+            CacheEntry updated = cached.revalidated(response.getAllHeaders(), requestTime, responseTime);
+            put(updated);
+            return updated.toResponse(responseTime);
+        }
+        if (noStore || !isStorable(status, request, response)) {
+            // 调用方自己的条件请求返回 304 时，缓存的条目依然有效
+            if (cached != null && status < 500 && status != 304) {
+                remove(key);
+            }
+            return response;
+        }
+        return store(key, request, response, requestTime, responseTime);
+    }
+
+    /**
+     * 使地址的缓存失效
+     */
+    public void invalidate(String url) {
+        remove(key("GET", url));
+        remove(key("HEAD", url));
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (diskLock) {
+            synchronized (this) {
+                memory.clear();
+                spilling.clear();
+                memoryBytes = 0;
+            }
+            if (disk != null) {
+                disk.clear();
+            }
+        }
+    }
+
+    /** 内存层条目数 */
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    /** 内存层占用的估算字节数 */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /** 磁盘层条目数 */
+    public int getDiskEntries() {
+        if (disk == null) {
+            return 0;
+        }
+        synchronized (diskLock) {
+            return disk.size();
+        }
+    }
+
+    /** 缓存命中（未访问网络）次数 */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** 未命中或需要验证的次数 */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** 条件请求返回 304 的次数 */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    /** 写入缓存的次数 */
+    public long getStoreCount() {
+        return stores.get();
+    }
+
+    static boolean isHeuristicallyCacheable(int status) {
+        return HEURISTICALLY_CACHEABLE.contains(status);
+    }
+
+    /**
+     * 读取响应体并写入缓存，响应体超过 maxEntryBytes 时放弃缓存，已读取的部分与剩余部分拼接后返回
+     */
+    private HttpResponse store(String key, HttpRequestBase request, HttpResponse response,
+                               long requestTime, long responseTime) throws IOException {
+        HttpEntity entity = response.getEntity();
+        byte[] body = null;
+        if ("GET".equals(request.getMethod())) {
+            body = new byte[0];
+            if (entity != null) {
+                if (entity.getContentLength() > maxEntryBytes) {
+                    return response;
+                }
+                InputStream in = entity.getContent();
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                        entity.getContentLength() > 0 ? (int) entity.getContentLength() : 1024);
+                byte[] chunk = new byte[4096];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, n);
+                    if (buffer.size() > maxEntryBytes) {
+                        BasicHttpEntity rest = new BasicHttpEntity();
+                        rest.setContent(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), in));
+                        rest.setContentType(entity.getContentType());
+                        rest.setContentEncoding(entity.getContentEncoding());
+                        rest.setChunked(entity.isChunked());
+                        rest.setContentLength(entity.getContentLength());
+                        response.setEntity(rest);
+                        return response;
+                    }
+                }
+                in.close();
+                body = buffer.toByteArray();
+                ContentType contentType = null;
+                try {
+                    contentType = ContentType.get(entity);
+                } catch (RuntimeException e) {
+                    // 无法识别的 Content-Type，不设置
+                }
+                response.setEntity(new ByteArrayEntity(body, contentType));
+            }
+        }
+
+        Map<String, String> varyValues = Collections.emptyMap();
+        Header[] vary = response.getHeaders("Vary");
+        if (vary.length > 0) {
+            varyValues = new LinkedHashMap<>();
+            for (Header header : vary) {
+                for (HeaderElement element : header.getElements()) {
+                    varyValues.put(element.getName(), CacheEntry.headerValues(request.getHeaders(element.getName())));
+                }
+            }
+        }
+        CacheEntry entry = new CacheEntry(key, response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase(), response.getAllHeaders(), body,
+                requestTime, responseTime, varyValues);
+        put(entry);
+        stores.incrementAndGet();
+        return response;
+    }
+
+    private boolean isStorable(int status, HttpRequestBase request, HttpResponse response) {
+        Header[] headers = response.getAllHeaders();
+        if (CacheEntry.hasDirective(headers, "Cache-Control", "no-store")
+                || CacheEntry.hasDirective(headers, "Cache-Control", "private")) {
+            return false;
+        }
+        if (request.getFirstHeader("Authorization") != null
+                && !CacheEntry.hasDirective(headers, "Cache-Control", "public")
+                && CacheEntry.directiveSeconds(headers, "s-maxage") < 0) {
+            // 鉴权的响应可能因调用方而异，未声明可共享时不缓存，避免返回给其他调用方
+            return false;
+        }
+        for (Header header : response.getHeaders("Vary")) {
+            if (header.getValue().trim().equals("*")) {
+                return false;
+            }
+        }
+        boolean explicit = CacheEntry.directiveSeconds(headers, "max-age") >= 0
+                || response.getFirstHeader("Expires") != null;
+        if (HEURISTICALLY_CACHEABLE.contains(status)) {
+            return explicit || response.getFirstHeader("ETag") != null
+                    || response.getFirstHeader("Last-Modified") != null;
+        }
+        return explicit && CACHEABLE_WITH_EXPLICIT_FRESHNESS.contains(status);
+    }
+
+    private CacheEntry get(String key) {
+        synchronized (this) {
+            CacheEntry entry = memory.get(key);
+            if (entry == null) {
+                entry = spilling.get(key);
+            }
+            if (entry != null || disk == null) {
+                return entry;
+            }
+        }
+        CacheEntry entry;
+        synchronized (diskLock) {
+            entry = disk.take(key);
+        }
+        if (entry == null) {
+            return null;
+        }
+        List<CacheEntry> evicted;
+        synchronized (this) {
+            CacheEntry newer = memory.get(key);
+            if (newer != null) {
+                // 读取磁盘期间已写入更新的条目
+                return newer;
+            }
+            evicted = putInMemory(entry);
+        }
+        spill(evicted);
+        return entry;
+    }
+
+    private void put(CacheEntry entry) {
+        List<CacheEntry> evicted;
+        synchronized (this) {
+            spilling.remove(entry.key);
+            evicted = putInMemory(entry);
+        }
+        if (disk != null) {
+            synchronized (diskLock) {
+                disk.remove(entry.key);
+            }
+            spill(evicted);
+        }
+    }
+
+    /**
+     * 放入内存层，淘汰超出容量的最久未使用条目，需持有内存层的锁
+     *
+     * @return 需要转存到磁盘层的条目
+     */
+    private List<CacheEntry> putInMemory(CacheEntry entry) {
+        CacheEntry previous = memory.put(entry.key, entry);
+        if (previous != null) {
+            memoryBytes -= previous.size();
+        }
+        memoryBytes += entry.size();
+
+        List<CacheEntry> evicted = Collections.emptyList();
+        Iterator<Map.Entry<String, CacheEntry>> it = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && it.hasNext()) {
+            CacheEntry eldest = it.next().getValue();
+            it.remove();
+            memoryBytes -= eldest.size();
+            if (disk != null) {
+                if (evicted.isEmpty()) {
+                    evicted = new ArrayList<>();
+                }
+                evicted.add(eldest);
+                spilling.put(eldest.key, eldest);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * 把淘汰的条目写入磁盘层，不持有内存层的锁；期间已失效或被更新的条目不再写入
+     */
+    private void spill(List<CacheEntry> evicted) {
+        for (CacheEntry entry : evicted) {
+            synchronized (diskLock) {
+                synchronized (this) {
+                    if (spilling.get(entry.key) != entry) {
+                        continue;
+                    }
+                    spilling.remove(entry.key);
+                }
+                disk.put(entry);
+            }
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            CacheEntry entry = memory.remove(key);
+            if (entry != null) {
+                memoryBytes -= entry.size();
+            }
+            spilling.remove(key);
+        }
+        if (disk != null) {
+            synchronized (diskLock) {
+                disk.remove(key);
+            }
+        }
+    }
+
+    private static String key(String method, String url) {
+        return method + " " + url;
+    }
+
+    private static void closeQuietly(HttpResponse response) {
+        if (response instanceof Closeable) {
+            try {
+                ((Closeable) response).close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private long maxMemoryBytes = 16 * 1024 * 1024;
+        private long maxEntryBytes = 1024 * 1024;
+        private File diskDirectory;
+        private long maxDiskBytes = 256 * 1024 * 1024;
+
+        /**
+         * 内存层的最大字节数（估算值）
+         */
+        public Builder maxMemoryBytes(long maxMemoryBytes) {
+            Validate.isTrue(maxMemoryBytes > 0, "maxMemoryBytes 必须大于 0");
+            this.maxMemoryBytes = maxMemoryBytes;
+            return this;
+        }
+
+        /**
+         * 单个响应体的最大字节数，超过时不缓存
+         */
+        public Builder maxEntryBytes(long maxEntryBytes) {
+            Validate.isTrue(maxEntryBytes > 0, "maxEntryBytes 必须大于 0");
+            this.maxEntryBytes = maxEntryBytes;
+            return this;
+        }
+
+        /**
+         * 启用磁盘层，从内存层淘汰的条目写入该目录
+         *
+         * @param directory 缓存目录，不存在时创建
+         * @param maxBytes  磁盘层的最大字节数
+         */
+        public Builder disk(File directory, long maxBytes) {
+            Validate.isTrue(maxBytes > 0, "maxBytes 必须大于 0");
+            this.diskDirectory = Validate.notNull(directory, "directory");
+            this.maxDiskBytes = maxBytes;
+            return this;
+        }
+
+        public ResponseCache build() {
+            return new ResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.hason.shorturl.http.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带缓存的 DNS 解析器
+ *
+ * <pre>
+ *   1. 解析结果缓存 ttl 时长，缓存命中时不再阻塞在 DNS 查询上
+ *   2. 距离过期不足 refreshAhead 时，在后台异步刷新，热点域名基本不会出现同步解析
+ *   3. 解析失败时，在过期后 maxStale 时长内继续返回旧的结果，避免 DNS 抖动直接变成建立连接失败
+ *   4. 最多缓存 maxSize 个域名，超过 ttl + maxStale 未更新的域名移除
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/30
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    private final DnsResolver delegate;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+    private final long maxStaleNanos;
+    private final ExecutorService refresher;
+
+    private final Cache<String, Entry> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private CachingDnsResolver(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttlMillis);
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(builder.refreshAheadMillis);
+        this.maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxStaleMillis);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(builder.maxSize)
+                .expireAfterWrite(ttlNanos + maxStaleNanos, TimeUnit.NANOSECONDS)
+                .build();
+        this.refresher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("dns-refresher-%d").setDaemon(true).build());
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        Entry entry = cache.getIfPresent(host);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return lookup(host).addresses;
+        }
+        long age = System.nanoTime() - entry.resolvedAt;
+        if (age < ttlNanos) {
+            hits.incrementAndGet();
+            if (age >= ttlNanos - refreshAheadNanos) {
+                refreshAsync(host, entry);
+            }
+            return entry.addresses;
+        }
+        misses.incrementAndGet();
+        try {
+            return lookup(host).addresses;
+        } catch (UnknownHostException e) {
+            if (age < ttlNanos + maxStaleNanos) {
+                staleHits.incrementAndGet();
+                return entry.addresses;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 同步解析并更新缓存
+     */
+    private Entry lookup(String host) throws UnknownHostException {
+        try {
+            Entry entry = new Entry(delegate.resolve(host), System.nanoTime());
+            cache.put(host, entry);
+            return entry;
+        } catch (UnknownHostException e) {
+            failures.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 后台刷新，同一个域名同时只有一个刷新任务
+     */
+    private void refreshAsync(final String host, final Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshes.incrementAndGet();
+        refresher.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    lookup(host);
+                } catch (UnknownHostException e) {
+                    // 刷新失败时保留旧的结果，允许下次再次刷新
+                    entry.refreshing.set(false);
+                    Utils.infoException("刷新 DNS 缓存失败：" + host, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 缓存的域名数
+     */
+    public int size() {
+        return (int) cache.size();
+    }
+
+    /** 缓存命中次数 */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** 缓存未命中（同步解析）次数 */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /** 后台刷新次数 */
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    /** 解析失败时返回旧结果的次数 */
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    /** 解析失败次数（包括后台刷新） */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CachingDnsResolver{size=" + size()
+                + ", hits=" + hits
+                + ", misses=" + misses
+                + ", refreshes=" + refreshes
+                + ", staleHits=" + staleHits
+                + ", failures=" + failures
+                + '}';
+    }
+
+    private static class Entry {
+        private final InetAddress[] addresses;
+        private final long resolvedAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(InetAddress[] addresses, long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    /**
+     * DNS 解析器构建器
+     */
+    public static class Builder {
+
+        private DnsResolver delegate = SystemDefaultDnsResolver.INSTANCE;
+        private long ttlMillis = 60000;
+        private long refreshAheadMillis = 10000;
+        private long maxStaleMillis = 300000;
+        private long maxSize = 10000;
+
+        private Builder() {
+        }
+
+        /**
+         * @param delegate 实际执行解析的解析器，默认使用系统解析
+         * @return 返回当前对象
+         */
+        public Builder delegate(DnsResolver delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * @param ttlMillis 缓存有效期，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder ttl(long ttlMillis) {
+            Validate.isTrue(ttlMillis > 0, "ttl 必须大于 0");
+            this.ttlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * @param refreshAheadMillis 距离过期不足此时长时后台刷新，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder refreshAhead(long refreshAheadMillis) {
+            Validate.isTrue(refreshAheadMillis >= 0, "refreshAhead 不能小于 0");
+            this.refreshAheadMillis = refreshAheadMillis;
+            return this;
+        }
+
+        /**
+         * @param maxStaleMillis 解析失败时，过期后仍可使用旧结果的时长，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder maxStale(long maxStaleMillis) {
+            Validate.isTrue(maxStaleMillis >= 0, "maxStale 不能小于 0");
+            this.maxStaleMillis = maxStaleMillis;
+            return this;
+        }
+
+        /**
+         * @param maxSize 最多缓存的域名数
+         * @return 返回当前对象
+         */
+        public Builder maxSize(long maxSize) {
+            Validate.isTrue(maxSize > 0, "maxSize 必须大于 0");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public CachingDnsResolver build() {
+            Validate.isTrue(refreshAheadMillis <= ttlMillis, "refreshAhead 不能大于 ttl");
+            return new CachingDnsResolver(this);
+        }
+    }
+}
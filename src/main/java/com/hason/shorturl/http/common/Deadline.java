@@ -0,0 +1,65 @@
+package com.hason.shorturl.http.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求截止时间
+ *
+ * 基于 {@link System#nanoTime()} 计算，不受系统时钟调整影响。
+ * 发送请求时，剩余时间会被转换为该请求的连接池租用、建立连接和读取超时，到期后中止请求。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/23
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * 从现在起经过指定时长后到期
+     *
+     * @param duration 时长
+     * @param unit     时长单位
+     * @return 截止时间
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * 剩余时间，已到期时返回值小于等于 0
+     *
+     * @param unit 时间单位
+     * @return 剩余时间
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 是否已到期
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 返回两者中较早的截止时间
+     *
+     * @param other 另一个截止时间，可以为 null
+     * @return 较早的截止时间
+     */
+    public Deadline earliest(Deadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining(TimeUnit.MILLISECONDS) + "ms}";
+    }
+}
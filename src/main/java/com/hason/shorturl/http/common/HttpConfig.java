@@ -2,9 +2,12 @@ package com.hason.shorturl.http.common;
 
 import org.apache.http.Header;
 import org.apache.http.client.HttpClient;
+import org.apache.http.concurrent.Cancellable;
 import org.apache.http.protocol.HttpContext;
 
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Serializable;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
@@ -85,6 +88,21 @@ public class HttpConfig {
      */
     private String outenc;
 
+    /**
+     * 截止时间
+     */
+    private Deadline deadline;
+
+    /**
+     * 当前执行中的请求，用于中止请求
+     */
+    private volatile Cancellable request;
+
+    /**
+     * 是否已中止
+     */
+    private volatile boolean aborted;
+
     /**
      * 解决多线程下载时，strean被close的问题
      */
@@ -188,6 +206,34 @@ public class HttpConfig {
         return this;
     }
 
+    /**
+     * 以输入流作为请求内容，发送时从流中读取，发送结束（包括失败）后流会被关闭，流只能读取一次
+     *
+     * @param in     输入流
+     * @param length 内容长度，小于 0 表示未知，此时分块发送
+     * @return 返回当前对象
+     */
+    public HttpConfig stream(InputStream in, long length) {
+        map = new HashMap<String, Object>();
+        map.put(Utils.ENTITY_INPUTSTREAM, in);
+        if (length >= 0) {
+            map.put(Utils.ENTITY_INPUTSTREAM_LENGTH, length);
+        }
+        return this;
+    }
+
+    /**
+     * 以 Java 序列化后的对象作为请求内容，分块发送
+     *
+     * @param object 对象
+     * @return 返回当前对象
+     */
+    public HttpConfig serializable(Serializable object) {
+        map = new HashMap<String, Object>();
+        map.put(Utils.ENTITY_SERIALIZABLE, object);
+        return this;
+    }
+
     /**
      * @param filePaths 待上传文件所在路径
      * @return 返回当前对象
@@ -266,10 +312,76 @@ public class HttpConfig {
         return this;
     }
 
+    /**
+     * 设置截止时间，剩余时间会限制本次请求的各项超时，到期后中止请求
+     *
+     * @param deadline 截止时间，为 null 时不限制
+     * @return 返回当前对象
+     */
+    public HttpConfig deadline(Deadline deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * 复制当前配置（不包含中止状态）
+     * <p>
+     * 注意：url 与 out 保存在 ThreadLocal 中，在其他线程使用副本时需要重新设置
+     *
+     * @return 配置副本
+     */
+    public HttpConfig copy() {
+        HttpConfig copy = new HttpConfig();
+        copy.client = client;
+        copy.headers = headers;
+        copy.isReturnRespHeaders = isReturnRespHeaders;
+        copy.method = method;
+        copy.methodName = methodName;
+        copy.context = context;
+        copy.map = map;
+        copy.json = json;
+        copy.encoding = encoding;
+        copy.inenc = inenc;
+        copy.outenc = outenc;
+        copy.deadline = deadline;
+        return copy;
+    }
+
+    /**
+     * 绑定执行中的请求，如果已被中止，则立即中止该请求
+     *
+     * @param request 中止请求的回调，请求结束后传入 null 解除绑定
+     */
+    public void attach(Cancellable request) {
+        this.request = request;
+        if (aborted && request != null) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * 中止请求，执行中的请求会释放连接并抛出 IOException
+     */
+    public void abort() {
+        aborted = true;
+        Cancellable current = request;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
     public HttpClient client() {
         return client;
     }
 
+    public Deadline deadline() {
+        return deadline;
+    }
+
     public Header[] headers() {
         return headers;
     }
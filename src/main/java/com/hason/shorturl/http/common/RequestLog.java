@@ -0,0 +1,163 @@
+package com.hason.shorturl.http.common;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.NameValuePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求日志
+ *
+ * <pre>
+ *   1. 只有开启 debug（{@link Utils#debug()}）且日志级别为 INFO 时才记录，否则 {@link #sample()} 返回 null，不生成任何消息
+ *   2. 按采样率抽样，并限制每秒记录的请求数
+ *   3. 请求参数、响应内容超过 maxBodyLength 时截断
+ *   4. 以 key=value 格式输出，便于检索
+ * </pre>
+ *
+ * 用法：
+ * <pre>
+ *   RequestLog log = RequestLog.sample();
+ *   if (log != null) {
+ *       log.request(method, url, nvps, json);
+ *   }
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/10
+ */
+public final class RequestLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestLog.class);
+
+    /** 采样率，0 ~ 1 */
+    private static volatile double sampleRate = 1.0;
+
+    /** 每秒最多记录的请求数，小于等于 0 表示不限制 */
+    private static volatile int maxPerSecond = 0;
+
+    /** 请求参数、响应内容的最大记录长度 */
+    private static volatile int maxBodyLength = 1024;
+
+    private static final AtomicLong window = new AtomicLong();
+    private static final AtomicInteger windowCount = new AtomicInteger();
+
+    private final long startNanos = System.nanoTime();
+    private String url;
+
+    private RequestLog() {
+    }
+
+    /**
+     * 决定是否记录本次请求
+     *
+     * @return 日志对象，不记录时返回 null
+     */
+    public static RequestLog sample() {
+        if (!Utils.isDebug() || !logger.isInfoEnabled()) {
+            return null;
+        }
+        double rate = sampleRate;
+        if (rate < 1.0 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            return null;
+        }
+        int max = maxPerSecond;
+        if (max > 0) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long current = window.get();
+            if (current != second && window.compareAndSet(current, second)) {
+                windowCount.set(0);
+            }
+            if (windowCount.incrementAndGet() > max) {
+                return null;
+            }
+        }
+        return new RequestLog();
+    }
+
+    /**
+     * 设置采样率
+     *
+     * @param rate 0 ~ 1，0 表示不记录
+     */
+    public static void setSampleRate(double rate) {
+        Validate.inclusiveBetween(0.0, 1.0, rate, "采样率取值为 [0, 1]");
+        sampleRate = rate;
+    }
+
+    /**
+     * 设置每秒最多记录的请求数
+     *
+     * @param max 小于等于 0 表示不限制
+     */
+    public static void setMaxPerSecond(int max) {
+        maxPerSecond = max;
+    }
+
+    /**
+     * 设置请求参数、响应内容的最大记录长度，超过时截断
+     */
+    public static void setMaxBodyLength(int length) {
+        Validate.isTrue(length >= 0, "length 不能小于 0");
+        maxBodyLength = length;
+    }
+
+    /**
+     * 记录请求
+     *
+     * @param method 请求方法
+     * @param url    请求地址，查询字符串作为参数单独记录
+     * @param nvps   请求参数，可以为 null
+     * @param json   json 参数，可以为 null
+     */
+    public void request(Object method, String url, List<NameValuePair> nvps, String json) {
+        int idx = url.indexOf('?');
+        this.url = idx < 0 ? url : url.substring(0, idx);
+        StringBuilder params = new StringBuilder();
+        if (idx >= 0) {
+            params.append(url, idx + 1, url.length());
+        }
+        if (nvps != null && !nvps.isEmpty()) {
+            params.append(params.length() > 0 ? "&" : "").append(nvps);
+        }
+        if (json != null) {
+            params.append(params.length() > 0 ? " " : "").append(json);
+        }
+        logger.info("http request method={} url={} params={}", method, this.url, truncate(params));
+    }
+
+    /**
+     * 记录响应状态及耗时
+     *
+     * @param status 状态码
+     */
+    public void response(int status) {
+        logger.info("http response url={} status={} elapsed={}ms", url, status,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * 记录响应内容
+     *
+     * @param body 响应内容
+     */
+    public void body(String body) {
+        logger.info("http response url={} length={} body={}", url, body.length(), truncate(body));
+    }
+
+    private static CharSequence truncate(CharSequence text) {
+        int max = maxBodyLength;
+        if (text.length() <= max) {
+            return text;
+        }
+        return new StringBuilder(max + 32).append(text, 0, max)
+                .append("...(").append(text.length()).append(" chars)");
+    }
+}
@@ -15,22 +15,40 @@ import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * SSL 配置创造者
  *
+ * 每个协议版本的 SSLContext 及其 socket 工厂只创建一次，之后的获取不加锁。
+ * 所有连接共用同一个 SSLContext 的会话缓存，重新建立连接时可以恢复会话，省去完整握手。
+ *
  * @author Huanghs
  * @since 1.0
  * @date 2018/6/14
  */
 public class SSLs {
 
+    /** 客户端会话缓存的大小 */
+    private static final int SESSION_CACHE_SIZE = 1024;
+
+    /** 客户端会话的有效期，单位-秒 */
+    private static final int SESSION_TIMEOUT = 3600;
+
     private static final SSLHandler simpleVerifier = new SSLHandler();
-    private static SSLSocketFactory sslFactory;
-    private static SSLConnectionSocketFactory sslConnFactory;
-    private static SSLIOSessionStrategy sslIOSessionStrategy;
     private static SSLs sslutil = new SSLs();
-    private SSLContext sc;
+
+    /** 自定义的 SSLContext，设置后所有协议版本都使用它 */
+    private SSLContext customContext;
+
+    private final ConcurrentMap<SSLProtocolVersion, SSLContext> contexts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SSLProtocolVersion, SSLSocketFactory> sslFactories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SSLProtocolVersion, SSLConnectionSocketFactory> sslConnFactories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<SSLProtocolVersion, SSLIOSessionStrategy> sslIOSessionStrategies = new ConcurrentHashMap<>();
 
     public static SSLs getInstance() {
         return sslutil;
@@ -72,45 +90,51 @@ public class SSLs {
         return simpleVerifier;
     }
 
-    public synchronized SSLSocketFactory getSSLSF(SSLProtocolVersion sslpv) throws HttpProcessException {
-        if (sslFactory != null)
-            return sslFactory;
-        try {
-            SSLContext sc = getSSLContext(sslpv);
-            sc.init(null, new TrustManager[]{simpleVerifier}, null);
-            sslFactory = sc.getSocketFactory();
-        } catch (KeyManagementException e) {
-            throw new HttpProcessException(e);
+    public SSLSocketFactory getSSLSF(SSLProtocolVersion sslpv) throws HttpProcessException {
+        SSLSocketFactory factory = sslFactories.get(sslpv);
+        if (factory != null) {
+            return factory;
+        }
+        synchronized (sslFactories) {
+            factory = sslFactories.get(sslpv);
+            if (factory == null) {
+                factory = getSSLContext(sslpv).getSocketFactory();
+                sslFactories.put(sslpv, factory);
+            }
         }
-        return sslFactory;
+        return factory;
     }
 
-    public synchronized SSLConnectionSocketFactory getSSLCONNSF(SSLProtocolVersion sslpv) throws HttpProcessException {
-        if (sslConnFactory != null)
-            return sslConnFactory;
-        try {
-            SSLContext sc = getSSLContext(sslpv);
-//	    	sc.init(null, new TrustManager[] { simpleVerifier }, null);
-            sc.init(null, new TrustManager[]{simpleVerifier}, new java.security.SecureRandom());
-            sslConnFactory = new SSLConnectionSocketFactory(sc, simpleVerifier);
-        } catch (KeyManagementException e) {
-            throw new HttpProcessException(e);
+    public SSLConnectionSocketFactory getSSLCONNSF(SSLProtocolVersion sslpv) throws HttpProcessException {
+        SSLConnectionSocketFactory factory = sslConnFactories.get(sslpv);
+        if (factory != null) {
+            return factory;
+        }
+        synchronized (sslConnFactories) {
+            factory = sslConnFactories.get(sslpv);
+            if (factory == null) {
+                SSLContext sc = getSSLContext(sslpv);
+                factory = new SSLConnectionSocketFactory(sc, enabledProtocols(sc, sslpv), null, simpleVerifier);
+                sslConnFactories.put(sslpv, factory);
+            }
         }
-        return sslConnFactory;
+        return factory;
     }
 
-    public synchronized SSLIOSessionStrategy getSSLIOSS(SSLProtocolVersion sslpv) throws HttpProcessException {
-        if (sslIOSessionStrategy != null)
-            return sslIOSessionStrategy;
-        try {
-            SSLContext sc = getSSLContext(sslpv);
-//			sc.init(null, new TrustManager[] { simpleVerifier }, null);
-            sc.init(null, new TrustManager[]{simpleVerifier}, new java.security.SecureRandom());
-            sslIOSessionStrategy = new SSLIOSessionStrategy(sc, simpleVerifier);
-        } catch (KeyManagementException e) {
-            throw new HttpProcessException(e);
+    public SSLIOSessionStrategy getSSLIOSS(SSLProtocolVersion sslpv) throws HttpProcessException {
+        SSLIOSessionStrategy strategy = sslIOSessionStrategies.get(sslpv);
+        if (strategy != null) {
+            return strategy;
         }
-        return sslIOSessionStrategy;
+        synchronized (sslIOSessionStrategies) {
+            strategy = sslIOSessionStrategies.get(sslpv);
+            if (strategy == null) {
+                SSLContext sc = getSSLContext(sslpv);
+                strategy = new SSLIOSessionStrategy(sc, enabledProtocols(sc, sslpv), null, simpleVerifier);
+                sslIOSessionStrategies.put(sslpv, strategy);
+            }
+        }
+        return strategy;
     }
 
     public SSLs customSSL(String keyStorePath, String keyStorepass) throws HttpProcessException {
@@ -119,7 +143,9 @@ public class SSLs {
             trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
             trustStore.load(instream, keyStorepass.toCharArray());
             // 相信自己的CA和所有自签名的证书
-            sc = SSLContexts.custom().loadTrustMaterial(trustStore, new TrustSelfSignedStrategy()).build();
+            SSLContext sc = SSLContexts.custom().loadTrustMaterial(trustStore, new TrustSelfSignedStrategy()).build();
+            configureSessionCache(sc);
+            customContext = sc;
         } catch (KeyManagementException
                 | KeyStoreException
                 | NoSuchAlgorithmException
@@ -130,39 +156,99 @@ public class SSLs {
         return this;
     }
 
+    /**
+     * 获取已初始化的 SSLContext，同一协议版本只创建一次
+     *
+     * @param sslpv 协议版本
+     * @return SSLContext
+     * @throws HttpProcessException http处理异常
+     */
     public SSLContext getSSLContext(SSLProtocolVersion sslpv) throws HttpProcessException {
-        try {
+        if (customContext != null) {
+            return customContext;
+        }
+        SSLContext sc = contexts.get(sslpv);
+        if (sc != null) {
+            return sc;
+        }
+        synchronized (contexts) {
+            sc = contexts.get(sslpv);
             if (sc == null) {
-                sc = SSLContext.getInstance(sslpv.getName());
+                try {
+                    sc = SSLContext.getInstance(sslpv.getName());
+                    sc.init(null, new TrustManager[]{simpleVerifier}, new java.security.SecureRandom());
+                } catch (NoSuchAlgorithmException | KeyManagementException e) {
+                    throw new HttpProcessException(e);
+                }
+                configureSessionCache(sc);
+                contexts.put(sslpv, sc);
             }
-            return sc;
-        } catch (NoSuchAlgorithmException e) {
-            throw new HttpProcessException(e);
+        }
+        return sc;
+    }
+
+    /**
+     * 设置客户端会话缓存，使重新建立的连接可以恢复会话
+     */
+    private static void configureSessionCache(SSLContext sc) {
+        SSLSessionContext sessionContext = sc.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT);
         }
     }
 
     /**
-     * The SSL protocol version (SSLv3, TLSv1, TLSv1.1, TLSv1.2)
+     * 协议版本对应的、当前 JDK 支持的协议，都不支持时返回 null（使用 JDK 默认）
+     */
+    private static String[] enabledProtocols(SSLContext sc, SSLProtocolVersion sslpv) {
+        if (sslpv.getProtocols().length == 0) {
+            return null;
+        }
+        List<String> supported = Arrays.asList(sc.getSupportedSSLParameters().getProtocols());
+        List<String> protocols = new ArrayList<>(sslpv.getProtocols().length);
+        for (String protocol : sslpv.getProtocols()) {
+            if (supported.contains(protocol)) {
+                protocols.add(protocol);
+            }
+        }
+        return protocols.isEmpty() ? null : protocols.toArray(new String[protocols.size()]);
+    }
+
+    /**
+     * The SSL protocol version (SSLv3, TLSv1, TLSv1.1, TLSv1.2, TLSv1.3)
+     *
+     * TLS 为推荐的默认值：启用 TLSv1.3 和 TLSv1.2（仅启用 JDK 支持的版本）
      *
      * @version 1.0
      */
     public static enum SSLProtocolVersion {
         SSL("SSL"),
-        SSLv3("SSLv3"),
-        TLSv1("TLSv1"),
-        TLSv1_1("TLSv1.1"),
-        TLSv1_2("TLSv1.2"),;
+        SSLv3("SSLv3", "SSLv3"),
+        TLSv1("TLSv1", "TLSv1"),
+        TLSv1_1("TLSv1.1", "TLSv1.1"),
+        TLSv1_2("TLSv1.2", "TLSv1.2"),
+        TLSv1_3("TLSv1.3", "TLSv1.3"),
+        TLS("TLS", "TLSv1.3", "TLSv1.2"),;
 
         private String name;
 
-        private SSLProtocolVersion(String name) {
+        /** 启用的协议，为空时使用 JDK 默认 */
+        private String[] protocols;
+
+        private SSLProtocolVersion(String name, String... protocols) {
             this.name = name;
+            this.protocols = protocols;
         }
 
         public String getName() {
             return this.name;
         }
 
+        public String[] getProtocols() {
+            return protocols.clone();
+        }
+
         public static SSLProtocolVersion find(String name) {
             for (SSLProtocolVersion pv : SSLProtocolVersion.values()) {
                 if (pv.getName().toUpperCase().equals(name.toUpperCase())) {
@@ -173,4 +259,4 @@ public class SSLs {
         }
 
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,17 @@
 package com.hason.shorturl.http.common;
 
+import com.hason.shorturl.http.entity.FileChannelBody;
+import com.hason.shorturl.http.entity.FileChannelEntity;
+import org.apache.http.Consts;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.SerializableEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
@@ -16,10 +22,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +50,7 @@ public class Utils {
     public static final String ENTITY_FILE = "$ENTITY_FILEE$";
     public static final String ENTITY_BYTES = "$ENTITY_BYTES$";
     public static final String ENTITY_INPUTSTREAM = "$ENTITY_INPUTSTREAM$";
+    public static final String ENTITY_INPUTSTREAM_LENGTH = ENTITY_INPUTSTREAM + ".length";
     public static final String ENTITY_SERIALIZABLE = "$ENTITY_SERIALIZABLE$";
     public static final String ENTITY_MULTIPART = "$ENTITY_MULTIPART$";
     private static final List<String> SPECIAL_ENTITIY = Arrays.asList(ENTITY_STRING, ENTITY_BYTES, ENTITY_FILE, ENTITY_INPUTSTREAM, ENTITY_SERIALIZABLE, ENTITY_MULTIPART);
@@ -56,6 +64,7 @@ public class Utils {
 
     /**
      * 检测url是否含有参数，如果有，则把参数加到参数列表中
+     * 参数按 encoding 解码（请求实体中会重新编码），保留原有顺序及重复的参数
      *
      * @param url    资源地址
      * @param nvps    参数列表
@@ -65,14 +74,118 @@ public class Utils {
      */
     public static String checkHasParas(String url, List<NameValuePair> nvps, String encoding) throws UnsupportedEncodingException {
         // 检测url中是否存在参数
-        if (url.contains("?") && url.indexOf("?") < url.indexOf("=")) {
-            Map<String, Object> map = buildParas(url.substring(url.indexOf("?") + 1));
-            map2HttpEntity(nvps, map, encoding);
-            url = url.substring(0, url.indexOf("?"));
+        int idx = url.indexOf('?');
+        if (idx >= 0 && url.indexOf('=', idx + 1) > 0) {
+            int end = url.indexOf('#', idx + 1);
+            parseQuery(url, idx + 1, end < 0 ? url.length() : end, nvps, charset(encoding));
+            url = url.substring(0, idx);
         }
         return url;
     }
 
+    /**
+     * 一次遍历解析查询字符串，直接生成参数
+     * 参数格式：k1=v1&amp;k2=v2，没有 = 的参数值为空字符串，空的参数（如 &amp;&amp;）被忽略
+     *
+     * @param query    查询字符串
+     * @param from     起始位置（包含）
+     * @param to       结束位置（不包含）
+     * @param nvps     参数列表
+     * @param charset  解码 %XX 及 + 使用的字符集，为 null 时不解码
+     */
+    public static void parseQuery(String query, int from, int to, List<NameValuePair> nvps, Charset charset) {
+        int start = from;
+        int eq = -1;
+        boolean encoded = false;
+        for (int i = from; i <= to; i++) {
+            char c = i < to ? query.charAt(i) : '&';
+            if (c == '&') {
+                if (i > start) {
+                    String name;
+                    String value;
+                    if (eq < 0) {
+                        name = decode(query, start, i, encoded ? charset : null);
+                        value = "";
+                    } else {
+                        name = decode(query, start, eq, encoded ? charset : null);
+                        value = decode(query, eq + 1, i, encoded ? charset : null);
+                    }
+                    nvps.add(new BasicNameValuePair(name, value));
+                }
+                start = i + 1;
+                eq = -1;
+                encoded = false;
+            } else if (c == '=' && eq < 0) {
+                eq = i;
+            } else if (c == '%' || c == '+') {
+                encoded = true;
+            }
+        }
+    }
+
+    /**
+     * 解码 %XX 及 +，无效的 %XX 原样保留
+     *
+     * @param charset 字符集，为 null 时不解码，直接截取
+     */
+    private static String decode(String s, int from, int to, Charset charset) {
+        if (charset == null) {
+            return s.substring(from, to);
+        }
+        StringBuilder builder = new StringBuilder(to - from);
+        byte[] bytes = null;
+        int i = from;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                builder.append(' ');
+                i++;
+            } else if (c == '%') {
+                int b = i + 2 < to ? hex(s.charAt(i + 1), s.charAt(i + 2)) : -1;
+                if (b < 0) {
+                    builder.append(c);
+                    i++;
+                } else if (b < 0x80) {
+                    builder.append((char) b);
+                    i += 3;
+                } else {
+                    // 连续的非 ASCII 的 %XX 作为一个字节序列解码，以支持多字节字符
+                    if (bytes == null) {
+                        bytes = new byte[(to - i) / 3];
+                    }
+                    int n = 0;
+                    while (b >= 0x80) {
+                        bytes[n++] = (byte) b;
+                        i += 3;
+                        b = i + 2 < to && s.charAt(i) == '%' ? hex(s.charAt(i + 1), s.charAt(i + 2)) : -1;
+                    }
+                    builder.append(new String(bytes, 0, n, charset));
+                }
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 两位十六进制数的值，无效时返回 -1
+     */
+    private static int hex(char hi, char lo) {
+        int h = Character.digit(hi, 16);
+        int l = Character.digit(lo, 16);
+        return h < 0 || l < 0 ? -1 : (h << 4) + l;
+    }
+
+    private static Charset charset(String encoding) throws UnsupportedEncodingException {
+        try {
+            return encoding == null ? Consts.UTF_8 : Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(encoding);
+        }
+    }
+
     /**
      *
      * 参数转换，将map中的参数，转到参数列表中
@@ -89,6 +202,9 @@ public class Utils {
             boolean isSpecial = false;
             // 拼接参数
             for (Entry<String, Object> entry : map.entrySet()) {
+                if (ENTITY_INPUTSTREAM_LENGTH.equals(entry.getKey())) {//输入流的长度，不是请求参数
+                    continue;
+                }
                 if (SPECIAL_ENTITIY.contains(entry.getKey())) {//判断是否在之中
                     isSpecial = true;
                     if (ENTITY_STRING.equals(entry.getKey())) {//string
@@ -99,16 +215,23 @@ public class Utils {
                         break;
                     } else if (ENTITY_FILE.equals(entry.getKey())) {//file
                         if (File.class.isAssignableFrom(entry.getValue().getClass())) {
-                            entity = new FileEntity((File) entry.getValue(), ContentType.APPLICATION_OCTET_STREAM);
+                            entity = new FileChannelEntity((File) entry.getValue(), ContentType.APPLICATION_OCTET_STREAM);
                         } else if (entry.getValue().getClass() == String.class) {
-                            entity = new FileEntity(new File((String) entry.getValue()), ContentType.create("text/plain", "UTF-8"));
+                            entity = new FileChannelEntity(new File((String) entry.getValue()), ContentType.create("text/plain", "UTF-8"));
                         }
                         break;
-                    } else if (ENTITY_INPUTSTREAM.equals(entry.getKey())) {//inputstream
-//						entity = new InputStreamEntity();
+                    } else if (ENTITY_INPUTSTREAM.equals(entry.getKey())) {//inputstream，长度未知时分块发送
+                        Object length = map.get(ENTITY_INPUTSTREAM_LENGTH);
+                        InputStreamEntity streamEntity = new InputStreamEntity((InputStream) entry.getValue(),
+                                length == null ? -1 : ((Number) length).longValue(), ContentType.APPLICATION_OCTET_STREAM);
+                        streamEntity.setChunked(length == null);
+                        entity = streamEntity;
                         break;
-                    } else if (ENTITY_SERIALIZABLE.equals(entry.getKey())) {//serializeable
-//						entity = new SerializableEntity()
+                    } else if (ENTITY_SERIALIZABLE.equals(entry.getKey())) {//serializeable，发送时直接序列化到连接中
+                        SerializableEntity serializableEntity = new SerializableEntity((Serializable) entry.getValue());
+                        serializableEntity.setContentType(ContentType.APPLICATION_OCTET_STREAM.toString());
+                        serializableEntity.setChunked(true);
+                        entity = serializableEntity;
                         break;
                     } else if (ENTITY_MULTIPART.equals(entry.getKey())) {//MultipartEntityBuilder
                         File[] files = null;
@@ -129,9 +252,9 @@ public class Utils {
 //							//把文件转换成流对象FileBody
 //							FileBody fileBody = new FileBody(file);
 //							builder.addPart(String.valueOf(map.get(ENTITY_MULTIPART+".name")) + count++, fileBody);
-                            builder.addBinaryBody(String.valueOf(map.get(ENTITY_MULTIPART + ".name")) + count++, file);
+                            builder.addPart(String.valueOf(map.get(ENTITY_MULTIPART + ".name")) + count++, new FileChannelBody(file));
                         }
-                        boolean forceRemoveContentTypeCharset = (Boolean) map.get(ENTITY_MULTIPART + ".rmCharset");
+                        boolean forceRemoveContentTypeCharset = Boolean.TRUE.equals(map.get(ENTITY_MULTIPART + ".rmCharset"));
                         Map<String, Object> m = new HashMap<String, Object>();
                         m.putAll(map);
                         m.remove(ENTITY_MULTIPART);
@@ -145,7 +268,7 @@ public class Utils {
 
                         //强制去除contentType中的编码设置，否则，在某些情况下会导致上传失败
                         if (forceRemoveContentTypeCharset) {
-                            removeContentTypeCharset(encoding, entity);
+                            entity = removeContentTypeCharset(encoding, entity);
                         }
                         break;
                     } else {
@@ -165,24 +288,24 @@ public class Utils {
     /**
      * 移除content-type中的charset
      *
+     * 以包装实体替换 Content-Type，不修改原实体的字段
+     *
      * @param encoding    编码
      * @param entity    请求参数及数据信息
+     * @return 返回Content-Type中不含charset的实体
      */
-    private static void removeContentTypeCharset(String encoding, HttpEntity entity) {
-        try {
-            Class<?> clazz = entity.getClass();
-            Field field = clazz.getDeclaredField("contentType");
-            field.setAccessible(true); //将字段的访问权限设为true：即去除private修饰符的影响
-            if (Modifier.isFinal(field.getModifiers())) {
-                Field modifiersField = Field.class.getDeclaredField("modifiers"); //去除final修饰符的影响，将字段设为可修改的
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(field, field.getModifiers() & ~Modifier.FINAL);
-            }
-            BasicHeader o = (BasicHeader) field.get(entity);
-            field.set(entity, new BasicHeader(HTTP.CONTENT_TYPE, o.getValue().replace("; charset=" + encoding, "")));
-        } catch (NoSuchFieldException | SecurityException | IllegalArgumentException | IllegalAccessException e) {
-            Utils.exception(e);
+    private static HttpEntity removeContentTypeCharset(String encoding, HttpEntity entity) {
+        if (entity.getContentType() == null) {
+            return entity;
         }
+        final Header contentType = new BasicHeader(HTTP.CONTENT_TYPE,
+                entity.getContentType().getValue().replace("; charset=" + encoding, ""));
+        return new HttpEntityWrapper(entity) {
+            @Override
+            public Header getContentType() {
+                return contentType;
+            }
+        };
     }
 
 
@@ -194,16 +317,13 @@ public class Utils {
      * @return 返回参数列表（map）
      */
     public static Map<String, Object> buildParas(String paras) {
-        String[] p = paras.split("&");
-        String[][] ps = new String[p.length][2];
-        int pos = 0;
-        for (int i = 0; i < p.length; i++) {
-            pos = p[i].indexOf("=");
-            ps[i][0] = p[i].substring(0, pos);
-            ps[i][1] = p[i].substring(pos + 1);
-            pos = 0;
+        List<NameValuePair> nvps = new ArrayList<NameValuePair>();
+        parseQuery(paras, 0, paras.length(), nvps, null);
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (NameValuePair nvp : nvps) {
+            map.put(nvp.getName(), nvp.getValue());
         }
-        return buildParas(ps);
+        return map;
     }
 
     /**
@@ -273,6 +393,15 @@ public class Utils {
         logger.error(t.getMessage(), t);
     }
 
+    /**
+     * 是否开启debug
+     *
+     * @return 返回是否开启
+     */
+    public static boolean isDebug() {
+        return debug;
+    }
+
     /**
      * 开启打印日志
      */
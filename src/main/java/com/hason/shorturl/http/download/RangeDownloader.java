@@ -0,0 +1,386 @@
+package com.hason.shorturl.http.download;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.http.HttpClientUtil;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.message.BasicHeader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 分段并行下载
+ *
+ * <pre>
+ *   1. 先发送 HEAD 请求，根据 Accept-Ranges、Content-Length 判断是否支持分段
+ *   2. 预先分配文件大小，按 chunkSize 切分，在多个线程中以 Range 请求并行下载（使用配置中 client 的连接池）
+ *   3. 每个分段的响应直接按位置写入 FileChannel，不经过中间缓冲
+ *   4. 分段中断时从已写入的位置继续请求，并以 If-Range 保证资源未变化
+ *   5. 不支持分段或文件较小时，退化为单连接下载
+ * </pre>
+ *
+ * 注意：续传只在本次下载过程中有效，不跨进程保留进度。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/9
+ */
+public class RangeDownloader implements Closeable {
+
+    private static final class DefaultHolder {
+        static final RangeDownloader INSTANCE = custom().build();
+    }
+
+    private final int chunkSize;
+    private final int maxRetries;
+    private final ExecutorService executor;
+
+    private RangeDownloader(Builder builder) {
+        this.chunkSize = builder.chunkSize;
+        this.maxRetries = builder.maxRetries;
+        this.executor = Executors.newFixedThreadPool(builder.parallelism,
+                new ThreadFactoryBuilder().setNameFormat("range-download-%d").setDaemon(true).build());
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 默认实例：4 个线程，分段 4MB，每个分段最多重试 3 次
+     */
+    public static RangeDownloader getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * 下载到文件
+     *
+     * @param config 请求参数配置，使用其中的 url、client、headers、deadline
+     * @param file   目标文件，已存在时覆盖
+     * @return 文件大小
+     * @throws HttpProcessException 下载失败
+     */
+    public long download(HttpConfig config, File file) throws HttpProcessException {
+        String url = config.url();
+        Validate.notBlank(url, "url");
+        Header[] requestHeaders = config.headers() == null ? new Header[0] : config.headers();
+
+        // 探测是否支持分段
+        HttpConfig probe = config.copy().url(url).headers(withHeaders(requestHeaders, null, null), true);
+        HttpClientUtil.head(probe);
+        Header[] probeHeaders = probe.headers();
+        long length = contentLength(probeHeaders);
+        String acceptRanges = header(probeHeaders, HttpHeaders.ACCEPT_RANGES);
+        if (length <= chunkSize || acceptRanges == null || !acceptRanges.toLowerCase().contains("bytes")) {
+            return downloadWhole(config, url, file);
+        }
+        String validator = validator(probeHeaders);
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (long start = 0; start < length; start += chunkSize) {
+            chunks.add(new Chunk(start, Math.min(length, start + chunkSize) - 1));
+        }
+        Utils.info("分段下载：" + url + "，大小：" + length + "，分段数：" + chunks.size());
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+            FileChannel channel = raf.getChannel();
+            List<Future<?>> futures = new ArrayList<>(chunks.size());
+            for (Chunk chunk : chunks) {
+                futures.add(executor.submit(task(config, url, requestHeaders, validator, channel, chunk)));
+            }
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                abort(chunks, futures);
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof HttpProcessException ? (HttpProcessException) cause
+                        : new HttpProcessException("分段下载失败：" + url, (Exception) cause);
+            } catch (InterruptedException e) {
+                abort(chunks, futures);
+                Thread.currentThread().interrupt();
+                throw new HttpProcessException("分段下载被中断：" + url, e);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new HttpProcessException(e);
+        }
+        return length;
+    }
+
+    /**
+     * 关闭下载线程池
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Callable<Void> task(final HttpConfig config, final String url, final Header[] requestHeaders,
+                                final String validator, final FileChannel channel, final Chunk chunk) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws HttpProcessException {
+                downloadChunk(config, url, requestHeaders, validator, channel, chunk);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * 下载一个分段，失败时从已写入的位置续传
+     */
+    private void downloadChunk(HttpConfig config, String url, Header[] requestHeaders, String validator,
+                               FileChannel channel, Chunk chunk) throws HttpProcessException {
+        for (int attempt = 0; ; attempt++) {
+            if (chunk.aborted) {
+                throw new HttpProcessException("分段下载已中止");
+            }
+            long from = chunk.next;
+            HttpConfig current = config.copy().url(url)
+                    .headers(withHeaders(requestHeaders, "bytes=" + from + "-" + chunk.end, validator), true);
+            ChannelOutputStream out = new ChannelOutputStream(channel, current, from, chunk.end + 1);
+            current.out(out);
+            chunk.config = current;
+            try {
+                HttpClientUtil.down(current);
+                if (!isRangeOf(current, from)) {
+                    // 服务端未按 Range 响应（如资源已变化），写入的内容无效
+                    throw new HttpProcessException("分段响应无效：" + url + "，Content-Range："
+                            + header(current.headers(), HttpHeaders.CONTENT_RANGE));
+                }
+                chunk.next = out.position;
+                if (chunk.next > chunk.end) {
+                    return;
+                }
+                if (attempt >= maxRetries) {
+                    throw new HttpProcessException("分段响应提前结束：" + url + "，位置：" + chunk.next);
+                }
+            } catch (HttpProcessException e) {
+                // 只有按 Range 响应时，已写入的内容才有效
+                if (isRangeOf(current, from)) {
+                    chunk.next = out.position;
+                }
+                if (attempt >= maxRetries || chunk.aborted) {
+                    throw e;
+                }
+                Utils.infoException("分段下载失败，从位置 " + chunk.next + " 续传：" + url, e);
+            }
+        }
+    }
+
+    /**
+     * 响应是否为从指定位置开始的分段（收到响应后，请求头被替换为响应头）
+     */
+    private static boolean isRangeOf(HttpConfig current, long from) {
+        String contentRange = header(current.headers(), HttpHeaders.CONTENT_RANGE);
+        return contentRange != null && contentRange.trim().startsWith("bytes " + from + "-");
+    }
+
+    /**
+     * 单连接下载整个文件
+     */
+    private static long downloadWhole(HttpConfig config, String url, File file) throws HttpProcessException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            HttpClientUtil.down(config.copy().url(url).out(out));
+            return out.getChannel().position();
+        } catch (IOException e) {
+            throw new HttpProcessException(e);
+        }
+    }
+
+    private static void abort(List<Chunk> chunks, List<Future<?>> futures) {
+        for (Chunk chunk : chunks) {
+            chunk.aborted = true;
+            HttpConfig current = chunk.config;
+            if (current != null) {
+                current.abort();
+            }
+        }
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 在请求头基础上设置 Range、If-Range，并要求不压缩（分段的偏移量针对原始内容）
+     */
+    private static Header[] withHeaders(Header[] headers, String range, String validator) {
+        List<Header> result = new ArrayList<>(headers.length + 3);
+        for (Header header : headers) {
+            String name = header.getName();
+            if (!HttpHeaders.RANGE.equalsIgnoreCase(name) && !HttpHeaders.IF_RANGE.equalsIgnoreCase(name)
+                    && !HttpHeaders.ACCEPT_ENCODING.equalsIgnoreCase(name)) {
+                result.add(header);
+            }
+        }
+        result.add(new BasicHeader(HttpHeaders.ACCEPT_ENCODING, "identity"));
+        if (range != null) {
+            result.add(new BasicHeader(HttpHeaders.RANGE, range));
+        }
+        if (validator != null) {
+            result.add(new BasicHeader(HttpHeaders.IF_RANGE, validator));
+        }
+        return result.toArray(new Header[result.size()]);
+    }
+
+    /**
+     * If-Range 可用的验证器：强 ETag，其次 Last-Modified
+     */
+    private static String validator(Header[] headers) {
+        String etag = header(headers, HttpHeaders.ETAG);
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return header(headers, HttpHeaders.LAST_MODIFIED);
+    }
+
+    private static long contentLength(Header[] headers) {
+        if (header(headers, HttpHeaders.CONTENT_ENCODING) != null) {
+            return -1;
+        }
+        String value = header(headers, HttpHeaders.CONTENT_LENGTH);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                // 按长度未知处理
+            }
+        }
+        return -1;
+    }
+
+    private static String header(Header[] headers, String name) {
+        if (headers != null) {
+            for (Header header : headers) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一个分段，end 包含在内
+     */
+    private static final class Chunk {
+        final long end;
+        /** 下一个待下载的位置 */
+        volatile long next;
+        volatile boolean aborted;
+        volatile HttpConfig config;
+
+        Chunk(long start, long end) {
+            this.end = end;
+            this.next = start;
+        }
+    }
+
+    /**
+     * 按位置写入 FileChannel 的输出流，超出分段范围时失败
+     *
+     * 首次写入前检查响应是否为请求的分段，避免把完整内容（如 If-Range 不匹配时的 200 响应）写入文件
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        private final FileChannel channel;
+        private final HttpConfig current;
+        private final long from;
+        private final long limit;
+        private volatile long position;
+        private boolean checked;
+
+        ChannelOutputStream(FileChannel channel, HttpConfig current, long from, long limit) {
+            this.channel = channel;
+            this.current = current;
+            this.from = from;
+            this.position = from;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!checked) {
+                if (!isRangeOf(current, from)) {
+                    throw new IOException("响应不是请求的分段");
+                }
+                checked = true;
+            }
+            if (position + len > limit) {
+                throw new IOException("响应超出分段范围");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    public static class Builder {
+
+        private int chunkSize = 4 * 1024 * 1024;
+        private int parallelism = 4;
+        private int maxRetries = 3;
+
+        /**
+         * 分段大小，单位-字节，不超过此大小的文件单连接下载
+         */
+        public Builder chunkSize(int chunkSize) {
+            Validate.isTrue(chunkSize > 0, "chunkSize 必须大于 0");
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * 并行下载的线程数，client 连接池中每个路由的连接数不应小于此值
+         */
+        public Builder parallelism(int parallelism) {
+            Validate.isTrue(parallelism > 0, "parallelism 必须大于 0");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * 每个分段的最大重试（续传）次数
+         */
+        public Builder maxRetries(int maxRetries) {
+            Validate.isTrue(maxRetries >= 0, "maxRetries 不能小于 0");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public RangeDownloader build() {
+            return new RangeDownloader(this);
+        }
+    }
+}
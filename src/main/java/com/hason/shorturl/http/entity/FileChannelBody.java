@@ -0,0 +1,57 @@
+package com.hason.shorturl.http.entity;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * multipart 请求中的文件部分，与 {@link FileChannelEntity} 一样以 FileChannel.transferTo 发送
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/10
+ */
+public class FileChannelBody extends AbstractContentBody {
+
+    private final File file;
+    private final String filename;
+
+    public FileChannelBody(File file) {
+        this(file, ContentType.DEFAULT_BINARY, file.getName());
+    }
+
+    public FileChannelBody(File file, ContentType contentType, String filename) {
+        super(contentType);
+        this.file = Validate.notNull(file, "file");
+        this.filename = filename;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        FileChannelEntity.transfer(file, out);
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return MIME.ENC_BINARY;
+    }
+
+    @Override
+    public long getContentLength() {
+        return file.length();
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
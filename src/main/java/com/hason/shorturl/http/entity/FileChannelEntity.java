@@ -0,0 +1,82 @@
+package com.hason.shorturl.http.entity;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 以 FileChannel.transferTo 发送文件内容的请求实体
+ *
+ * 文件内容不经过实体自身的堆内缓冲，内存占用与文件大小无关；可重复发送，以便连接失败时重试。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/10
+ */
+public class FileChannelEntity extends AbstractHttpEntity {
+
+    private final File file;
+
+    public FileChannelEntity(File file, ContentType contentType) {
+        this.file = Validate.notNull(file, "file");
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return file.length();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new FileInputStream(file);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        transfer(file, out);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * 将文件内容写入输出流
+     *
+     * @param file 文件
+     * @param out  输出流，不会被关闭
+     * @throws IOException 读取文件或写入失败
+     */
+    static void transfer(File file, OutputStream out) throws IOException {
+        Validate.notNull(out, "out");
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            // 不关闭 target，否则会关闭 out
+            WritableByteChannel target = Channels.newChannel(out);
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+        out.flush();
+    }
+}
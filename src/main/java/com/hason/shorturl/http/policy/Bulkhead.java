@@ -0,0 +1,98 @@
+package com.hason.shorturl.http.policy;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 舱壁隔离，基于信号量限制同一类调用的并发数
+ *
+ * 不同类型的调用（如批量缩短与交互式还原）使用各自的舱壁，各舱壁的并发上限之和不超过连接池大小时，
+ * 一类调用耗尽自身配额也无法占用其他调用的连接。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/26
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final Semaphore semaphore;
+
+    /**
+     * @param name          舱壁名称
+     * @param maxConcurrent 最大并发数
+     * @param maxWaitMillis 排队等待的最长时间，单位-毫秒，0 表示不等待
+     */
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMillis) {
+        Validate.isTrue(maxConcurrent > 0, "maxConcurrent 必须大于 0");
+        Validate.isTrue(maxWaitMillis >= 0, "maxWaitMillis 不能小于 0");
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+        this.semaphore = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * 申请并发许可，最多等待 maxWaitMillis
+     *
+     * @return 获得许可返回 true
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        return tryAcquire(maxWaitMillis);
+    }
+
+    /**
+     * 申请并发许可，最多等待 min(maxWaitMillis, waitMillis)
+     *
+     * @param waitMillis 调用方允许的最长等待时间，单位-毫秒
+     * @return 获得许可返回 true
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean tryAcquire(long waitMillis) throws InterruptedException {
+        long wait = Math.min(maxWaitMillis, Math.max(waitMillis, 0));
+        return wait == 0 ? semaphore.tryAcquire() : semaphore.tryAcquire(wait, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 释放并发许可，必须与成功的 tryAcquire 成对调用
+     */
+    public void release() {
+        semaphore.release();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * 当前可用的并发许可数
+     */
+    public int getAvailable() {
+        return semaphore.availablePermits();
+    }
+
+    /**
+     * 正在排队等待的调用数（估计值）
+     */
+    public int getQueueLength() {
+        return semaphore.getQueueLength();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead{name=" + name + ", available=" + getAvailable() + "/" + maxConcurrent + '}';
+    }
+}
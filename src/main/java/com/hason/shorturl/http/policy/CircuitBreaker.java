@@ -0,0 +1,319 @@
+package com.hason.shorturl.http.policy;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器，状态机为 CLOSED -> OPEN -> HALF_OPEN -> CLOSED/OPEN
+ *
+ * <pre>
+ *   CLOSED    : 正常放行，基于滑动窗口（最近 N 次调用）统计失败率与慢调用率，任一超过阈值即熔断
+ *   OPEN      : 快速失败，等待 waitDurationInOpen 后进入 HALF_OPEN
+ *   HALF_OPEN : 仅放行有限个探测请求，探测全部完成后根据失败率/慢调用率决定关闭或重新熔断
+ * </pre>
+ *
+ * 调用方式：
+ * <pre>
+ * if (!breaker.tryAcquirePermission()) { 快速失败 }
+ * long start = System.nanoTime();
+ * try { ...; breaker.onSuccess(System.nanoTime() - start); }
+ * catch (IOException e) { breaker.onError(System.nanoTime() - start); }
+ * </pre>
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/20
+ */
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** 调用结果：成功 */
+    private static final byte SUCCESS = 0;
+    /** 调用结果：失败 */
+    private static final byte FAILURE = 1;
+    /** 调用结果：成功但慢 */
+    private static final byte SLOW = 2;
+    /** 调用结果：失败且慢 */
+    private static final byte SLOW_FAILURE = FAILURE | SLOW;
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long waitDurationInOpenNanos;
+    private final int permittedCallsInHalfOpen;
+
+    /** 滑动窗口（环形缓冲） */
+    private final byte[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private int slowCount;
+
+    private volatile State state = State.CLOSED;
+    private long openedAt;
+    /** HALF_OPEN 下已放行的探测数 */
+    private int halfOpenPermitted;
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(builder.slowCallDurationMillis);
+        this.waitDurationInOpenNanos = TimeUnit.MILLISECONDS.toNanos(builder.waitDurationInOpenMillis);
+        this.permittedCallsInHalfOpen = builder.permittedCallsInHalfOpen;
+        this.window = new byte[builder.windowSize];
+    }
+
+    /**
+     * 获取构建器
+     *
+     * @param name 熔断器名称，通常为服务提供方
+     * @return 构建器
+     */
+    public static Builder custom(String name) {
+        return new Builder(name);
+    }
+
+    /**
+     * 申请调用许可
+     *
+     * @return true 表示可以发起调用，false 表示应快速失败
+     */
+    public synchronized boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < waitDurationInOpenNanos) {
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+                return tryAcquireHalfOpen();
+            case HALF_OPEN:
+                return tryAcquireHalfOpen();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 半开状态下申请试探调用的许可，需持有锁
+     */
+    private boolean tryAcquireHalfOpen() {
+        if (halfOpenPermitted >= permittedCallsInHalfOpen) {
+            return false;
+        }
+        halfOpenPermitted++;
+        return true;
+    }
+
+    /**
+     * 记录一次成功调用
+     *
+     * @param durationNanos 调用耗时，单位-纳秒
+     */
+    public void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallDurationNanos ? SLOW : SUCCESS);
+    }
+
+    /**
+     * 记录一次失败调用
+     *
+     * @param durationNanos 调用耗时，单位-纳秒
+     */
+    public void onError(long durationNanos) {
+        record(durationNanos >= slowCallDurationNanos ? SLOW_FAILURE : FAILURE);
+    }
+
+    /**
+     * 当前状态
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 熔断器名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 当前窗口内的失败率（0 ~ 100），调用数不足时返回 -1
+     */
+    public synchronized float getFailureRate() {
+        return windowCount < requiredCalls() ? -1 : failureCount * 100f / windowCount;
+    }
+
+    /**
+     * 当前窗口内的慢调用率（0 ~ 100），调用数不足时返回 -1
+     */
+    public synchronized float getSlowCallRate() {
+        return windowCount < requiredCalls() ? -1 : slowCount * 100f / windowCount;
+    }
+
+    /**
+     * 强制重置为 CLOSED 状态
+     */
+    public synchronized void reset() {
+        transitionTo(State.CLOSED);
+    }
+
+    private synchronized void record(byte outcome) {
+        if (state == State.OPEN) {
+            // 熔断前已放行的调用，结果不再计入
+            return;
+        }
+        if (windowCount == window.length) {
+            byte evicted = window[windowIndex];
+            failureCount -= evicted & FAILURE;
+            slowCount -= (evicted & SLOW) >> 1;
+        } else {
+            windowCount++;
+        }
+        window[windowIndex] = outcome;
+        failureCount += outcome & FAILURE;
+        slowCount += (outcome & SLOW) >> 1;
+        windowIndex = (windowIndex + 1) % window.length;
+
+        if (windowCount < requiredCalls()) {
+            return;
+        }
+        boolean tripped = failureCount * 100f / windowCount >= failureRateThreshold
+                || slowCount * 100f / windowCount >= slowCallRateThreshold;
+        if (tripped) {
+            transitionTo(State.OPEN);
+        } else if (state == State.HALF_OPEN) {
+            transitionTo(State.CLOSED);
+        }
+    }
+
+    /**
+     * 判断是否达到计算比率所需的调用数
+     */
+    private int requiredCalls() {
+        return state == State.HALF_OPEN ? permittedCallsInHalfOpen : minimumCalls;
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        // 每次切换状态都清空窗口，HALF_OPEN 仅统计探测调用
+        windowIndex = 0;
+        windowCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+        halfOpenPermitted = 0;
+        if (newState == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{name=" + name + ", state=" + state + '}';
+    }
+
+    /**
+     * 熔断器构建器
+     */
+    public static class Builder {
+
+        private final String name;
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private long slowCallDurationMillis = 5000;
+        private long waitDurationInOpenMillis = 30000;
+        private int permittedCallsInHalfOpen = 5;
+
+        private Builder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param windowSize 滑动窗口大小（最近的调用次数）
+         * @return 返回当前对象
+         */
+        public Builder windowSize(int windowSize) {
+            Validate.isTrue(windowSize > 0, "windowSize 必须大于 0");
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param minimumCalls 计算比率前，窗口内至少需要的调用次数
+         * @return 返回当前对象
+         */
+        public Builder minimumCalls(int minimumCalls) {
+            Validate.isTrue(minimumCalls > 0, "minimumCalls 必须大于 0");
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * @param failureRateThreshold 失败率阈值，百分比（0, 100]
+         * @return 返回当前对象
+         */
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            Validate.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 100, "failureRateThreshold 取值为 (0, 100]");
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallRateThreshold 慢调用率阈值，百分比（0, 100]
+         * @return 返回当前对象
+         */
+        public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+            Validate.isTrue(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100, "slowCallRateThreshold 取值为 (0, 100]");
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * @param slowCallDurationMillis 超过此耗时视为慢调用，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder slowCallDuration(long slowCallDurationMillis) {
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            return this;
+        }
+
+        /**
+         * @param waitDurationInOpenMillis 熔断后等待多久进入半开状态，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder waitDurationInOpen(long waitDurationInOpenMillis) {
+            this.waitDurationInOpenMillis = waitDurationInOpenMillis;
+            return this;
+        }
+
+        /**
+         * @param permittedCallsInHalfOpen 半开状态下允许的探测调用数
+         * @return 返回当前对象
+         */
+        public Builder permittedCallsInHalfOpen(int permittedCallsInHalfOpen) {
+            Validate.isTrue(permittedCallsInHalfOpen > 0, "permittedCallsInHalfOpen 必须大于 0");
+            this.permittedCallsInHalfOpen = permittedCallsInHalfOpen;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.hason.shorturl.http.policy;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.transport.ApacheTransport;
+import com.hason.shorturl.http.transport.Transport;
+import com.hason.shorturl.http.transport.TransportResponse;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.protocol.BasicHttpContext;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对冲请求策略，用于降低幂等请求的长尾延迟
+ *
+ * <pre>
+ *   1. 发出首个请求，等待“对冲延迟”（近期成功请求耗时的指定分位数）
+ *   2. 若仍未返回且对冲预算充足，在另一个池化连接上发出重复请求
+ *   3. 先成功返回的结果胜出，中止另一个请求
+ * </pre>
+ *
+ * 对冲预算为令牌桶：每个请求存入 budgetPercent / 100 个令牌，每次对冲消耗 1 个，
+ * 因此额外负载不超过请求量的 budgetPercent%。
+ *
+ * 仅对 GET、HEAD、OPTIONS 请求对冲，其他方法直接发送。
+ * 首个请求在调用方线程中执行，到达对冲延迟时才向线程池提交对冲请求；
+ * 默认线程池至多同时执行 {@value #DEFAULT_MAX_HEDGES} 个对冲请求，已满时放弃对冲。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/21
+ */
+public class HedgingPolicy {
+
+    private static final List<HttpMethod> IDEMPOTENT_METHODS
+            = Arrays.asList(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS);
+
+    /** 每收集多少个样本重新计算一次对冲延迟 */
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    /** 默认线程池同时执行的最大对冲请求数 */
+    public static final int DEFAULT_MAX_HEDGES = 16;
+
+    /** 对冲请求的状态：等待对冲延迟、已到达对冲延迟、首个请求已结束 */
+    private static final int PENDING = 0;
+    private static final int HEDGED = 1;
+    private static final int DONE = 2;
+
+    private final ExecutorService executor;
+    /** 到达对冲延迟时提交对冲请求，只执行提交，不执行请求 */
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int minSamples;
+    private final double tokensPerRequest;
+    private final double maxTokens;
+
+    /** 近期成功请求耗时（环形缓冲），单位-纳秒 */
+    private final long[] samples;
+    private int sampleIndex;
+    private int sampleCount;
+    private int sinceRecompute;
+    private volatile long delayNanos;
+
+    /** 对冲预算 */
+    private double tokens;
+
+    private HedgingPolicy(Builder builder) {
+        this.executor = builder.executor != null ? builder.executor : new ThreadPoolExecutor(
+                0, DEFAULT_MAX_HEDGES, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("hedging-%d").setDaemon(true).build());
+        this.scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("hedging-timer-%d").setDaemon(true).build());
+        // 首个请求通常在对冲延迟内返回，取消的定时任务立即移出队列
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.percentile = builder.percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(builder.minDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxDelayMillis);
+        this.minSamples = builder.minSamples;
+        this.tokensPerRequest = builder.budgetPercent / 100d;
+        this.maxTokens = builder.maxTokens;
+        this.tokens = builder.maxTokens;
+        this.samples = new long[builder.sampleSize];
+        this.delayNanos = maxDelayNanos;
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 以对冲方式发送请求
+     *
+     * @param config 请求参数配置
+     * @return 返回处理结果
+     * @throws HttpProcessException http处理异常
+     */
+    public String send(HttpConfig config) throws HttpProcessException {
+        return execute(ApacheTransport.INSTANCE, config).asString(config.outenc());
+    }
+
+    /**
+     * 以对冲方式通过指定传输层发送请求
+     *
+     * 首个请求在调用方线程中执行，只有对冲请求提交到线程池
+     *
+     * @param transport 传输层
+     * @param config    请求参数配置
+     * @return 响应
+     * @throws HttpProcessException http处理异常
+     */
+    public TransportResponse execute(final Transport transport, HttpConfig config) throws HttpProcessException {
+        if (!IDEMPOTENT_METHODS.contains(config.method())) {
+            return transport.execute(config);
+        }
+        deposit();
+
+        final String url = config.url();
+        final HttpConfig primary = attempt(config);
+        final HttpConfig secondary = attempt(config);
+        final FutureTask<TransportResponse> hedge = new FutureTask<>(new Callable<TransportResponse>() {
+            @Override
+            public TransportResponse call() throws Exception {
+                TransportResponse result = timed(transport, secondary.url(url));
+                // 对冲请求先成功，中止首个请求
+                primary.abort();
+                return result;
+            }
+        });
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        ScheduledFuture<?> timer = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (state.compareAndSet(PENDING, HEDGED)) {
+                    startHedge(hedge);
+                }
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+
+        TransportResponse result;
+        try {
+            result = timed(transport, primary);
+        } catch (HttpProcessException | RuntimeException e) {
+            timer.cancel(false);
+            if (state.compareAndSet(PENDING, DONE)) {
+                throw e;
+            }
+            return awaitHedge(config, secondary, hedge, e);
+        }
+        timer.cancel(false);
+        if (!state.compareAndSet(PENDING, DONE)) {
+            // 中止未完成的对冲请求，释放其连接
+            secondary.abort();
+            hedge.cancel(true);
+        }
+        if (config.isReturnRespHeaders()) {
+            config.headers(primary.headers());
+        }
+        return result;
+    }
+
+    /**
+     * 当前对冲延迟，单位-毫秒
+     */
+    public long getDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(delayNanos);
+    }
+
+    /**
+     * 关闭对冲线程池
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * 复制请求配置，并发的请求不能共用 HttpContext（保存了路由、连接等执行状态），以子上下文继承调用方的属性
+     */
+    private static HttpConfig attempt(HttpConfig config) {
+        HttpConfig attempt = config.copy();
+        if (config.context() != null) {
+            attempt.context(new BasicHttpContext(config.context()));
+        }
+        return attempt;
+    }
+
+    /**
+     * 预算充足时在线程池中发出对冲请求，否则放弃对冲
+     */
+    private void startHedge(FutureTask<TransportResponse> hedge) {
+        if (!tryAcquireHedge()) {
+            hedge.cancel(false);
+            return;
+        }
+        try {
+            executor.execute(hedge);
+        } catch (RejectedExecutionException e) {
+            // 线程池已满，退还令牌
+            deposit(1);
+            hedge.cancel(false);
+        }
+    }
+
+    /**
+     * 首个请求失败（或被先成功的对冲请求中止）后，等待对冲请求的结果
+     *
+     * @param failure 首个请求的异常，对冲请求未发出或也失败时抛出
+     */
+    private static TransportResponse awaitHedge(HttpConfig config, HttpConfig secondary,
+                                                FutureTask<TransportResponse> hedge, Exception failure)
+            throws HttpProcessException {
+        try {
+            TransportResponse result = hedge.get();
+            if (config.isReturnRespHeaders()) {
+                config.headers(secondary.headers());
+            }
+            return result;
+        } catch (CancellationException | ExecutionException e) {
+            if (failure instanceof HttpProcessException) {
+                throw (HttpProcessException) failure;
+            }
+            throw (RuntimeException) failure;
+        } catch (InterruptedException e) {
+            secondary.abort();
+            hedge.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HttpProcessException(e);
+        }
+    }
+
+    private TransportResponse timed(Transport transport, HttpConfig attempt) throws HttpProcessException {
+        long start = System.nanoTime();
+        TransportResponse result = transport.execute(attempt);
+        record(System.nanoTime() - start);
+        return result;
+    }
+
+    private void deposit() {
+        deposit(tokensPerRequest);
+    }
+
+    private synchronized void deposit(double amount) {
+        tokens = Math.min(maxTokens, tokens + amount);
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 记录成功请求的耗时，并定期重新计算对冲延迟
+     */
+    private synchronized void record(long durationNanos) {
+        samples[sampleIndex] = durationNanos;
+        sampleIndex = (sampleIndex + 1) % samples.length;
+        if (sampleCount < samples.length) {
+            sampleCount++;
+        }
+        if (sampleCount < minSamples || ++sinceRecompute < RECOMPUTE_INTERVAL) {
+            return;
+        }
+        sinceRecompute = 0;
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        long value = sorted[(int) Math.min(sampleCount - 1, Math.ceil(sampleCount * percentile / 100) - 1)];
+        delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, value));
+    }
+
+    /**
+     * 对冲策略构建器
+     */
+    public static class Builder {
+
+        private ExecutorService executor;
+        private double percentile = 95;
+        private long minDelayMillis = 10;
+        private long maxDelayMillis = 1000;
+        private int sampleSize = 1000;
+        private int minSamples = 50;
+        private int budgetPercent = 5;
+        private double maxTokens = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * @param executor 执行对冲请求的线程池，拒绝执行时放弃对冲；
+         *                 默认为守护线程的有界线程池，至多 {@value HedgingPolicy#DEFAULT_MAX_HEDGES} 个线程，不排队
+         * @return 返回当前对象
+         */
+        public Builder executor(ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param percentile 对冲延迟所取的耗时分位数，取值为 (0, 100]
+         * @return 返回当前对象
+         */
+        public Builder percentile(double percentile) {
+            Validate.isTrue(percentile > 0 && percentile <= 100, "percentile 取值为 (0, 100]");
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * 对冲延迟的上下限，样本不足时使用上限
+         *
+         * @param minDelayMillis 下限，单位-毫秒
+         * @param maxDelayMillis 上限，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder delay(long minDelayMillis, long maxDelayMillis) {
+            Validate.isTrue(minDelayMillis >= 0 && minDelayMillis <= maxDelayMillis, "对冲延迟上下限不合法");
+            this.minDelayMillis = minDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * @param sampleSize 保留的耗时样本数
+         * @param minSamples 计算分位数前至少需要的样本数
+         * @return 返回当前对象
+         */
+        public Builder samples(int sampleSize, int minSamples) {
+            Validate.isTrue(sampleSize > 0 && minSamples > 0 && minSamples <= sampleSize, "样本数不合法");
+            this.sampleSize = sampleSize;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param budgetPercent 对冲请求数占总请求数的百分比上限
+         * @param maxTokens     对冲预算的最大累积量，用于吸收突发
+         * @return 返回当前对象
+         */
+        public Builder budget(int budgetPercent, double maxTokens) {
+            Validate.isTrue(budgetPercent >= 0 && maxTokens >= 1, "对冲预算不合法");
+            this.budgetPercent = budgetPercent;
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.hason.shorturl.http.policy;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.impl.execchain.RequestAbortedException;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 重试策略：指数退避 + 全抖动（Full Jitter）+ 重试预算
+ *
+ * <pre>
+ *   退避时间 = random(0, min(maxDelay, baseDelay * 2^(attempt - 1)))
+ * </pre>
+ *
+ * 重试预算为令牌桶，由使用同一策略的所有请求共享：每次请求存入 budgetRatio 个令牌，
+ * 每次重试消耗 1 个。服务大面积故障时预算很快耗尽，重试随即停止，不会成倍放大负载。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/22
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final double budgetRatio;
+    private final double maxTokens;
+    private final boolean retryWhenInterruptedIO;
+    private final Set<Integer> retryStatusCodes;
+
+    private double tokens;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.budgetRatio = builder.budgetRatio;
+        this.maxTokens = builder.maxTokens;
+        this.tokens = builder.maxTokens;
+        this.retryWhenInterruptedIO = builder.retryWhenInterruptedIO;
+        this.retryStatusCodes = builder.retryStatusCodes;
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * 记录一次请求，向重试预算存入令牌
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + budgetRatio);
+    }
+
+    /**
+     * 申请一次重试
+     *
+     * @param attempt 已执行的次数（包含首次）
+     * @return 未超过最大次数且预算充足时返回 true
+     */
+    public synchronized boolean tryAcquireRetry(int attempt) {
+        if (attempt >= maxAttempts || tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * 计算第 attempt 次失败后的退避时间（全抖动）
+     *
+     * @param attempt 已执行的次数（包含首次）
+     * @return 退避时间，单位-毫秒
+     */
+    public long backoffMillis(int attempt) {
+        int shift = Math.min(Math.max(attempt - 1, 0), 30);
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << shift);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 退避等待
+     *
+     * @param attempt 已执行的次数（包含首次）
+     * @return 被中断时返回 false，此时不应再重试
+     */
+    public boolean backoff(int attempt) {
+        long delay = backoffMillis(attempt);
+        if (delay <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 判断 IO 异常是否可重试
+     *
+     * @param exception IO 异常
+     * @return 可重试返回 true
+     */
+    public boolean isRetryable(IOException exception) {
+        if (exception instanceof RequestAbortedException) {// 主动中止的请求（对冲落败、调用方放弃），不要重试
+            return false;
+        }
+        if (exception instanceof NoHttpResponseException) {// 如果服务器丢掉了连接，那么就重试
+            return true;
+        }
+        if (exception instanceof InterruptedIOException) {// 超时
+            return retryWhenInterruptedIO;
+        }
+        if (exception instanceof UnknownHostException) {// 目标服务器不可达
+            return true;
+        }
+        if (exception instanceof SSLException) {// SSL握手异常
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 判断响应状态码是否可重试
+     *
+     * @param statusCode 状态码
+     * @return 可重试返回 true
+     */
+    public boolean isRetryable(int statusCode) {
+        return retryStatusCodes.contains(statusCode);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 当前剩余的重试预算
+     */
+    public synchronized double getTokens() {
+        return tokens;
+    }
+
+    /**
+     * 重试策略构建器
+     */
+    public static class Builder {
+
+        private int maxAttempts = 3;
+        private long baseDelayMillis = 100;
+        private long maxDelayMillis = 2000;
+        private double budgetRatio = 0.1;
+        private double maxTokens = 10;
+        private boolean retryWhenInterruptedIO = false;
+        private Set<Integer> retryStatusCodes = new HashSet<>(Arrays.asList(502, 503, 504));
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts 最大执行次数（包含首次）
+         * @return 返回当前对象
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            Validate.isTrue(maxAttempts > 0, "maxAttempts 必须大于 0");
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param baseDelayMillis 退避基数，单位-毫秒
+         * @param maxDelayMillis  退避上限，单位-毫秒
+         * @return 返回当前对象
+         */
+        public Builder backoff(long baseDelayMillis, long maxDelayMillis) {
+            Validate.isTrue(baseDelayMillis >= 0 && baseDelayMillis <= maxDelayMillis, "退避时间不合法");
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * @param budgetRatio 每次请求存入的令牌数，即重试量与请求量之比的上限
+         * @param maxTokens   预算的最大累积量，用于吸收突发
+         * @return 返回当前对象
+         */
+        public Builder budget(double budgetRatio, double maxTokens) {
+            Validate.isTrue(budgetRatio >= 0 && maxTokens >= 0, "重试预算不合法");
+            this.budgetRatio = budgetRatio;
+            this.maxTokens = maxTokens;
+            return this;
+        }
+
+        /**
+         * @param retryWhenInterruptedIO 超时时是否重试
+         * @return 返回当前对象
+         */
+        public Builder retryWhenInterruptedIO(boolean retryWhenInterruptedIO) {
+            this.retryWhenInterruptedIO = retryWhenInterruptedIO;
+            return this;
+        }
+
+        /**
+         * @param statusCodes 可重试的响应状态码，默认为 502、503、504
+         * @return 返回当前对象
+         */
+        public Builder retryStatusCodes(Integer... statusCodes) {
+            this.retryStatusCodes = new HashSet<>(Arrays.asList(statusCodes));
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.hason.shorturl.http.pool;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hason.shorturl.http.common.Utils;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接预热：在流量到来之前，并行建立到指定路由的连接（DNS、TCP、TLS）并放入连接池
+ *
+ * 预热期间先持有所有连接，全部建立完成后再统一归还，保证每个连接都是新建的，而不是复用刚归还的连接
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/29
+ */
+public class ConnectionWarmer {
+
+    /** 预热的最大并行数 */
+    private static final int MAX_PARALLELISM = 16;
+
+    private ConnectionWarmer() {
+    }
+
+    /**
+     * 预热连接
+     *
+     * @param manager             连接池
+     * @param uris                服务地址，相同路由只预热一次
+     * @param connectionsPerRoute 每个路由预热的连接数，不超过路由的最大连接数
+     * @param timeoutMillis       租用及建立连接的超时时间，单位-毫秒
+     * @return 预热结果
+     */
+    public static WarmUpResult warmUp(final PoolingHttpClientConnectionManager manager, Collection<String> uris,
+                                      int connectionsPerRoute, final int timeoutMillis) {
+        long start = System.nanoTime();
+        Set<HttpRoute> routes = new LinkedHashSet<>();
+        for (String uri : uris) {
+            routes.add(toRoute(URI.create(uri)));
+        }
+
+        List<Callable<HttpClientConnection>> tasks = new ArrayList<>();
+        for (final HttpRoute route : routes) {
+            int count = Math.min(connectionsPerRoute, manager.getMaxPerRoute(route));
+            for (int i = 0; i < count; i++) {
+                tasks.add(new Callable<HttpClientConnection>() {
+                    @Override
+                    public HttpClientConnection call() throws Exception {
+                        return connect(manager, route, timeoutMillis);
+                    }
+                });
+            }
+        }
+
+        int opened = 0;
+        if (!tasks.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), MAX_PARALLELISM),
+                    new ThreadFactoryBuilder().setNameFormat("connection-warmer-%d").setDaemon(true).build());
+            List<HttpClientConnection> connections = new ArrayList<>(tasks.size());
+            try {
+                for (Future<HttpClientConnection> future : executor.invokeAll(tasks)) {
+                    try {
+                        connections.add(future.get());
+                    } catch (ExecutionException e) {
+                        Utils.infoException("预热连接失败", e.getCause());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+                // 全部建立完成后统一归还，连接保持可复用
+                for (HttpClientConnection connection : connections) {
+                    manager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+                }
+            }
+            opened = connections.size();
+        }
+
+        WarmUpResult result = new WarmUpResult(routes.size(), tasks.size(), opened,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        Utils.info("连接预热完成：" + result);
+        return result;
+    }
+
+    /**
+     * 租用并建立一个新连接
+     */
+    private static HttpClientConnection connect(PoolingHttpClientConnectionManager manager, HttpRoute route,
+                                                int timeoutMillis) throws Exception {
+        ConnectionRequest request = manager.requestConnection(route, null);
+        HttpClientConnection connection = request.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        try {
+            if (!connection.isOpen()) {
+                HttpClientContext context = HttpClientContext.create();
+                manager.connect(connection, route, timeoutMillis, context);
+                manager.routeComplete(connection, route, context);
+            }
+            return connection;
+        } catch (Exception e) {
+            manager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * 与默认路由规划一致地把地址转换为路由，以便预热的连接能被后续请求复用
+     */
+    private static HttpRoute toRoute(URI uri) {
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+
+    /**
+     * 预热结果
+     */
+    public static class WarmUpResult {
+
+        private final int routes;
+        private final int requested;
+        private final int opened;
+        private final long elapsedMillis;
+
+        WarmUpResult(int routes, int requested, int opened, long elapsedMillis) {
+            this.routes = routes;
+            this.requested = requested;
+            this.opened = opened;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /** 预热的路由数 */
+        public int getRoutes() {
+            return routes;
+        }
+
+        /** 计划建立的连接数 */
+        public int getRequested() {
+            return requested;
+        }
+
+        /** 成功建立的连接数 */
+        public int getOpened() {
+            return opened;
+        }
+
+        /** 预热耗时，单位-毫秒 */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "WarmUpResult{routes=" + routes
+                    + ", requested=" + requested
+                    + ", opened=" + opened
+                    + ", elapsedMillis=" + elapsedMillis
+                    + '}';
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.hason.shorturl.http.pool;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带统计的连接池，记录每个路由的连接租用次数、等待时间和超时次数
+ *
+ * 已租出、等待中、空闲的连接数直接取自连接池，参见 {@link #getMetrics()}
+ *
+ * 清理空闲、过期连接时，一并移除已没有任何连接的路由的统计，访问大量不同域名时统计不会无限增长
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/28
+ */
+public class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final ConcurrentMap<HttpRoute, LeaseStats> leaseStats = new ConcurrentHashMap<>();
+
+    public InstrumentedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+        super(socketFactoryRegistry);
+    }
+
+    public InstrumentedConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry,
+                                         DnsResolver dnsResolver) {
+        super(socketFactoryRegistry, dnsResolver);
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTimeout, TimeUnit tunit) {
+        super.closeIdleConnections(idleTimeout, tunit);
+        pruneStats();
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        super.closeExpiredConnections();
+        pruneStats();
+    }
+
+    /**
+     * 移除没有已租出、等待中、空闲连接的路由的统计
+     */
+    private void pruneStats() {
+        Set<HttpRoute> routes = getRoutes();
+        for (HttpRoute route : leaseStats.keySet()) {
+            // getStats 会为不存在的路由创建连接池，先判断路由是否存在
+            if (!routes.contains(route)) {
+                leaseStats.remove(route);
+                continue;
+            }
+            PoolStats pool = getStats(route);
+            if (pool.getLeased() + pool.getPending() + pool.getAvailable() == 0) {
+                leaseStats.remove(route);
+            }
+        }
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        final ConnectionRequest delegate = super.requestConnection(route, state);
+        final LeaseStats stats = stats(route);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit tunit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                boolean timedOut = false;
+                try {
+                    return delegate.get(timeout, tunit);
+                } catch (ConnectionPoolTimeoutException e) {
+                    timedOut = true;
+                    throw e;
+                } finally {
+                    stats.record(System.nanoTime() - start, timedOut);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return delegate.cancel();
+            }
+        };
+    }
+
+    /**
+     * 获取所有路由的统计快照
+     *
+     * @return 统计快照列表
+     */
+    public List<RouteMetrics> getMetrics() {
+        List<RouteMetrics> metrics = new ArrayList<>();
+        for (HttpRoute route : getRoutes()) {
+            metrics.add(getMetrics(route));
+        }
+        return metrics;
+    }
+
+    /**
+     * 获取指定路由的统计快照
+     *
+     * @param route 路由
+     * @return 统计快照
+     */
+    public RouteMetrics getMetrics(HttpRoute route) {
+        PoolStats pool = getStats(route);
+        LeaseStats stats = leaseStats.get(route);
+        if (stats == null) {
+            stats = new LeaseStats();
+        }
+        return new RouteMetrics(route, pool.getLeased(), pool.getPending(), pool.getAvailable(), pool.getMax(),
+                stats.count.get(), stats.timeouts.get(), stats.totalWaitNanos.get(), stats.maxWaitNanos.get());
+    }
+
+    private LeaseStats stats(HttpRoute route) {
+        LeaseStats stats = leaseStats.get(route);
+        if (stats == null) {
+            LeaseStats created = new LeaseStats();
+            stats = leaseStats.putIfAbsent(route, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * 单个路由的租用统计
+     */
+    private static class LeaseStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void record(long waitNanos, boolean timedOut) {
+            count.incrementAndGet();
+            if (timedOut) {
+                timeouts.incrementAndGet();
+            }
+            totalWaitNanos.addAndGet(waitNanos);
+            long max;
+            while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+                // 自旋更新最大值
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.hason.shorturl.http.pool;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池单个路由的统计快照
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/28
+ */
+public class RouteMetrics {
+
+    private final HttpRoute route;
+    private final int leased;
+    private final int pending;
+    private final int available;
+    private final int max;
+    private final long leaseCount;
+    private final long leaseTimeoutCount;
+    private final long totalLeaseWaitNanos;
+    private final long maxLeaseWaitNanos;
+
+    RouteMetrics(HttpRoute route, int leased, int pending, int available, int max,
+                 long leaseCount, long leaseTimeoutCount, long totalLeaseWaitNanos, long maxLeaseWaitNanos) {
+        this.route = route;
+        this.leased = leased;
+        this.pending = pending;
+        this.available = available;
+        this.max = max;
+        this.leaseCount = leaseCount;
+        this.leaseTimeoutCount = leaseTimeoutCount;
+        this.totalLeaseWaitNanos = totalLeaseWaitNanos;
+        this.maxLeaseWaitNanos = maxLeaseWaitNanos;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    /** 已租出的连接数 */
+    public int getLeased() {
+        return leased;
+    }
+
+    /** 等待租用连接的请求数 */
+    public int getPending() {
+        return pending;
+    }
+
+    /** 空闲可用的连接数 */
+    public int getAvailable() {
+        return available;
+    }
+
+    /** 路由的最大连接数 */
+    public int getMax() {
+        return max;
+    }
+
+    /** 累计租用次数（包含超时） */
+    public long getLeaseCount() {
+        return leaseCount;
+    }
+
+    /** 累计租用超时次数 */
+    public long getLeaseTimeoutCount() {
+        return leaseTimeoutCount;
+    }
+
+    /** 平均租用等待时间，单位-毫秒 */
+    public double getAvgLeaseWaitMillis() {
+        return leaseCount == 0 ? 0 : totalLeaseWaitNanos / (double) leaseCount / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /** 最长租用等待时间，单位-毫秒 */
+    public long getMaxLeaseWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLeaseWaitNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteMetrics{route=" + route
+                + ", leased=" + leased
+                + ", pending=" + pending
+                + ", available=" + available
+                + ", max=" + max
+                + ", leaseCount=" + leaseCount
+                + ", leaseTimeoutCount=" + leaseTimeoutCount
+                + ", avgLeaseWaitMillis=" + getAvgLeaseWaitMillis()
+                + ", maxLeaseWaitMillis=" + getMaxLeaseWaitMillis()
+                + '}';
+    }
+}
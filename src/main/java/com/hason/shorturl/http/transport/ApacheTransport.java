@@ -0,0 +1,22 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.HttpClientUtil;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.exception.HttpProcessException;
+
+/**
+ * 基于 Apache HttpClient 的传输层，即 {@link HttpClientUtil} 的请求路径
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/4
+ */
+public class ApacheTransport implements Transport {
+
+    public static final ApacheTransport INSTANCE = new ApacheTransport();
+
+    @Override
+    public TransportResponse execute(HttpConfig config) throws HttpProcessException {
+        return HttpClientUtil.exchange(config);
+    }
+}
@@ -0,0 +1,287 @@
+package com.hason.shorturl.http.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 响应内容编码（gzip、deflate）的流式解码器
+ *
+ * 以输出流的方式接收压缩数据（推模式），边接收边解压写入下游，供 {@link ResponseParser} 使用；
+ * {@link #decode(InputStream, String)} 则以输入流的方式解压（拉模式），供 {@link JdkTransport} 使用。
+ * 压缩数据不会被完整缓存。
+ *
+ * deflate 按 RFC 7230 应为 zlib 格式，但部分服务端发送原始 deflate 数据，根据前两个字节自动识别。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/6
+ */
+final class ContentDecoder extends OutputStream {
+
+    /** 请求时声明支持的内容编码 */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State {
+        GZIP_HEADER, GZIP_EXTRA_LENGTH, GZIP_EXTRA, GZIP_NAME, GZIP_COMMENT, GZIP_HEADER_CRC,
+        DEFLATE_HEADER, INFLATE, GZIP_TRAILER, DONE
+    }
+
+    private final OutputStream sink;
+    private final boolean gzip;
+    private final byte[] output = new byte[8192];
+    private final byte[] header = new byte[10];
+    private final CRC32 crc = new CRC32();
+
+    private Inflater inflater;
+    private State state;
+    private int headerLength;
+    private int flags;
+    private int skip;
+
+    private ContentDecoder(OutputStream sink, boolean gzip) {
+        this.sink = sink;
+        this.gzip = gzip;
+        this.state = gzip ? State.GZIP_HEADER : State.DEFLATE_HEADER;
+    }
+
+    /**
+     * 是否为支持解码的内容编码
+     */
+    static boolean isSupported(String contentEncoding) {
+        return isGzip(contentEncoding) || isDeflate(contentEncoding);
+    }
+
+    /**
+     * 创建推模式解码器，不支持的编码原样返回 sink
+     *
+     * @param sink            解压后数据的下游
+     * @param contentEncoding 响应头 Content-Encoding 的值
+     */
+    static OutputStream decoding(OutputStream sink, String contentEncoding) {
+        if (isGzip(contentEncoding)) {
+            return new ContentDecoder(sink, true);
+        }
+        if (isDeflate(contentEncoding)) {
+            return new ContentDecoder(sink, false);
+        }
+        return sink;
+    }
+
+    /**
+     * 以拉模式解码响应流，不支持的编码原样返回 in
+     *
+     * @param in              响应流
+     * @param contentEncoding 响应头 Content-Encoding 的值
+     */
+    static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (isGzip(contentEncoding)) {
+            return new GZIPInputStream(in, 8192);
+        }
+        if (isDeflate(contentEncoding)) {
+            PushbackInputStream pushback = new PushbackInputStream(in, 2);
+            byte[] head = new byte[2];
+            int n = 0;
+            while (n < 2) {
+                int r = pushback.read(head, n, 2 - n);
+                if (r < 0) {
+                    break;
+                }
+                n += r;
+            }
+            pushback.unread(head, 0, n);
+            return new InflaterInputStream(pushback, new Inflater(!(n == 2 && isZlibHeader(head[0], head[1]))), 8192);
+        }
+        return in;
+    }
+
+    private static boolean isGzip(String contentEncoding) {
+        return "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding);
+    }
+
+    private static boolean isDeflate(String contentEncoding) {
+        return "deflate".equalsIgnoreCase(contentEncoding);
+    }
+
+    private static boolean isZlibHeader(byte b0, byte b1) {
+        return (b0 & 0x0F) == 8 && (((b0 & 0xFF) << 8) | (b1 & 0xFF)) % 31 == 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int end = off + len;
+        while (off < end) {
+            switch (state) {
+                case GZIP_HEADER:
+                    off = fillHeader(b, off, end, 10);
+                    if (headerLength == 10) {
+                        if ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8) {
+                            throw new ZipException("无效的 gzip 头");
+                        }
+                        flags = header[3] & 0xFF;
+                        headerLength = 0;
+                        nextGzipHeaderField();
+                    }
+                    break;
+                case GZIP_EXTRA_LENGTH:
+                    off = fillHeader(b, off, end, 2);
+                    if (headerLength == 2) {
+                        skip = (header[0] & 0xFF) | ((header[1] & 0xFF) << 8);
+                        headerLength = 0;
+                        state = State.GZIP_EXTRA;
+                    }
+                    break;
+                case GZIP_EXTRA:
+                    int n = Math.min(skip, end - off);
+                    off += n;
+                    skip -= n;
+                    if (skip == 0) {
+                        flags &= ~FEXTRA;
+                        nextGzipHeaderField();
+                    }
+                    break;
+                case GZIP_NAME:
+                case GZIP_COMMENT:
+                    if (b[off++] == 0) {
+                        flags &= state == State.GZIP_NAME ? ~FNAME : ~FCOMMENT;
+                        nextGzipHeaderField();
+                    }
+                    break;
+                case GZIP_HEADER_CRC:
+                    off = fillHeader(b, off, end, 2);
+                    if (headerLength == 2) {
+                        headerLength = 0;
+                        flags &= ~FHCRC;
+                        nextGzipHeaderField();
+                    }
+                    break;
+                case DEFLATE_HEADER:
+                    off = fillHeader(b, off, end, 2);
+                    if (headerLength == 2) {
+                        inflater = new Inflater(!isZlibHeader(header[0], header[1]));
+                        state = State.INFLATE;
+                        inflate(header, 0, 2);
+                    }
+                    break;
+                case INFLATE:
+                    off = inflate(b, off, end - off);
+                    break;
+                case GZIP_TRAILER:
+                    off = fillHeader(b, off, end, 8);
+                    if (headerLength == 8) {
+                        long expectedCrc = readInt(0);
+                        long expectedSize = readInt(4);
+                        if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+                            throw new ZipException("gzip 校验失败");
+                        }
+                        finish();
+                    }
+                    break;
+                default:
+                    // 压缩流之后的多余数据，忽略
+                    off = end;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 数据接收完毕，检查压缩流是否完整并释放 Inflater
+     */
+    @Override
+    public void close() throws IOException {
+        State last = state;
+        finish();
+        if (last != State.DONE) {
+            throw new ZipException("压缩数据不完整");
+        }
+    }
+
+    private void nextGzipHeaderField() {
+        if ((flags & FEXTRA) != 0) {
+            state = State.GZIP_EXTRA_LENGTH;
+        } else if ((flags & FNAME) != 0) {
+            state = State.GZIP_NAME;
+        } else if ((flags & FCOMMENT) != 0) {
+            state = State.GZIP_COMMENT;
+        } else if ((flags & FHCRC) != 0) {
+            state = State.GZIP_HEADER_CRC;
+        } else {
+            inflater = new Inflater(true);
+            state = State.INFLATE;
+        }
+    }
+
+    /**
+     * 解压输入数据并写入下游
+     *
+     * @return 已消费到的位置
+     */
+    private int inflate(byte[] b, int off, int len) throws IOException {
+        inflater.setInput(b, off, len);
+        try {
+            while (true) {
+                int n = inflater.inflate(output);
+                if (n > 0) {
+                    if (gzip) {
+                        crc.update(output, 0, n);
+                    }
+                    sink.write(output, 0, n);
+                } else if (inflater.finished()) {
+                    int consumed = len - inflater.getRemaining();
+                    if (gzip) {
+                        headerLength = 0;
+                        state = State.GZIP_TRAILER;
+                    } else {
+                        finish();
+                    }
+                    return off + consumed;
+                } else if (inflater.needsInput()) {
+                    return off + len;
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("不支持预置字典的 deflate 数据");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    private int fillHeader(byte[] b, int off, int end, int length) {
+        int n = Math.min(length - headerLength, end - off);
+        System.arraycopy(b, off, header, headerLength, n);
+        headerLength += n;
+        return off + n;
+    }
+
+    private long readInt(int offset) {
+        return (header[offset] & 0xFFL)
+                | ((header[offset + 1] & 0xFFL) << 8)
+                | ((header[offset + 2] & 0xFFL) << 16)
+                | ((header[offset + 3] & 0xFFL) << 24);
+    }
+
+    private void finish() {
+        state = State.DONE;
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+}
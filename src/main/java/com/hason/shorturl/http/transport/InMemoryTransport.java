@@ -0,0 +1,82 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.exception.HttpProcessException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 内存桩传输层，不发出网络请求，用于测试
+ *
+ * 按请求地址返回预先设置的响应：先精确匹配完整地址，再匹配不含参数的地址；都没有时返回 404。
+ * 所有请求地址会被记录，便于断言。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/4
+ */
+public class InMemoryTransport implements Transport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, TransportResponse> stubs = new ConcurrentHashMap<>();
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    /**
+     * 设置请求地址对应的响应
+     *
+     * @param url      请求地址，不含参数时匹配该地址的所有请求
+     * @param response 响应
+     * @return 返回当前对象
+     */
+    public InMemoryTransport stub(String url, TransportResponse response) {
+        stubs.put(url, response);
+        return this;
+    }
+
+    /**
+     * 设置请求地址对应的 200 响应
+     *
+     * @param url  请求地址，不含参数时匹配该地址的所有请求
+     * @param body 响应内容（UTF-8）
+     * @return 返回当前对象
+     */
+    public InMemoryTransport stub(String url, String body) {
+        return stub(url, new TransportResponse(200, null, body.getBytes(UTF_8), UTF_8.name()));
+    }
+
+    @Override
+    public TransportResponse execute(HttpConfig config) throws HttpProcessException {
+        if (config.isAborted()) {
+            throw new HttpProcessException("请求已中止");
+        }
+        String url = config.url();
+        requests.add(url);
+        TransportResponse response = stubs.get(url);
+        if (response == null) {
+            int idx = url.indexOf('?');
+            response = idx > 0 ? stubs.get(url.substring(0, idx)) : null;
+        }
+        return response != null ? response : new TransportResponse(404, null, null, null);
+    }
+
+    /**
+     * 已收到的请求地址
+     */
+    public List<String> getRequests() {
+        return new ArrayList<>(requests);
+    }
+
+    /**
+     * 清空请求记录
+     */
+    public void reset() {
+        requests.clear();
+    }
+}
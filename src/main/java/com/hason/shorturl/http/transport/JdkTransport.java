@@ -0,0 +1,224 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.common.Deadline;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.common.RequestLog;
+import com.hason.shorturl.http.common.SSLs;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.http.Header;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.message.BasicHeader;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 基于 JDK {@link HttpURLConnection} 的传输层，不依赖 Apache HttpClient
+ *
+ * 连接由 JDK 的 keep-alive 缓存复用（http.maxConnections 控制每个地址的空闲连接数）。
+ * 请求头中没有 Accept-Encoding 时声明支持 gzip、deflate，响应流边读取边解压。
+ * 仅支持字符串（json）及普通表单参数，不支持文件、流等特殊实体。
+ *
+ * 注：本项目以 Java 7 编译，无法直接使用 Java 11 的 java.net.http.HttpClient（HTTP/2），
+ * 需要 HTTP/2 时可基于 {@link Transport} 另行实现。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/4
+ */
+public class JdkTransport implements Transport {
+
+    private static final Pattern CHARSET = Pattern.compile("charset=\"?([^;\"\\s]+)", Pattern.CASE_INSENSITIVE);
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final SSLSocketFactory sslSocketFactory;
+
+    /**
+     * @param connectTimeout 建立连接超时时间，单位-毫秒，0 表示不限制
+     * @param readTimeout    读取超时时间，单位-毫秒，0 表示不限制
+     * @throws HttpProcessException 创建 SSL 配置失败
+     */
+    public JdkTransport(int connectTimeout, int readTimeout) throws HttpProcessException {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.sslSocketFactory = SSLs.getInstance().getSSLSF(SSLs.SSLProtocolVersion.TLS);
+    }
+
+    @Override
+    public TransportResponse execute(HttpConfig config) throws HttpProcessException {
+        HttpMethod method = config.method() == null ? HttpMethod.GET : config.method();
+        byte[] body = requestBody(config, method);
+        final HttpURLConnection conn;
+        try {
+            conn = (HttpURLConnection) new URL(config.url()).openConnection();
+        } catch (IOException e) {
+            throw new HttpProcessException(e);
+        }
+        config.attach(new Cancellable() {
+            @Override
+            public boolean cancel() {
+                conn.disconnect();
+                return true;
+            }
+        });
+        try {
+            if (conn instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+                ((HttpsURLConnection) conn).setHostnameVerifier(SSLs.getVerifier());
+            }
+            conn.setRequestMethod(method.getName());
+            applyTimeouts(conn, config.deadline());
+            if (config.headers() != null) {
+                for (Header header : config.headers()) {
+                    conn.setRequestProperty(header.getName(), header.getValue());
+                }
+            }
+            if (conn.getRequestProperty("Accept-Encoding") == null) {
+                conn.setRequestProperty("Accept-Encoding", ContentDecoder.ACCEPT_ENCODING);
+            }
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(body.length);
+                if (conn.getRequestProperty("Content-Type") == null) {
+                    conn.setRequestProperty("Content-Type",
+                            (config.json() != null ? "text/plain" : "application/x-www-form-urlencoded")
+                                    + "; charset=" + config.inenc());
+                }
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            RequestLog log = RequestLog.sample();
+            if (log != null) {
+                log.request(method, config.url(), null, config.json());
+            }
+
+            int status = conn.getResponseCode();
+            if (log != null) {
+                log.response(status);
+            }
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            String contentEncoding = conn.getContentEncoding();
+            boolean decoded = false;
+            byte[] content;
+            if (in == null || method == HttpMethod.HEAD || status == 204 || status == 304) {
+                content = new byte[0];
+            } else {
+                decoded = ContentDecoder.isSupported(contentEncoding);
+                content = readFully(ContentDecoder.decode(in, contentEncoding));
+            }
+
+            List<Header> headers = new ArrayList<>();
+            for (Map.Entry<String, List<String>> entry : conn.getHeaderFields().entrySet()) {
+                if (entry.getKey() == null) {// 状态行
+                    continue;
+                }
+                if (decoded && ("Content-Encoding".equalsIgnoreCase(entry.getKey())
+                        || "Content-Length".equalsIgnoreCase(entry.getKey()))) {// 已解压
+                    continue;
+                }
+                for (String value : entry.getValue()) {
+                    headers.add(new BasicHeader(entry.getKey(), value));
+                }
+            }
+            Header[] headerArray = headers.toArray(new Header[headers.size()]);
+            if (config.isReturnRespHeaders()) {
+                config.headers(headerArray);
+            }
+            return new TransportResponse(status, headerArray, content, charsetOf(conn.getContentType()));
+        } catch (IOException e) {
+            // 出错时断开连接，不放回 keep-alive 缓存
+            conn.disconnect();
+            throw new HttpProcessException(e);
+        } finally {
+            config.attach(null);
+        }
+    }
+
+    /**
+     * 以截止时间的剩余时间限制建立连接及读取超时
+     */
+    private void applyTimeouts(HttpURLConnection conn, Deadline deadline) throws HttpProcessException {
+        int connect = connectTimeout;
+        int read = readTimeout;
+        if (deadline != null) {
+            long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+            if (remaining <= 0) {
+                throw new HttpProcessException("请求已超过截止时间");
+            }
+            int limit = (int) Math.min(Integer.MAX_VALUE, remaining);
+            connect = connect > 0 ? Math.min(connect, limit) : limit;
+            read = read > 0 ? Math.min(read, limit) : limit;
+        }
+        conn.setConnectTimeout(connect);
+        conn.setReadTimeout(read);
+    }
+
+    /**
+     * 生成请求体，不支持的参数类型抛出异常
+     */
+    private static byte[] requestBody(HttpConfig config, HttpMethod method) throws HttpProcessException {
+        if (method != HttpMethod.POST && method != HttpMethod.PUT && method != HttpMethod.PATCH) {
+            return null;
+        }
+        try {
+            if (config.json() != null) {
+                return config.json().getBytes(config.inenc());
+            }
+            Map<String, Object> map = config.map();
+            if (map == null || map.isEmpty()) {
+                return null;
+            }
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                if (entry.getKey().startsWith("$ENTITY_")) {
+                    throw new HttpProcessException("JdkTransport 不支持的参数类型：" + entry.getKey());
+                }
+                if (builder.length() > 0) {
+                    builder.append('&');
+                }
+                builder.append(URLEncoder.encode(entry.getKey(), config.inenc()))
+                        .append('=')
+                        .append(URLEncoder.encode(String.valueOf(entry.getValue()), config.inenc()));
+            }
+            return builder.toString().getBytes(config.inenc());
+        } catch (IOException e) {
+            throw new HttpProcessException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        Matcher matcher = CHARSET.matcher(contentType);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,193 @@
+package com.hason.shorturl.http.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link NioTransport} 的一个非阻塞连接
+ *
+ * 每个连接持有一个选择器和一对可复用的直接缓冲区，同一时间只由一个线程使用。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/5
+ */
+final class NioConnection implements Closeable {
+
+    final String route;
+    final ByteBuffer out;
+    final ByteBuffer in;
+    final ResponseParser parser = new ResponseParser();
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+
+    /** 已完成的请求数，大于 0 表示是复用的连接 */
+    private int served;
+    private long lastUsed;
+
+    private NioConnection(String route, SocketChannel channel, Selector selector, int bufferSize)
+            throws IOException {
+        this.route = route;
+        this.channel = channel;
+        this.selector = selector;
+        this.key = channel.register(selector, 0);
+        this.out = ByteBuffer.allocateDirect(bufferSize);
+        this.in = ByteBuffer.allocateDirect(bufferSize);
+        this.in.flip();
+    }
+
+    /**
+     * 建立连接
+     *
+     * @param route         路由，如 api.t.sina.com.cn:80
+     * @param address       服务端地址
+     * @param timeoutMillis 连接超时时间，单位-毫秒
+     * @param bufferSize    读、写缓冲区大小
+     */
+    static NioConnection open(String route, InetSocketAddress address, long timeoutMillis, int bufferSize)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        Selector selector = null;
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            selector = Selector.open();
+            NioConnection conn = new NioConnection(route, channel, selector, bufferSize);
+            if (!channel.connect(address)) {
+                conn.await(SelectionKey.OP_CONNECT, timeoutMillis, "连接超时：" + address);
+                channel.finishConnect();
+            }
+            return conn;
+        } catch (IOException e) {
+            channel.close();
+            if (selector != null) {
+                selector.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 写出 out 缓冲区中的全部数据，写完后 out 处于可写入状态
+     */
+    void flush(long timeoutMillis) throws IOException {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                if (channel.write(out) == 0) {
+                    await(SelectionKey.OP_WRITE, timeoutMillis, "写入超时");
+                }
+            }
+        } finally {
+            out.clear();
+        }
+    }
+
+    /**
+     * 读取数据到 in 缓冲区，调用前后 in 均处于读模式
+     *
+     * @return 读到的字节数，-1 表示连接已关闭
+     */
+    int read(long timeoutMillis) throws IOException {
+        in.compact();
+        try {
+            int n = channel.read(in);
+            if (n == 0) {
+                await(SelectionKey.OP_READ, timeoutMillis, "读取超时");
+                n = channel.read(in);
+            }
+            return n;
+        } finally {
+            in.flip();
+        }
+    }
+
+    /**
+     * 空闲连接是否已不可用：已关闭、已被服务端关闭或收到了多余的数据
+     */
+    boolean isStale() {
+        if (!channel.isOpen() || in.hasRemaining()) {
+            return true;
+        }
+        try {
+            in.clear();
+            int n = channel.read(in);
+            in.flip();
+            return n != 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    boolean isReused() {
+        return served > 0;
+    }
+
+    void served() {
+        served++;
+        lastUsed = System.nanoTime();
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 从其他线程中止连接，阻塞中的读写随即抛出异常
+     */
+    void abort() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+
+    private void await(int ops, long timeoutMillis, String message) throws IOException {
+        try {
+            key.interestOps(ops);
+        } catch (CancelledKeyException e) {
+            throw new AsynchronousCloseException();
+        }
+        try {
+            int selected = selector.select(Math.max(1, timeoutMillis));
+            if (!channel.isOpen()) {
+                throw new AsynchronousCloseException();
+            }
+            if (selected == 0) {
+                throw new SocketTimeoutException(message);
+            }
+            selector.selectedKeys().clear();
+        } finally {
+            if (key.isValid()) {
+                key.interestOps(0);
+            }
+        }
+    }
+}
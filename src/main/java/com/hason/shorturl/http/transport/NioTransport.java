@@ -0,0 +1,565 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.common.Deadline;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.common.Utils;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.commons.lang3.Validate;
+import org.apache.http.Header;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 面向短网址接口的精简 HTTP/1.1 传输层，基于非阻塞 {@link java.nio.channels.SocketChannel}
+ *
+ * <pre>
+ *   1. 请求行以外的请求头按 (Host, 请求头数组, Content-Type) 预先编码并缓存，请求时直接写入连接的直接缓冲区
+ *   2. 响应由 {@link ResponseParser} 增量解析，不经过 Apache HttpClient 的实体、拦截器等通用处理
+ *   3. {@link #executeAll} 在一个连接上流水线发送至多 pipelineDepth 个请求，再依次读取响应
+ * </pre>
+ *
+ * 仅支持 http 协议，请求体只支持 json 字符串，适用于转换器固定形式的 GET 请求。
+ * 请求头中没有 Accept-Encoding 时声明支持 gzip、deflate，响应体边读取边解压。
+ * 空闲连接按路由缓存复用，被服务端关闭的连接在借出时检测并丢弃；
+ * 复用连接上的幂等请求失败时（服务端可能已关闭该连接），换一个连接重发未完成的请求。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/5
+ */
+public class NioTransport implements Transport, Closeable {
+
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private static final byte[] HTTP_VERSION = " HTTP/1.1\r\n".getBytes(ASCII);
+
+    /** 预编码请求头缓存的最大条目数，避免调用方每次传入新数组时无限增长 */
+    private static final int MAX_HEADER_BLOCKS = 64;
+
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int pipelineDepth;
+    private final int maxIdlePerRoute;
+    private final long idleTimeoutNanos;
+    private final int bufferSize;
+    private final DnsResolver dnsResolver;
+
+    private final ConcurrentMap<String, Queue<NioConnection>> idle = new ConcurrentHashMap<>();
+    private final ConcurrentMap<HeaderBlockKey, byte[]> headerBlocks = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    private NioTransport(Builder builder) {
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.pipelineDepth = builder.pipelineDepth;
+        this.maxIdlePerRoute = builder.maxIdlePerRoute;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.idleTimeout);
+        this.bufferSize = builder.bufferSize;
+        this.dnsResolver = builder.dnsResolver;
+    }
+
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    @Override
+    public TransportResponse execute(HttpConfig config) throws HttpProcessException {
+        TransportResponse response = executeAll(config, Collections.singletonList(config.url())).get(0);
+        if (config.isReturnRespHeaders()) {
+            config.headers(response.getHeaders());
+        }
+        return response;
+    }
+
+    /**
+     * 以相同的请求配置发送一组请求，同一路由的请求以流水线方式发送
+     *
+     * 由于 {@link HttpConfig} 的 url 按线程保存，批量请求的地址通过 urls 传入，
+     * 其余参数（请求方法、请求头、截止时间等）取自 config。
+     *
+     * @param config 请求参数配置
+     * @param urls   请求地址
+     * @return 与 urls 顺序一致的响应
+     * @throws HttpProcessException http处理异常，任一请求失败即抛出
+     */
+    public List<TransportResponse> executeAll(HttpConfig config, List<String> urls) throws HttpProcessException {
+        if (closed) {
+            throw new HttpProcessException("NioTransport 已关闭");
+        }
+        if (config.isAborted()) {
+            throw new HttpProcessException("请求已中止");
+        }
+        // 按路由分组，保持组内顺序
+        Map<String, List<Exchange>> routes = new LinkedHashMap<>();
+        List<Exchange> exchanges = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            Exchange exchange = new Exchange(config, url);
+            exchanges.add(exchange);
+            List<Exchange> group = routes.get(exchange.route);
+            if (group == null) {
+                group = new ArrayList<>();
+                routes.put(exchange.route, group);
+            }
+            group.add(exchange);
+        }
+        try {
+            for (List<Exchange> group : routes.values()) {
+                executeRoute(config, group);
+            }
+        } finally {
+            config.attach(null);
+        }
+
+        List<TransportResponse> responses = new ArrayList<>(exchanges.size());
+        for (Exchange exchange : exchanges) {
+            responses.add(exchange.response);
+        }
+        return responses;
+    }
+
+    /**
+     * 当前空闲连接数
+     */
+    public int getIdleConnections() {
+        int count = 0;
+        for (Queue<NioConnection> queue : idle.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * 关闭全部空闲连接，之后不再接受请求
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Queue<NioConnection> queue : idle.values()) {
+            NioConnection conn;
+            while ((conn = queue.poll()) != null) {
+                conn.close();
+            }
+        }
+    }
+
+    private void executeRoute(HttpConfig config, List<Exchange> group) throws HttpProcessException {
+        int next = 0;
+        while (next < group.size()) {
+            int end = Math.min(group.size(), next + pipelineDepth);
+            List<Exchange> window = group.subList(next, end);
+            NioConnection conn = lease(window.get(0));
+            boolean reused = conn.isReused();
+            int completed = 0;
+            try {
+                completed = pipeline(config, conn, window);
+            } catch (HttpProcessException | RuntimeException e) {
+                conn.close();
+                throw e;
+            } catch (IOException e) {
+                conn.close();
+                for (int i = 0; i < window.size(); i++) {
+                    if (window.get(i).response != null) {
+                        completed = i + 1;
+                    }
+                }
+                if (!reused || !idempotent(window.subList(completed, window.size()))
+                        || config.isAborted()) {
+                    throw new HttpProcessException(e);
+                }
+                // 复用的连接可能已被服务端关闭，换一个连接重发未完成的请求
+                Utils.info("连接已失效，重发请求：" + window.get(completed).url);
+            }
+            next += completed;
+        }
+    }
+
+    /**
+     * 在连接上流水线发送窗口中的请求并读取响应
+     *
+     * @return 完成的请求数，服务端要求关闭连接时可能小于窗口大小
+     */
+    private int pipeline(HttpConfig config, final NioConnection conn, List<Exchange> window)
+            throws IOException, HttpProcessException {
+        config.attach(new Cancellable() {
+            @Override
+            public boolean cancel() {
+                conn.abort();
+                return true;
+            }
+        });
+        Deadline deadline = config.deadline();
+        for (Exchange exchange : window) {
+            encode(conn, exchange, deadline);
+        }
+        conn.flush(timeout(deadline));
+
+        for (int i = 0; i < window.size(); i++) {
+            Exchange exchange = window.get(i);
+            ResponseParser parser = conn.parser;
+            parser.reset(exchange.method == HttpMethod.HEAD);
+            boolean done = parser.parse(conn.in);
+            while (!done) {
+                int n = conn.read(timeout(deadline));
+                if (n < 0) {
+                    done = parser.endOfStream();
+                } else if (n > 0) {
+                    done = parser.parse(conn.in);
+                }
+            }
+            exchange.response = parser.toResponse();
+            conn.served();
+            if (!parser.isKeepAlive()) {
+                conn.close();
+                return i + 1;
+            }
+        }
+        release(conn);
+        return window.size();
+    }
+
+    /**
+     * 把请求编码到连接的写缓冲区，缓冲区满时先写出
+     */
+    private void encode(NioConnection conn, Exchange exchange, Deadline deadline)
+            throws IOException, HttpProcessException {
+        long timeout = timeout(deadline);
+        put(conn, exchange.method.getName().getBytes(ASCII), timeout);
+        put(conn, (byte) ' ', timeout);
+        String target = exchange.target;
+        for (int i = 0; i < target.length(); i++) {
+            put(conn, (byte) target.charAt(i), timeout);
+        }
+        put(conn, HTTP_VERSION, timeout);
+        put(conn, headerBlock(exchange), timeout);
+        if (exchange.body != null) {
+            put(conn, ("Content-Length: " + exchange.body.length).getBytes(ASCII), timeout);
+            put(conn, CRLF, timeout);
+        }
+        put(conn, CRLF, timeout);
+        if (exchange.body != null) {
+            put(conn, exchange.body, timeout);
+        }
+    }
+
+    private static void put(NioConnection conn, byte b, long timeout) throws IOException {
+        if (!conn.out.hasRemaining()) {
+            conn.flush(timeout);
+        }
+        conn.out.put(b);
+    }
+
+    private static void put(NioConnection conn, byte[] bytes, long timeout) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!conn.out.hasRemaining()) {
+                conn.flush(timeout);
+            }
+            int n = Math.min(conn.out.remaining(), bytes.length - offset);
+            conn.out.put(bytes, offset, n);
+            offset += n;
+        }
+    }
+
+    /**
+     * 获取预编码的请求头：Host 及 config 中的请求头，每行以 CRLF 结尾
+     */
+    private byte[] headerBlock(Exchange exchange) {
+        Header[] headers = exchange.headers;
+        HeaderBlockKey key = new HeaderBlockKey(exchange.hostHeader, headers, exchange.contentType);
+        byte[] block = headerBlocks.get(key);
+        if (block == null) {
+            block = encodeHeaders(exchange.hostHeader, headers, exchange.contentType);
+            if (headerBlocks.size() < MAX_HEADER_BLOCKS) {
+                headerBlocks.putIfAbsent(key, block);
+            }
+        }
+        return block;
+    }
+
+    private static byte[] encodeHeaders(String host, Header[] headers, String defaultContentType) {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append("Host: ").append(host).append("\r\n");
+        boolean hasContentType = false;
+        boolean hasAcceptEncoding = false;
+        if (headers != null) {
+            for (Header header : headers) {
+                if ("Host".equalsIgnoreCase(header.getName()) || "Content-Length".equalsIgnoreCase(header.getName())) {
+                    continue;
+                }
+                hasContentType |= "Content-Type".equalsIgnoreCase(header.getName());
+                hasAcceptEncoding |= "Accept-Encoding".equalsIgnoreCase(header.getName());
+                builder.append(header.getName()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        if (!hasAcceptEncoding) {
+            builder.append("Accept-Encoding: ").append(ContentDecoder.ACCEPT_ENCODING).append("\r\n");
+        }
+        if (defaultContentType != null && !hasContentType) {
+            builder.append("Content-Type: ").append(defaultContentType).append("\r\n");
+        }
+        return builder.toString().getBytes(ASCII);
+    }
+
+    /**
+     * 借出路由的空闲连接，没有可用连接时新建
+     */
+    private NioConnection lease(Exchange exchange) throws HttpProcessException {
+        Queue<NioConnection> queue = idle.get(exchange.route);
+        if (queue != null) {
+            long now = System.nanoTime();
+            NioConnection conn;
+            while ((conn = queue.poll()) != null) {
+                if (now - conn.getLastUsed() < idleTimeoutNanos && !conn.isStale()) {
+                    return conn;
+                }
+                conn.close();
+            }
+        }
+        try {
+            InetSocketAddress address = new InetSocketAddress(
+                    dnsResolver.resolve(exchange.host)[0], exchange.port);
+            long timeout = connectTimeout;
+            Deadline deadline = exchange.deadline;
+            if (deadline != null) {
+                timeout = Math.min(timeout, timeout(deadline));
+            }
+            return NioConnection.open(exchange.route, address, timeout, bufferSize);
+        } catch (IOException e) {
+            throw new HttpProcessException(e);
+        }
+    }
+
+    private void release(NioConnection conn) {
+        Queue<NioConnection> queue = idle.get(conn.route);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<>();
+            Queue<NioConnection> existing = idle.putIfAbsent(conn.route, queue);
+            if (existing != null) {
+                queue = existing;
+            }
+        }
+        if (closed || queue.size() >= maxIdlePerRoute) {
+            conn.close();
+        } else {
+            queue.offer(conn);
+        }
+    }
+
+    /**
+     * 单次读写的超时时间：socketTimeout 与截止时间剩余时间中较小者
+     */
+    private long timeout(Deadline deadline) throws HttpProcessException {
+        if (deadline == null) {
+            return socketTimeout;
+        }
+        long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+        if (remaining <= 0) {
+            throw new HttpProcessException("请求已超过截止时间");
+        }
+        return Math.min(socketTimeout, remaining);
+    }
+
+    private static boolean idempotent(List<Exchange> exchanges) {
+        for (Exchange exchange : exchanges) {
+            if (exchange.method != HttpMethod.GET && exchange.method != HttpMethod.HEAD) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 一次请求及其响应
+     */
+    private static final class Exchange {
+
+        final String url;
+        final Header[] headers;
+        final Deadline deadline;
+        final HttpMethod method;
+        final String host;
+        final int port;
+        final String route;
+        final String hostHeader;
+        final String target;
+        final byte[] body;
+        final String contentType;
+        TransportResponse response;
+
+        Exchange(HttpConfig config, String url) throws HttpProcessException {
+            this.url = url;
+            this.headers = config.headers();
+            this.deadline = config.deadline();
+            this.method = config.method() == null ? HttpMethod.GET : config.method();
+            URI uri;
+            try {
+                // 请求行按 ISO-8859-1 写出，非 ASCII 字符先按 UTF-8 百分号编码
+                uri = new URI(new URI(url).toASCIIString());
+            } catch (URISyntaxException e) {
+                throw new HttpProcessException(e);
+            }
+            if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+                throw new HttpProcessException("NioTransport 仅支持 http 协议：" + url);
+            }
+            this.host = uri.getHost();
+            this.port = uri.getPort() == -1 ? 80 : uri.getPort();
+            this.route = host + ":" + port;
+            this.hostHeader = uri.getPort() == -1 ? host : route;
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            this.target = uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+
+            if (method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH) {
+                // json() 会把请求体以 ENTITY_STRING 放入 map，其余参数才是表单参数
+                if (config.map() != null && !config.map().isEmpty()
+                        && !(config.map().size() == 1 && config.map().containsKey(Utils.ENTITY_STRING))) {
+                    throw new HttpProcessException("NioTransport 不支持表单参数，请使用 json");
+                }
+                try {
+                    this.body = config.json() == null ? new byte[0] : config.json().getBytes(config.inenc());
+                } catch (UnsupportedEncodingException e) {
+                    throw new HttpProcessException(e);
+                }
+                this.contentType = "text/plain; charset=" + config.inenc();
+            } else if (method == HttpMethod.GET || method == HttpMethod.HEAD
+                    || method == HttpMethod.DELETE || method == HttpMethod.OPTIONS) {
+                this.body = null;
+                this.contentType = null;
+            } else {
+                throw new HttpProcessException("NioTransport 不支持的请求方法：" + method);
+            }
+        }
+    }
+
+    /**
+     * 预编码请求头的缓存键，请求头数组按引用比较（转换器使用固定的请求头数组）；
+     * 默认的 Content-Type 随请求编码变化，也是键的一部分，没有请求体时为 null
+     */
+    private static final class HeaderBlockKey {
+
+        private final String host;
+        private final Header[] headers;
+        private final String contentType;
+
+        HeaderBlockKey(String host, Header[] headers, String contentType) {
+            this.host = host;
+            this.headers = headers;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HeaderBlockKey)) {
+                return false;
+            }
+            HeaderBlockKey other = (HeaderBlockKey) o;
+            return headers == other.headers && host.equals(other.host)
+                    && (contentType == null ? other.contentType == null : contentType.equals(other.contentType));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * host.hashCode() + System.identityHashCode(headers)
+                    + (contentType == null ? 0 : contentType.hashCode());
+        }
+    }
+
+    public static class Builder {
+
+        private int connectTimeout = 5000;
+        private int socketTimeout = 10000;
+        private int pipelineDepth = 8;
+        private int maxIdlePerRoute = 20;
+        private long idleTimeout = 30000;
+        private int bufferSize = 16 * 1024;
+        private DnsResolver dnsResolver = SystemDefaultDnsResolver.INSTANCE;
+
+        /**
+         * 建立连接超时时间，单位-毫秒
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            Validate.isTrue(connectTimeout > 0, "connectTimeout 必须大于 0");
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * 单次读写的超时时间，单位-毫秒
+         */
+        public Builder socketTimeout(int socketTimeout) {
+            Validate.isTrue(socketTimeout > 0, "socketTimeout 必须大于 0");
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        /**
+         * 每个连接上流水线发送的最大请求数，1 表示不使用流水线
+         */
+        public Builder pipelineDepth(int pipelineDepth) {
+            Validate.isTrue(pipelineDepth > 0, "pipelineDepth 必须大于 0");
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        /**
+         * 每个路由缓存的最大空闲连接数
+         */
+        public Builder maxIdlePerRoute(int maxIdlePerRoute) {
+            Validate.isTrue(maxIdlePerRoute >= 0, "maxIdlePerRoute 不能小于 0");
+            this.maxIdlePerRoute = maxIdlePerRoute;
+            return this;
+        }
+
+        /**
+         * 空闲连接的最长保留时间，单位-毫秒
+         */
+        public Builder idleTimeout(long idleTimeout) {
+            Validate.isTrue(idleTimeout > 0, "idleTimeout 必须大于 0");
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * 每个连接的读、写直接缓冲区大小，单位-字节
+         */
+        public Builder bufferSize(int bufferSize) {
+            Validate.isTrue(bufferSize >= 1024, "bufferSize 不能小于 1024");
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * DNS 解析器，如 {@link com.hason.shorturl.http.common.CachingDnsResolver}
+         */
+        public Builder dnsResolver(DnsResolver dnsResolver) {
+            this.dnsResolver = Validate.notNull(dnsResolver, "dnsResolver");
+            return this;
+        }
+
+        public NioTransport build() {
+            return new NioTransport(this);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.hason.shorturl.http.transport;
+
+import org.apache.http.Header;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * HTTP/1.1 响应的增量解析器
+ *
+ * 每次读到数据后调用 {@link #parse(ByteBuffer)}，解析器只消费属于当前响应的字节，
+ * 流水线中后续响应的字节保留在缓冲区中，供下一次解析。
+ * 支持 Content-Length、chunked 及以关闭连接结束的响应体。
+ * gzip、deflate 编码的响应体在解析的同时由 {@link ContentDecoder} 流式解压，
+ * 解压后移除 Content-Encoding、Content-Length 响应头。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/5
+ */
+final class ResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_CLOSE, DONE
+    }
+
+    private final byte[] copyBuffer = new byte[8192];
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean lineDone;
+
+    private State state;
+    private boolean headRequest;
+    private boolean http10;
+    private int statusCode;
+    private List<Header> headers;
+    private long contentLength;
+    private boolean chunked;
+    private String contentEncoding;
+    private boolean decoded;
+    private boolean keepAlive;
+    private long remaining;
+    private ByteArrayOutputStream body;
+    private OutputStream bodySink;
+
+    /**
+     * 开始解析新的响应
+     *
+     * @param headRequest 是否为 HEAD 请求的响应（没有响应体）
+     */
+    void reset(boolean headRequest) {
+        this.headRequest = headRequest;
+        this.state = State.STATUS_LINE;
+        this.lineLength = 0;
+        this.lineDone = false;
+        this.headers = new ArrayList<>(16);
+        this.contentLength = -1;
+        this.chunked = false;
+        this.contentEncoding = null;
+        this.decoded = false;
+        this.keepAlive = true;
+        this.http10 = false;
+        this.body = null;
+        this.bodySink = null;
+    }
+
+    /**
+     * 解析缓冲区中的数据
+     *
+     * @param in 读模式的缓冲区
+     * @return 响应是否已完整
+     * @throws IOException 响应格式错误
+     */
+    boolean parse(ByteBuffer in) throws IOException {
+        while (state != State.DONE && in.hasRemaining()) {
+            switch (state) {
+                case STATUS_LINE:
+                    if (readLine(in)) {
+                        parseStatusLine();
+                        state = State.HEADERS;
+                    }
+                    break;
+                case HEADERS:
+                    if (readLine(in)) {
+                        if (lineLength == 0) {
+                            endOfHeaders();
+                        } else {
+                            parseHeader();
+                        }
+                    }
+                    break;
+                case BODY:
+                    remaining -= copy(in, remaining);
+                    if (remaining == 0) {
+                        finish();
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(in)) {
+                        remaining = parseChunkSize();
+                        state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                    }
+                    break;
+                case CHUNK_DATA:
+                    remaining -= copy(in, remaining);
+                    if (remaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(in)) {
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILERS:
+                    if (readLine(in) && lineLength == 0) {
+                        finish();
+                    }
+                    break;
+                case UNTIL_CLOSE:
+                    copy(in, Long.MAX_VALUE);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * 连接已关闭（读到流末尾）
+     *
+     * @return 响应是否已完整
+     * @throws IOException 响应不完整
+     */
+    boolean endOfStream() throws IOException {
+        if (state == State.UNTIL_CLOSE) {
+            finish();
+            return true;
+        }
+        if (state != State.DONE) {
+            throw new ProtocolException("连接已关闭，响应不完整");
+        }
+        return true;
+    }
+
+    /**
+     * 是否尚未收到当前响应的任何数据
+     */
+    boolean isIdle() {
+        return state == State.STATUS_LINE && lineLength == 0;
+    }
+
+    /**
+     * 响应结束后连接是否可以继续使用
+     */
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    TransportResponse toResponse() {
+        String charset = null;
+        if (decoded) {
+            for (Iterator<Header> it = headers.iterator(); it.hasNext(); ) {
+                String name = it.next().getName();
+                if ("Content-Encoding".equalsIgnoreCase(name) || "Content-Length".equalsIgnoreCase(name)) {
+                    it.remove();
+                }
+            }
+        }
+        Header[] headerArray = headers.toArray(new Header[headers.size()]);
+        for (Header header : headerArray) {
+            if ("Content-Type".equalsIgnoreCase(header.getName())) {
+                try {
+                    Charset cs = ContentType.parse(header.getValue()).getCharset();
+                    charset = cs == null ? null : cs.name();
+                } catch (RuntimeException e) {
+                    // 无法识别的 Content-Type，按未声明编码处理
+                }
+                break;
+            }
+        }
+        return new TransportResponse(statusCode, headerArray, body == null ? null : body.toByteArray(), charset);
+    }
+
+    private void parseStatusLine() throws IOException {
+        // HTTP/1.1 200 OK
+        if (lineLength < 12 || line[0] != 'H' || line[8] != ' ') {
+            throw new ProtocolException("无效的状态行：" + lineString());
+        }
+        http10 = line[7] == '0';
+        statusCode = (line[9] - '0') * 100 + (line[10] - '0') * 10 + (line[11] - '0');
+        if (statusCode < 100 || statusCode > 999) {
+            throw new ProtocolException("无效的状态行：" + lineString());
+        }
+        keepAlive = !http10;
+    }
+
+    private void parseHeader() throws IOException {
+        int colon = -1;
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= 0) {
+            throw new ProtocolException("无效的响应头：" + lineString());
+        }
+        String name = new String(line, 0, colon, ASCII);
+        String value = new String(line, colon + 1, lineLength - colon - 1, ASCII).trim();
+        headers.add(new BasicHeader(name, value));
+
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            try {
+                contentLength = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("无效的 Content-Length：" + value);
+            }
+        } else if ("Content-Encoding".equalsIgnoreCase(name)) {
+            contentEncoding = value;
+        } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+            chunked = value.toLowerCase().contains("chunked");
+        } else if ("Connection".equalsIgnoreCase(name)) {
+            String token = value.toLowerCase();
+            if (token.contains("close")) {
+                keepAlive = false;
+            } else if (token.contains("keep-alive")) {
+                keepAlive = true;
+            }
+        }
+    }
+
+    private void endOfHeaders() throws IOException {
+        if (statusCode >= 100 && statusCode < 200) {
+            // 1xx 临时响应，继续读取最终响应
+            reset(headRequest);
+            return;
+        }
+        body = new ByteArrayOutputStream(contentLength > 0 ? (int) Math.min(contentLength, 1 << 20) : 256);
+        bodySink = body;
+        if (headRequest || statusCode == 204 || statusCode == 304 || (!chunked && contentLength == 0)) {
+            finish();
+            return;
+        }
+        if (ContentDecoder.isSupported(contentEncoding)) {
+            bodySink = ContentDecoder.decoding(body, contentEncoding);
+            decoded = true;
+        }
+        if (chunked) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength > 0) {
+            remaining = contentLength;
+            state = State.BODY;
+        } else {
+            keepAlive = false;
+            state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private long parseChunkSize() throws IOException {
+        long size = 0;
+        int digits = 0;
+        for (int i = 0; i < lineLength; i++) {
+            int c = line[i];
+            int d;
+            if (c >= '0' && c <= '9') {
+                d = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                d = c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                d = c - 'A' + 10;
+            } else if (c == ';' || c == ' ') {// chunk 扩展
+                break;
+            } else {
+                throw new ProtocolException("无效的 chunk 长度：" + lineString());
+            }
+            if (++digits > 15) {
+                throw new ProtocolException("chunk 长度过大：" + lineString());
+            }
+            size = (size << 4) | d;
+        }
+        if (digits == 0) {
+            throw new ProtocolException("无效的 chunk 长度：" + lineString());
+        }
+        return size;
+    }
+
+    private void finish() throws IOException {
+        state = State.DONE;
+        if (decoded) {
+            // 检查压缩数据是否完整
+            bodySink.close();
+        }
+    }
+
+    /**
+     * 读取一行（不含 CRLF）到 line 中
+     *
+     * @return 是否已读到完整的一行
+     */
+    private boolean readLine(ByteBuffer in) throws IOException {
+        if (lineDone) {
+            lineLength = 0;
+            lineDone = false;
+        }
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                lineDone = true;
+                return true;
+            }
+            if (lineLength == line.length) {
+                if (lineLength >= MAX_LINE_LENGTH) {
+                    throw new ProtocolException("响应行过长");
+                }
+                byte[] larger = new byte[Math.min(line.length * 2, MAX_LINE_LENGTH)];
+                System.arraycopy(line, 0, larger, 0, lineLength);
+                line = larger;
+            }
+            line[lineLength++] = b;
+        }
+        return false;
+    }
+
+    /**
+     * 从缓冲区复制至多 limit 个字节到响应体
+     *
+     * @return 实际复制的字节数
+     */
+    private int copy(ByteBuffer in, long limit) throws IOException {
+        int n = (int) Math.min(Math.min(limit, in.remaining()), copyBuffer.length);
+        in.get(copyBuffer, 0, n);
+        bodySink.write(copyBuffer, 0, n);
+        return n;
+    }
+
+    private String lineString() {
+        return new String(line, 0, lineLength, ASCII);
+    }
+}
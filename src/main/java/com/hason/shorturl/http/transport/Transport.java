@@ -0,0 +1,32 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.exception.HttpProcessException;
+
+/**
+ * HTTP 传输层 SPI，把转换器与具体的 HTTP 实现解耦
+ *
+ * <pre>
+ *   {@link ApacheTransport}   ：基于 Apache HttpClient（默认）
+ *   {@link JdkTransport}      ：基于 JDK HttpURLConnection，无第三方依赖
+ *   {@link InMemoryTransport} ：内存桩，用于测试
+ * </pre>
+ *
+ * 实现类需要遵守 {@link HttpConfig} 中的截止时间，并通过 {@link HttpConfig#attach} 支持中止请求。
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/4
+ */
+public interface Transport {
+
+    /**
+     * 发送请求
+     *
+     * @param config 请求参数配置
+     * @return 响应
+     * @throws HttpProcessException http处理异常
+     */
+    TransportResponse execute(HttpConfig config) throws HttpProcessException;
+
+}
@@ -0,0 +1,91 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.apache.http.Header;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * 传输层的响应
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/4
+ */
+public class TransportResponse {
+
+    private static final Header[] EMPTY_HEADERS = new Header[0];
+
+    private final int statusCode;
+    private final Header[] headers;
+    private final byte[] body;
+    private final String charset;
+
+    /**
+     * @param statusCode 状态码
+     * @param headers    响应头
+     * @param body       响应内容
+     * @param charset    响应头 Content-Type 中声明的编码，没有时为 null
+     */
+    public TransportResponse(int statusCode, Header[] headers, byte[] body, String charset) {
+        this.statusCode = statusCode;
+        this.headers = headers == null ? EMPTY_HEADERS : headers;
+        this.body = body == null ? new byte[0] : body;
+        this.charset = charset;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Header[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * 获取第一个指定名称的响应头的值，不存在时返回 null
+     *
+     * @param name 响应头名称，不区分大小写
+     * @return 响应头的值
+     */
+    public String getHeader(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * 以流的方式读取响应内容
+     */
+    public InputStream getBodyAsStream() {
+        return new ByteArrayInputStream(body);
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * 把响应内容转换为字符串，优先使用响应头声明的编码
+     *
+     * @param defaultEncoding 响应未声明编码时使用的编码
+     * @return 响应内容
+     * @throws HttpProcessException 不支持的编码
+     */
+    public String asString(String defaultEncoding) throws HttpProcessException {
+        try {
+            return new String(body, charset != null ? charset : defaultEncoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new HttpProcessException(e);
+        }
+    }
+}
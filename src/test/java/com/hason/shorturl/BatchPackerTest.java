@@ -0,0 +1,60 @@
+package com.hason.shorturl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * BatchPacker Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/12
+ */
+public class BatchPackerTest {
+
+    @Test
+    public void testPackWithinCountAndBytes() {
+        List<String> items = new ArrayList<>();
+        long[] sizes = new long[45];
+        for (int i = 0; i < sizes.length; i++) {
+            items.add("u" + i);
+            sizes[i] = i % 3 == 0 ? 300 : 50;
+        }
+        BatchPacker.Packing packing = BatchPacker.custom().maxCount(20).maxBytes(1000).build().pack(items, sizes);
+
+        // 总字节数 15 * 300 + 30 * 50 = 6000，至少需要 6 个请求
+        assertEquals(6, packing.getBatches().size());
+        assertTrue(packing.getOversized().isEmpty());
+        HashSet<String> packed = new HashSet<>();
+        for (List<String> batch : packing.getBatches()) {
+            assertTrue(batch.size() <= 20);
+            long bytes = 0;
+            for (String item : batch) {
+                bytes += sizes[items.indexOf(item)];
+                assertTrue(packed.add(item));
+            }
+            assertTrue(bytes <= 1000);
+        }
+        assertEquals(items.size(), packed.size());
+    }
+
+    @Test
+    public void testCountLimitAndOversized() {
+        List<String> items = Arrays.asList("a", "b", "c", "d", "e", "huge");
+        long[] sizes = {1, 1, 1, 1, 1, 5000};
+        BatchPacker packer = BatchPacker.custom().maxCount(2).maxBytes(100).build();
+        BatchPacker.Packing packing = packer.pack(items, sizes);
+
+        assertEquals(3, packing.getBatches().size());
+        assertEquals(Arrays.asList("huge"), packing.getOversized());
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c")),
+                packer.partition(Arrays.asList("a", "b", "c")));
+    }
+}
@@ -0,0 +1,42 @@
+package com.hason.shorturl;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * BatchSizeController Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/13
+ */
+public class BatchSizeControllerTest {
+
+    /**
+     * 模拟延迟 50ms + size² ms，吞吐量 size / (50 + size²) 在 size = 7 时最大
+     */
+    @Test
+    public void testConvergesToBestThroughput() {
+        BatchSizeController controller = BatchSizeController.custom()
+                .maxSize(20).step(1).window(1).exploreRate(0).build();
+        assertEquals(20, controller.current());
+        for (int i = 0; i < 100; i++) {
+            int size = controller.current();
+            controller.record(size, 50 + size * size, TimeUnit.MILLISECONDS, true);
+        }
+        assertEquals(7, controller.current());
+    }
+
+    @Test
+    public void testOverloadHalvesSize() {
+        BatchSizeController controller = BatchSizeController.custom().minSize(4).maxSize(20).build();
+        controller.record(20, 5, TimeUnit.SECONDS, false);
+        assertEquals(10, controller.current());
+        controller.record(10, 5, TimeUnit.SECONDS, false);
+        controller.record(5, 5, TimeUnit.SECONDS, false);
+        assertEquals(4, controller.current());
+    }
+}
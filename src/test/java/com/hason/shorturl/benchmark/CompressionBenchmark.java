@@ -0,0 +1,172 @@
+package com.hason.shorturl.benchmark;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpHeader;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.transport.ApacheTransport;
+import com.hason.shorturl.http.transport.NioTransport;
+import com.hason.shorturl.http.transport.Transport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 响应压缩基准测试：一次批量缩短 20 个网址的响应，gzip vs 不压缩
+ *
+ * 本地启动 HTTP 服务端，请求声明支持 gzip 时返回预先压缩的响应。
+ * 耗时反映客户端解压的 CPU 开销（本地回环没有带宽瓶颈），
+ * 传输字节数在结束时输出，反映节省的带宽。
+ *
+ * 运行：mvn test-compile 后执行本类的 main 方法
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/6
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int URLS = 20;
+
+    private static final Header[] IDENTITY = HttpHeader.custom().acceptEncoding("identity").build();
+    private static final Header[] GZIP = HttpHeader.custom().acceptEncoding("gzip, deflate").build();
+
+    private final AtomicLong identityBytes = new AtomicLong();
+    private final AtomicLong gzipBytes = new AtomicLong();
+    private final AtomicLong identityResponses = new AtomicLong();
+    private final AtomicLong gzipResponses = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private NioTransport nio;
+    private String url;
+
+    @Setup
+    public void setup() throws IOException {
+        final byte[] plain = sinaResponse().getBytes("UTF-8");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(plain);
+        }
+        final byte[] compressed = buffer.toByteArray();
+
+        // 服务端分别写出响应头和响应体，关闭 Nagle 算法，避免与延迟确认叠加产生 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                boolean gzip = accept != null && accept.contains("gzip");
+                byte[] body = gzip ? compressed : plain;
+                (gzip ? gzipBytes : identityBytes).addAndGet(body.length);
+                (gzip ? gzipResponses : identityResponses).incrementAndGet();
+                exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+                if (gzip) {
+                    exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/short_url/shorten.json?source=1";
+        nio = NioTransport.custom().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        nio.close();
+        server.stop(0);
+        serverExecutor.shutdown();
+        System.out.println();
+        System.out.println("identity: " + average(identityBytes, identityResponses) + " bytes/response");
+        System.out.println("gzip    : " + average(gzipBytes, gzipResponses) + " bytes/response");
+    }
+
+    @Benchmark
+    public int apacheIdentity() throws Exception {
+        return send(ApacheTransport.INSTANCE, IDENTITY);
+    }
+
+    @Benchmark
+    public int apacheGzip() throws Exception {
+        return send(ApacheTransport.INSTANCE, GZIP);
+    }
+
+    @Benchmark
+    public int nioIdentity() throws Exception {
+        return send(nio, IDENTITY);
+    }
+
+    @Benchmark
+    public int nioGzip() throws Exception {
+        return send(nio, GZIP);
+    }
+
+    private int send(Transport transport, Header[] headers) throws Exception {
+        HttpConfig config = HttpConfig.custom().method(HttpMethod.GET).headers(headers).url(url);
+        return transport.execute(config).getBody().length;
+    }
+
+    private static long average(AtomicLong bytes, AtomicLong responses) {
+        return responses.get() == 0 ? 0 : bytes.get() / responses.get();
+    }
+
+    /**
+     * 与新浪批量缩短接口相近的响应：20 个网址
+     */
+    private static String sinaResponse() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < URLS; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"url_short\":\"http://t.cn/Rgj").append(Integer.toString(10000 + i * 7919, 36))
+                    .append("\",\"url_long\":\"https://www.example.com/articles/2018/12/")
+                    .append(i).append("/some-long-article-title-").append(i * 31)
+                    .append("?utm_source=weibo&utm_medium=share\",\"type\":0}");
+        }
+        return builder.append(']').toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CompressionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,145 @@
+package com.hason.shorturl.benchmark;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.transport.ApacheTransport;
+import com.hason.shorturl.http.transport.NioTransport;
+import com.hason.shorturl.http.transport.TransportResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传输层基准测试：Apache HttpClient（HttpClientUtil 路径） vs {@link NioTransport}
+ *
+ * 本地启动 HTTP 服务端，返回与新浪接口相近的 json 响应。
+ * single* 发送单个 GET 请求；batch* 发送 20 个请求，NioTransport 以流水线方式发送。
+ * 除耗时外，可加 -prof gc 比较每次操作的内存分配。
+ *
+ * 运行：mvn test-compile 后执行本类的 main 方法
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/5
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NioTransportBenchmark {
+
+    private static final int BATCH = 20;
+
+    private static final byte[] RESPONSE = ("[{\"url_short\":\"http://t.cn/RgjXS2s\","
+            + "\"url_long\":\"https://www.example.com/some/long/path?with=query\",\"type\":0}]").getBytes();
+
+    private static final Header[] HEADERS = {
+            new BasicHeader("Accept", "application/json;charset=UTF-8"),
+            new BasicHeader("User-Agent", "shorturl-benchmark")
+    };
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private NioTransport nio;
+    private String url;
+    private List<String> urls;
+
+    @Setup
+    public void setup() throws IOException {
+        // 服务端分别写出响应头和响应体，关闭 Nagle 算法，避免与延迟确认叠加产生 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "application/json;charset=UTF-8");
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(RESPONSE);
+                }
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(4);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/short_url/shorten.json?source=1";
+        url = base + "&url_long=https%3A%2F%2Fwww.example.com";
+        urls = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            urls.add(base + "&url_long=https%3A%2F%2Fwww.example.com%2F" + i);
+        }
+        nio = NioTransport.custom().pipelineDepth(BATCH).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        nio.close();
+        server.stop(0);
+        serverExecutor.shutdown();
+    }
+
+    @Benchmark
+    public int singleApache() throws Exception {
+        return ApacheTransport.INSTANCE.execute(config().url(url)).getBody().length;
+    }
+
+    @Benchmark
+    public int singleNio() throws Exception {
+        return nio.execute(config().url(url)).getBody().length;
+    }
+
+    @Benchmark
+    public int batchApache() throws Exception {
+        int total = 0;
+        for (String u : urls) {
+            total += ApacheTransport.INSTANCE.execute(config().url(u)).getBody().length;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int batchNioPipelined() throws Exception {
+        int total = 0;
+        for (TransportResponse response : nio.executeAll(config(), urls)) {
+            total += response.getBody().length;
+        }
+        return total;
+    }
+
+    private static HttpConfig config() {
+        return HttpConfig.custom().method(HttpMethod.GET).headers(HEADERS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(NioTransportBenchmark.class.getSimpleName()).build()).run();
+    }
+}
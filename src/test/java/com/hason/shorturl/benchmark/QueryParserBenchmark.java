@@ -0,0 +1,97 @@
+package com.hason.shorturl.benchmark;
+
+import com.hason.shorturl.http.common.Utils;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询字符串解析基准测试：Utils.checkHasParas 的单次遍历解析 vs 原实现
+ *
+ * 原实现多次 indexOf、split("&")、生成 String[][] 和 Map 后再转为参数列表。
+ * 以 GC profiler 运行，gc.alloc.rate.norm 反映每次调用分配的字节数。
+ *
+ * 运行：mvn test-compile 后执行本类的 main 方法
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryParserBenchmark {
+
+    /** 典型的缩短接口请求地址 */
+    private static final String URL = "http://api.t.sina.com.cn/short_url/shorten.json"
+            + "?source=2849184197&url_long=http%3A%2F%2Fwww.example.com%2Fpath%2Fto%2Fpage%3Fid%3D12345"
+            + "&url_long=http%3A%2F%2Fwww.example.com%2Fother&format=json&callback=cb";
+
+    @Benchmark
+    public List<NameValuePair> singlePass() throws UnsupportedEncodingException {
+        List<NameValuePair> nvps = new ArrayList<>();
+        Utils.checkHasParas(URL, nvps, "UTF-8");
+        return nvps;
+    }
+
+    @Benchmark
+    public List<NameValuePair> legacy() {
+        List<NameValuePair> nvps = new ArrayList<>();
+        legacyCheckHasParas(URL, nvps);
+        return nvps;
+    }
+
+    /**
+     * 原实现（不含特殊实体的处理）
+     */
+    private static String legacyCheckHasParas(String url, List<NameValuePair> nvps) {
+        if (url.contains("?") && url.indexOf("?") < url.indexOf("=")) {
+            String[] p = url.substring(url.indexOf("?") + 1).split("&");
+            String[][] ps = new String[p.length][2];
+            int pos;
+            for (int i = 0; i < p.length; i++) {
+                pos = p[i].indexOf("=");
+                ps[i][0] = p[i].substring(0, pos);
+                ps[i][1] = p[i].substring(pos + 1);
+            }
+            Map<String, Object> map = new HashMap<String, Object>();
+            for (String[] para : ps) {
+                map.put(para[0], para[1]);
+            }
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                nvps.add(new BasicNameValuePair(entry.getKey(), String.valueOf(entry.getValue())));
+            }
+            url = url.substring(0, url.indexOf("?"));
+        }
+        return url;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryParserBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
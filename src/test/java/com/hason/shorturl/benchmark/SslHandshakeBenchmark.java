@@ -0,0 +1,124 @@
+package com.hason.shorturl.benchmark;
+
+import com.hason.shorturl.http.common.SSLs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TLS 握手开销基准测试：完整握手 vs 会话恢复
+ *
+ * 本地启动 TLS 服务端（证书见 test/resources/benchmark.jks），客户端使用 {@link SSLs} 创建的 socket 工厂建立连接。
+ * fullHandshake 每次连接后使会话失效，模拟没有会话缓存时每个新连接的开销；
+ * resumedHandshake 复用 SSLs 的会话缓存，即新的默认配置下池中新建连接的开销。
+ *
+ * 运行：mvn test-compile 后执行本类的 main 方法
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/3
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SslHandshakeBenchmark {
+
+    private static final char[] PASSWORD = "benchmark".toCharArray();
+
+    private SSLServerSocket serverSocket;
+    private Thread acceptor;
+    private SSLSocketFactory clientFactory;
+    private InetAddress host;
+    private int port;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+        try (InputStream in = getClass().getResourceAsStream("/benchmark.jks")) {
+            keyStore.load(in, PASSWORD);
+        }
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, PASSWORD);
+        SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(kmf.getKeyManagers(), null, null);
+
+        host = InetAddress.getLoopbackAddress();
+        serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 128, host);
+        port = serverSocket.getLocalPort();
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try (Socket socket = serverSocket.accept()) {
+                        socket.setTcpNoDelay(true);
+                        // 握手后写出一个字节，TLSv1.3 的会话票据随之下发给客户端
+                        socket.getOutputStream().write(1);
+                        socket.getOutputStream().flush();
+                    } catch (Exception e) {
+                        // 忽略单个连接的异常
+                    }
+                }
+            }
+        }, "tls-benchmark-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        clientFactory = SSLs.custom().getSSLSF(SSLs.SSLProtocolVersion.TLS);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        acceptor.join(1000);
+    }
+
+    @Benchmark
+    public int fullHandshake() throws Exception {
+        return connect(true);
+    }
+
+    @Benchmark
+    public int resumedHandshake() throws Exception {
+        return connect(false);
+    }
+
+    private int connect(boolean invalidate) throws Exception {
+        try (SSLSocket socket = (SSLSocket) clientFactory.createSocket(host, port)) {
+            socket.setTcpNoDelay(true);
+            int b = socket.getInputStream().read();
+            if (invalidate) {
+                socket.getSession().invalidate();
+            }
+            return b;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SslHandshakeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,173 @@
+package com.hason.shorturl.bulk;
+
+import com.hason.shorturl.ProviderErrorException;
+import com.hason.shorturl.ResultSink;
+import com.hason.shorturl.StreamingUrlConverter;
+import com.hason.shorturl.UrlConvertException;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * BulkFilePipeline Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/15
+ */
+public class BulkFilePipelineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 遇到 "down" 时模拟熔断，关闭 broken 后恢复；
+     * 第一次遇到 "timeout"、"limit" 时分别模拟请求超时、频率超限
+     */
+    private static class FakeConverter implements StreamingUrlConverter {
+
+        volatile boolean broken = true;
+        final Set<String> seen = new HashSet<>();
+
+        @Override
+        public void shorten(Iterator<String> longUrls, ResultSink sink) {
+            while (longUrls.hasNext()) {
+                String url = longUrls.next();
+                if (url.equals("down") && broken) {
+                    throw new UrlConvertException("熔断");
+                }
+                if (url.equals("timeout") && seen.add(url)) {
+                    sink.onFailure(url, new UrlConvertException("调用 API 缩短网址失败", new HttpProcessException("timeout")));
+                } else if (url.equals("limit") && seen.add(url)) {
+                    sink.onFailure(url, new ProviderErrorException("rate limit", "10023", false, true));
+                } else if (url.equals("bad")) {
+                    sink.onFailure(url, new UrlConvertException("invalid, url"));
+                } else {
+                    sink.onSuccess(url, "s/" + url);
+                }
+            }
+        }
+
+        @Override
+        public void lengthen(Iterator<String> shortUrls, ResultSink sink) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, String> shorten(Collection<String> longUrls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<String, String> lengthen(Collection<String> shortUrls) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String shorten(String longUrl) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String lengthen(String shortUrl) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        File input = folder.newFile("in.csv");
+        File output = new File(folder.getRoot(), "out.csv");
+        File checkpoint = new File(folder.getRoot(), "out.checkpoint");
+        Files.write(input.toPath(), Arrays.asList("id,url", "1,a", "2,\"bad\"", "", "3,down", "4,c", "5"),
+                StandardCharsets.UTF_8);
+        FakeConverter converter = new FakeConverter();
+
+        try (BulkFilePipeline pipeline = BulkFilePipeline.custom(converter)
+                .column(1).header(true).window(2).parallelism(1).build()) {
+            try {
+                pipeline.run(input, output, checkpoint);
+                fail();
+            } catch (UrlConvertException e) {
+                assertEquals(2, Checkpoint.load(checkpoint).getLines());
+            }
+            // 模拟崩溃前写出的未提交内容
+            Files.write(output.toPath(), "garbage\n".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            converter.broken = false;
+            Checkpoint done = pipeline.run(input, output, checkpoint);
+
+            assertEquals(5, done.getLines());
+            assertEquals(3, done.getSucceeded());
+            assertEquals(Arrays.asList("id,url,result,error", "1,a,s/a,", "2,\"bad\",,\"invalid, url\"",
+                    "3,down,s/down,", "4,c,s/c,", "5,,缺少网址列"),
+                    Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testTransientFailureNotCommitted() throws Exception {
+        File input = folder.newFile("in.csv");
+        File output = new File(folder.getRoot(), "out.csv");
+        File checkpoint = new File(folder.getRoot(), "out.checkpoint");
+        Files.write(input.toPath(), Arrays.asList("a", "timeout", "limit", "c"), StandardCharsets.UTF_8);
+
+        try (BulkFilePipeline pipeline = BulkFilePipeline.custom(new FakeConverter())
+                .window(1).parallelism(1).build()) {
+            for (int committed = 1; committed <= 2; committed++) {
+                try {
+                    pipeline.run(input, output, checkpoint);
+                    fail();
+                } catch (UrlConvertException e) {
+                    assertEquals(committed, Checkpoint.load(checkpoint).getLines());
+                }
+            }
+            Checkpoint done = pipeline.run(input, output, checkpoint);
+
+            assertEquals(4, done.getSucceeded());
+            assertEquals(Arrays.asList("a,s/a,", "timeout,s/timeout,", "limit,s/limit,", "c,s/c,"),
+                    Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testHeaderOnly() throws Exception {
+        File input = folder.newFile("in.csv");
+        File output = new File(folder.getRoot(), "out.csv");
+        File checkpoint = new File(folder.getRoot(), "out.checkpoint");
+        Files.write(input.toPath(), Arrays.asList("id,url"), StandardCharsets.UTF_8);
+
+        try (BulkFilePipeline pipeline = BulkFilePipeline.custom(new FakeConverter()).header(true).build()) {
+            pipeline.run(input, output, checkpoint);
+            Checkpoint done = pipeline.run(input, output, checkpoint);
+
+            assertEquals(input.length(), done.getInputOffset());
+            assertEquals(output.length(), done.getOutputOffset());
+            assertEquals(Arrays.asList("id,url,result,error"),
+                    Files.readAllLines(output.toPath(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testField() {
+        assertEquals("b", BulkFilePipeline.field("a, b ,c", 1));
+        assertEquals("x,\"y", BulkFilePipeline.field("a,\"x,\"\"y\",c", 1));
+        assertEquals(null, BulkFilePipeline.field("a,b", 2));
+    }
+}
@@ -0,0 +1,101 @@
+package com.hason.shorturl.client;
+
+import com.hason.shorturl.UrlConvertException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * RedirectResolvingUrlConverter Unit Test，本地 HttpServer 的 /n 重定向到 /(n-1)，/0 为最终地址；
+ * /busy 返回 503，/nohead 对 HEAD 返回 405、对 GET 重定向到 /0
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/16
+ */
+public class RedirectResolvingUrlConverterTest {
+
+    private HttpServer server;
+    private RedirectResolvingUrlConverter converter;
+    private String base;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Connection", "close");
+                String path = exchange.getRequestURI().getPath().substring(1);
+                if (path.equals("busy")) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else if (path.equals("nohead")) {
+                    if (exchange.getRequestMethod().equals("HEAD")) {
+                        exchange.sendResponseHeaders(405, -1);
+                    } else {
+                        exchange.getResponseHeaders().add("Location", "/0");
+                        exchange.sendResponseHeaders(302, -1);
+                    }
+                } else if (!path.equals("0")) {
+                    exchange.getResponseHeaders().add("Location", "/" + (Integer.parseInt(path) - 1));
+                    exchange.sendResponseHeaders(302, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        converter = RedirectResolvingUrlConverter.custom().maxRedirects(3).cache(0, 1000).build();
+    }
+
+    @After
+    public void close() {
+        converter.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testExactlyMaxRedirects() {
+        assertEquals(base + "0", converter.lengthen(base + "3"));
+    }
+
+    @Test
+    public void testTooManyRedirects() {
+        try {
+            converter.lengthen(base + "4");
+            fail();
+        } catch (UrlConvertException e) {
+            assertEquals("重定向次数超过 3：" + base + "4", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testServerErrorNotCached() {
+        try (RedirectResolvingUrlConverter cached = RedirectResolvingUrlConverter.custom().build()) {
+            try {
+                cached.lengthen(base + "busy");
+                fail();
+            } catch (UrlConvertException e) {
+                assertEquals("还原网址失败，状态码 503：" + base + "busy", e.getMessage());
+            }
+            assertEquals(0, cached.getCacheSize());
+        }
+    }
+
+    @Test
+    public void testFallbackToGetWhenHeadNotAllowed() {
+        assertEquals(base + "0", converter.lengthen(base + "nohead"));
+    }
+}
@@ -0,0 +1,227 @@
+package com.hason.shorturl.client;
+
+import com.hason.shorturl.BatchResult;
+import com.hason.shorturl.Priority;
+import com.hason.shorturl.ProviderErrorException;
+import com.hason.shorturl.ResultSink;
+import com.hason.shorturl.UrlConvertException;
+import com.hason.shorturl.UrlOperation;
+import com.hason.shorturl.http.policy.CircuitBreaker;
+import com.hason.shorturl.http.policy.RetryPolicy;
+import com.hason.shorturl.http.transport.InMemoryTransport;
+import com.hason.shorturl.http.transport.TransportResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SinaHttpUrlConverter Unit Test，以内存传输层模拟新浪 API
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/11
+ */
+public class SinaHttpUrlConverterTest {
+
+    private static final String API = "http://api.t.sina.com.cn/short_url/shorten.json?source=3271760578";
+
+    private SinaHttpUrlConverter converter;
+    private InMemoryTransport transport;
+
+    @Before
+    public void init() {
+        converter = new SinaHttpUrlConverter();
+        transport = new InMemoryTransport();
+        converter.setTransport(transport);
+        converter.setCircuitBreaker(null);
+        converter.setRetryPolicy(RetryPolicy.custom().backoff(0, 0).build());
+    }
+
+    @After
+    public void close() {
+        converter.close();
+    }
+
+    private static String item(String longUrl, String shortUrl) {
+        return "{\"url_short\":\"" + shortUrl + "\",\"url_long\":\"" + longUrl + "\",\"type\":0}";
+    }
+
+    @Test
+    public void testOnlyFailedUrlsRetried() {
+        transport.stub(API + "&url_long=a&url_long=b&url_long=c", "[" + item("a", "s/a") + ","
+                + "{\"error_code\":\"10009\",\"error\":\"busy\",\"url_long\":\"b\"}," + item("c", "s/c") + "]");
+        transport.stub(API + "&url_long=b", "[" + item("b", "s/b") + "]");
+
+        BatchResult result = converter.shortenBatch(Arrays.asList("a", "b", "c"), null, Priority.BULK);
+
+        assertTrue(result.isComplete());
+        assertEquals("s/b", result.getResults().get("b"));
+        assertEquals(Arrays.asList(API + "&url_long=a&url_long=b&url_long=c", API + "&url_long=b"),
+                transport.getRequests());
+    }
+
+    @Test
+    public void testBatchErrorIsolatesBadUrl() {
+        String error = "{\"error_code\":\"10017\",\"error\":\"invalid url\"}";
+        transport.stub(API + "&url_long=bad&url_long=a", error);
+        transport.stub(API + "&url_long=a", "[" + item("a", "s/a") + "]");
+        transport.stub(API + "&url_long=bad", error);
+
+        BatchResult result = converter.shortenBatch(Arrays.asList("a", "bad"), null, Priority.BULK);
+
+        assertEquals("s/a", result.getResults().get("a"));
+        assertEquals("10017", ((ProviderErrorException) result.getFailures().get("bad")).getErrorCode());
+        assertEquals(3, transport.getRequests().size());
+    }
+
+    @Test
+    public void testRateLimitFailsWholeBatch() {
+        String error = "{\"error_code\":\"10023\",\"error\":\"user requests out of rate limit\"}";
+        transport.stub(API + "&url_long=a&url_long=b&url_long=c&url_long=d", error);
+
+        BatchResult result = converter.shortenBatch(Arrays.asList("a", "b", "c", "d"), null, Priority.BULK);
+
+        assertEquals(4, result.getFailures().size());
+        assertEquals("10023", ((ProviderErrorException) result.getFailures().get("c")).getErrorCode());
+        assertEquals(1, transport.getRequests().size());
+        // 频率超限与批量大小无关，不调整
+        assertEquals(20, converter.getBatchSize(UrlOperation.SHORTEN));
+    }
+
+    @Test
+    public void testBusyProviderShrinksBatchSize() {
+        transport.stub(API + "&url_long=a&url_long=b", "{\"error_code\":\"10009\",\"error\":\"busy\"}");
+        converter.setRetryPolicy(RetryPolicy.custom().maxAttempts(1).backoff(0, 0).build());
+
+        converter.shortenBatch(Arrays.asList("a", "b"), null, Priority.BULK);
+
+        assertEquals(10, converter.getBatchSize(UrlOperation.SHORTEN));
+    }
+
+    @Test
+    public void testBatchLatencyExcludesParsing() {
+        final List<Long> elapsed = new ArrayList<>();
+        SinaHttpUrlConverter slow = new SinaHttpUrlConverter() {
+            @Override
+            protected BatchResult handleShortenBatch(String result, List<String> longUrls) {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.handleShortenBatch(result, longUrls);
+            }
+
+            @Override
+            protected void onBatchRequest(UrlOperation operation, int size, long elapsedNanos, boolean success) {
+                elapsed.add(elapsedNanos);
+            }
+        };
+        try {
+            slow.setTransport(transport);
+            transport.stub(API + "&url_long=a", "[" + item("a", "s/a") + "]");
+
+            slow.shortenBatch(Collections.singleton("a"), null, Priority.BULK);
+
+            // 只统计传输层调用的耗时
+            assertEquals(1, elapsed.size());
+            assertTrue(elapsed.get(0) < TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            slow.close();
+        }
+    }
+
+    @Test
+    public void testProviderErrorsOpenCircuitBreaker() {
+        CircuitBreaker breaker = CircuitBreaker.custom("sina").windowSize(2).minimumCalls(2).build();
+        converter.setCircuitBreaker(breaker);
+        converter.setRetryPolicy(RetryPolicy.custom().maxAttempts(1).backoff(0, 0).build());
+        transport.stub(API + "&url_long=a", new TransportResponse(503, null, null, null));
+        transport.stub(API + "&url_long=b", "{\"error_code\":\"10001\",\"error\":\"system error\"}");
+
+        converter.shortenBatch(Collections.singleton("a"), null, Priority.BULK);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        converter.shortenBatch(Collections.singleton("b"), null, Priority.BULK);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOversizedUrlSentAsPost() {
+        StringBuilder longUrl = new StringBuilder("http://example.com/?q=");
+        for (int i = 0; i < 200; i++) {
+            longUrl.append("abcdefghij");
+        }
+        transport.stub("http://api.t.sina.com.cn/short_url/shorten.json", "[" + item("x", "s/long") + "]");
+        transport.stub(API + "&url_long=a", "[" + item("a", "s/a") + "]");
+        converter.setMaxUriLength(1000);
+
+        BatchResult result = converter.shortenBatch(Arrays.asList("a", longUrl.toString()), null, Priority.BULK);
+
+        assertTrue(result.isComplete());
+        assertEquals("s/long", result.getResults().get(longUrl.toString()));
+        assertTrue(transport.getRequests().contains("http://api.t.sina.com.cn/short_url/shorten.json"));
+    }
+
+    @Test
+    public void testDuplicatesAndCachedUrlsNotRequested() {
+        transport.stub(API + "&url_long=a", "[" + item("a", "s/a") + "]");
+        transport.stub(API + "&url_long=b", "[" + item("b", "s/b") + "]");
+        converter.shortenBatch(Arrays.asList("a", "a"), null, Priority.BULK);
+
+        BatchResult result = converter.shortenBatch(Arrays.asList("b", "a", "b"), null, Priority.BULK);
+
+        assertTrue(result.isComplete());
+        assertEquals(Arrays.asList("b", "a"), new ArrayList<>(result.getResults().keySet()));
+        assertEquals(Arrays.asList(API + "&url_long=a", API + "&url_long=b"), transport.getRequests());
+    }
+
+    @Test
+    public void testStreamingByWindow() {
+        transport.stub(API + "&url_long=a&url_long=b", "[" + item("a", "s/a") + "," + item("b", "s/b") + "]");
+        transport.stub(API + "&url_long=c", "[{\"error_code\":\"10017\",\"error\":\"invalid url\",\"url_long\":\"c\"}]");
+        converter.setStreamWindow(2);
+        final List<String> events = new ArrayList<>();
+
+        converter.shorten(Arrays.asList("a", "b", "c").iterator(), new ResultSink() {
+            @Override
+            public void onSuccess(String url, String result) {
+                events.add(url + "=" + result);
+            }
+
+            @Override
+            public void onFailure(String url, UrlConvertException cause) {
+                events.add(url + "!");
+            }
+        });
+
+        assertEquals(Arrays.asList("a=s/a", "b=s/b", "c!"), events);
+        assertEquals(2, transport.getRequests().size());
+    }
+
+    @Test
+    public void testBulkheadsSharedAcrossInstances() {
+        try (SinaHttpUrlConverter other = new SinaHttpUrlConverter()) {
+            assertSame(converter.getBulkhead(UrlOperation.LENGTHEN, Priority.BULK),
+                    other.getBulkhead(UrlOperation.LENGTHEN, Priority.BULK));
+        }
+    }
+
+    @Test
+    public void testCircuitBreakerSharedAcrossInstances() {
+        try (SinaHttpUrlConverter one = new SinaHttpUrlConverter();
+             SinaHttpUrlConverter other = new SinaHttpUrlConverter()) {
+            assertSame(one.getCircuitBreaker(), other.getCircuitBreaker());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.hason.shorturl.http.builder;
+
+import com.hason.shorturl.http.policy.RetryPolicy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * HCB 重试策略 Unit Test，本地 HttpServer 始终返回 503
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class HCBTest {
+
+    private HttpServer server;
+    private String url;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                hits.incrementAndGet();
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(503, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void close() {
+        server.stop(0);
+    }
+
+    private void execute(CloseableHttpClient client, HttpUriRequest request, HttpContext context) throws IOException {
+        try (CloseableHttpResponse response = client.execute(request, context)) {
+            assertEquals(503, response.getStatusLine().getStatusCode());
+        }
+    }
+
+    @Test
+    public void testRetryOnlyIdempotentRequests() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom().maxAttempts(3).backoff(0, 0).build();
+        try (CloseableHttpClient client = HCB.custom().retry(policy).build()) {
+            execute(client, new HttpGet(url), new BasicHttpContext());
+            assertEquals(3, hits.getAndSet(0));
+
+            execute(client, new HttpPost(url), new BasicHttpContext());
+            assertEquals(1, hits.get());
+        }
+    }
+
+    @Test
+    public void testBudgetDepositedByCaller() throws Exception {
+        RetryPolicy policy = RetryPolicy.custom().maxAttempts(1).budget(0.5, 10).build();
+        // 先消耗掉部分预算，以便观察存入
+        policy.tryAcquireRetry(0);
+        try (CloseableHttpClient client = HCB.custom().retry(policy).build()) {
+            execute(client, new HttpGet(url), new BasicHttpContext());
+            assertEquals(9.5, policy.getTokens(), 0);
+
+            HttpContext context = new BasicHttpContext();
+            context.setAttribute(HCB.RETRY_BUDGET_DEPOSITED, Boolean.TRUE);
+            execute(client, new HttpGet(url), context);
+            assertEquals(9.5, policy.getTokens(), 0);
+        }
+    }
+}
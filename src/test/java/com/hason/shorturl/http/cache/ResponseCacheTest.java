@@ -0,0 +1,167 @@
+package com.hason.shorturl.http.cache;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ResponseCache Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/7
+ */
+public class ResponseCacheTest {
+
+    private static final String URL = "http://example.com/a";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 按顺序返回预设响应，并记录收到的请求
+     */
+    private static class StubExecutor implements ResponseCache.RequestExecutor {
+
+        final List<HttpResponse> responses = new ArrayList<>();
+        final List<HttpRequestBase> requests = new ArrayList<>();
+
+        @Override
+        public HttpResponse execute(HttpRequestBase request) {
+            requests.add(request);
+            return responses.remove(0);
+        }
+    }
+
+    private static HttpResponse response(int status, String body, String... headers) throws IOException {
+        BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        if (body != null) {
+            response.setEntity(new StringEntity(body));
+        }
+        return response;
+    }
+
+    private static String body(HttpResponse response) throws IOException {
+        return EntityUtils.toString(response.getEntity());
+    }
+
+    @Test
+    public void testFreshResponseServedFromCache() throws Exception {
+        ResponseCache cache = ResponseCache.custom().build();
+        StubExecutor executor = new StubExecutor();
+        executor.responses.add(response(200, "v1", "Cache-Control", "max-age=60"));
+
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals(1, executor.requests.size());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testStaleResponseRevalidated() throws Exception {
+        ResponseCache cache = ResponseCache.custom().build();
+        StubExecutor executor = new StubExecutor();
+        executor.responses.add(response(200, "v1", "Cache-Control", "max-age=0", "ETag", "\"e1\""));
+        executor.responses.add(response(304, null, "Cache-Control", "max-age=60"));
+
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("\"e1\"", executor.requests.get(1).getFirstHeader("If-None-Match").getValue());
+        assertEquals(1, cache.getRevalidationCount());
+
+        // 304 带来了新的新鲜期
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals(2, executor.requests.size());
+    }
+
+    @Test
+    public void testNoStoreAndInvalidation() throws Exception {
+        ResponseCache cache = ResponseCache.custom().build();
+        StubExecutor executor = new StubExecutor();
+        executor.responses.add(response(200, "v1", "Cache-Control", "no-store"));
+        executor.responses.add(response(200, "v2", "Expires",
+                DateUtils.formatDate(new Date(System.currentTimeMillis() + 60000))));
+        executor.responses.add(response(200, "ok"));
+        executor.responses.add(response(200, "v3", "Cache-Control", "max-age=60"));
+
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("v2", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("v2", body(cache.execute(new HttpGet(URL), executor)));
+        cache.execute(new HttpPost(URL), executor);
+        assertEquals("v3", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals(4, executor.requests.size());
+    }
+
+    @Test
+    public void testAuthorizedAndPrivateResponsesNotShared() throws Exception {
+        ResponseCache cache = ResponseCache.custom().build();
+        StubExecutor executor = new StubExecutor();
+        executor.responses.add(response(200, "alice", "Cache-Control", "max-age=60"));
+        executor.responses.add(response(200, "anonymous", "Cache-Control", "private, max-age=60"));
+        executor.responses.add(response(200, "anonymous", "Cache-Control", "max-age=60"));
+
+        HttpGet authorized = new HttpGet(URL);
+        authorized.setHeader("Authorization", "Bearer alice");
+        assertEquals("alice", body(cache.execute(authorized, executor)));
+        assertEquals("anonymous", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals("anonymous", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals(3, executor.requests.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void testCallerConditionalRequestKeepsEntry() throws Exception {
+        ResponseCache cache = ResponseCache.custom().build();
+        StubExecutor executor = new StubExecutor();
+        executor.responses.add(response(200, "v1", "Cache-Control", "max-age=0", "ETag", "\"e1\""));
+        executor.responses.add(response(304, null));
+        executor.responses.add(response(304, null, "Cache-Control", "max-age=60"));
+
+        cache.execute(new HttpGet(URL), executor);
+        HttpGet conditional = new HttpGet(URL);
+        conditional.setHeader("If-None-Match", "\"e1\"");
+        assertEquals(304, cache.execute(conditional, executor).getStatusLine().getStatusCode());
+
+        assertEquals("v1", body(cache.execute(new HttpGet(URL), executor)));
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void testOverflowToDisk() throws Exception {
+        ResponseCache cache = ResponseCache.custom()
+                .maxMemoryBytes(2048)
+                .disk(folder.newFolder("cache"), 1024 * 1024)
+                .build();
+        StubExecutor executor = new StubExecutor();
+        for (int i = 0; i < 10; i++) {
+            executor.responses.add(response(200, "body-" + i, "Cache-Control", "max-age=60"));
+            cache.execute(new HttpGet(URL + i), executor);
+        }
+        assertTrue(cache.getDiskEntries() > 0);
+        assertEquals(10, cache.getMemoryEntries() + cache.getDiskEntries());
+
+        // 从磁盘层读取，不访问网络
+        assertEquals("body-0", body(cache.execute(new HttpGet(URL + 0), executor)));
+        assertEquals(10, executor.requests.size());
+    }
+}
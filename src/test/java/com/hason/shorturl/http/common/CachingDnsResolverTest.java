@@ -0,0 +1,77 @@
+package com.hason.shorturl.http.common;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CachingDnsResolver Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class CachingDnsResolverTest {
+
+    /**
+     * 每次解析返回不同的地址（127.0.0.n），failing 时解析失败
+     */
+    private static class CountingResolver implements DnsResolver {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean failing;
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            if (failing) {
+                throw new UnknownHostException(host);
+            }
+            int n = calls.incrementAndGet();
+            return new InetAddress[]{InetAddress.getByAddress(host, new byte[]{127, 0, 0, (byte) n})};
+        }
+    }
+
+    @Test
+    public void testHitRefreshAndStale() throws Exception {
+        CountingResolver delegate = new CountingResolver();
+        CachingDnsResolver resolver = CachingDnsResolver.custom()
+                .delegate(delegate).ttl(300).refreshAhead(200).maxStale(60000).build();
+
+        InetAddress[] first = resolver.resolve("a");
+        assertArrayEquals(first, resolver.resolve("a"));
+        assertEquals(1, resolver.getHitCount());
+        assertEquals(1, delegate.calls.get());
+
+        // 进入提前刷新的区间：返回缓存的结果，后台刷新
+        Thread.sleep(150);
+        assertArrayEquals(first, resolver.resolve("a"));
+        for (int i = 0; i < 100 && delegate.calls.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, delegate.calls.get());
+        InetAddress[] refreshed = resolver.resolve("a");
+        assertEquals(2, refreshed[0].getAddress()[3]);
+
+        // 过期后解析失败，返回旧的结果
+        delegate.failing = true;
+        Thread.sleep(350);
+        assertArrayEquals(refreshed, resolver.resolve("a"));
+        assertEquals(1, resolver.getStaleHitCount());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        CachingDnsResolver resolver = CachingDnsResolver.custom().delegate(new CountingResolver()).maxSize(2).build();
+        for (int i = 0; i < 10; i++) {
+            resolver.resolve("host" + i);
+        }
+        assertTrue(resolver.size() <= 2);
+    }
+}
@@ -0,0 +1,100 @@
+package com.hason.shorturl.http.common;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Utils Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/10
+ */
+public class UtilsTest {
+
+    @Test
+    public void testCheckHasParas() throws Exception {
+        List<NameValuePair> nvps = new ArrayList<>();
+        String url = Utils.checkHasParas("http://example.com/a?b=1&c=%E4%B8%AD+%E6%96%87&b=2&flag&&d=x%ZZ#top",
+                nvps, "UTF-8");
+
+        assertEquals("http://example.com/a", url);
+        assertEquals(Arrays.<NameValuePair>asList(
+                new BasicNameValuePair("b", "1"),
+                new BasicNameValuePair("c", "中 文"),
+                new BasicNameValuePair("b", "2"),
+                new BasicNameValuePair("flag", ""),
+                new BasicNameValuePair("d", "x%ZZ")), nvps);
+    }
+
+    @Test
+    public void testCheckHasParasWithoutQuery() throws Exception {
+        List<NameValuePair> nvps = new ArrayList<>();
+        assertEquals("http://example.com/a?b", Utils.checkHasParas("http://example.com/a?b", nvps, "UTF-8"));
+        assertEquals("http://example.com/a=b", Utils.checkHasParas("http://example.com/a=b", nvps, "UTF-8"));
+        assertTrue(nvps.isEmpty());
+    }
+
+    @Test
+    public void testStreamEntity() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream in = new ByteArrayInputStream("hello".getBytes("UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        List<NameValuePair> nvps = new ArrayList<>();
+        HttpEntity entity = Utils.map2HttpEntity(nvps, HttpConfig.custom().stream(in, 5).map(), "UTF-8");
+
+        // 长度不是请求参数
+        assertTrue(nvps.isEmpty());
+        assertEquals(5, entity.getContentLength());
+        assertFalse(entity.isChunked());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals("hello", out.toString("UTF-8"));
+        assertTrue(closed[0]);
+
+        entity = Utils.map2HttpEntity(nvps, HttpConfig.custom().stream(in, -1).map(), "UTF-8");
+        assertTrue(entity.isChunked());
+    }
+
+    @Test
+    public void testSerializableEntity() throws Exception {
+        List<NameValuePair> nvps = new ArrayList<>();
+        HttpEntity entity = Utils.map2HttpEntity(nvps,
+                HttpConfig.custom().serializable(new int[]{1, 2, 3}).map(), "UTF-8");
+
+        assertTrue(entity.isChunked());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertArrayEquals(new int[]{1, 2, 3}, (int[]) in.readObject());
+        }
+    }
+
+    @Test
+    public void testBuildParas() {
+        Map<String, Object> map = Utils.buildParas("a=1&b=x%20y&a=2");
+        assertEquals(2, map.size());
+        assertEquals("2", map.get("a"));
+        assertEquals("x%20y", map.get("b"));
+    }
+}
@@ -0,0 +1,170 @@
+package com.hason.shorturl.http.download;
+
+import com.hason.shorturl.http.builder.HCB;
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * RangeDownloader Unit Test，以本地 HttpServer 模拟支持或不支持 Range 的服务端
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class RangeDownloaderTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private CloseableHttpClient client;
+    private RangeDownloader downloader;
+    private String url;
+
+    private final byte[] content = new byte[10000];
+    /** 收到的 GET 请求的 Range 请求头，没有时为空字符串 */
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+    private volatile boolean acceptRanges = true;
+    /** 资源已变化，If-Range 不匹配 */
+    private volatile boolean changed;
+    /** 从该位置开始的分段只发送一半内容后断开连接，仅一次 */
+    private volatile long disconnectAt = -1;
+
+    @Before
+    public void init() throws IOException {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (acceptRanges) {
+                    exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                }
+                if ("HEAD".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                ranges.add(range == null ? "" : range);
+                Matcher matcher = range == null ? null : RANGE.matcher(range);
+                String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+                if (!acceptRanges || matcher == null || !matcher.matches() || changed || !ETAG.equals(ifRange)) {
+                    send(exchange, 200, 0, content.length, content.length);
+                    return;
+                }
+                int start = Integer.parseInt(matcher.group(1));
+                int end = Integer.parseInt(matcher.group(2));
+                exchange.getResponseHeaders().set("Content-Range",
+                        "bytes " + start + "-" + end + "/" + content.length);
+                if (start == disconnectAt) {
+                    disconnectAt = -1;
+                    send(exchange, 206, start, end + 1, (end + 1 - start) / 2);
+                } else {
+                    send(exchange, 206, start, end + 1, end + 1 - start);
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/file";
+        client = HCB.custom().build();
+        downloader = RangeDownloader.custom().chunkSize(3000).parallelism(2).maxRetries(2).build();
+    }
+
+    /**
+     * 声明 [from, to) 的长度，只发送前 written 个字节，不足时断开连接
+     */
+    private void send(HttpExchange exchange, int status, int from, int to, int written) throws IOException {
+        exchange.sendResponseHeaders(status, to - from);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(content, from, written);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @After
+    public void close() throws IOException {
+        downloader.close();
+        client.close();
+        server.stop(0);
+    }
+
+    private byte[] download() throws Exception {
+        File file = folder.newFile();
+        long length = downloader.download(HttpConfig.custom().client(client).url(url), file);
+        assertEquals(content.length, length);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Test
+    public void testRangeDownload() throws Exception {
+        assertArrayEquals(content, download());
+        assertEquals(4, ranges.size());
+        assertTrue(ranges.contains("bytes=9000-9999"));
+    }
+
+    @Test
+    public void testFallbackWithoutAcceptRanges() throws Exception {
+        acceptRanges = false;
+        assertArrayEquals(content, download());
+        assertEquals(Collections.singletonList(""), ranges);
+    }
+
+    @Test
+    public void testResumeAfterDisconnect() throws Exception {
+        disconnectAt = 3000;
+        assertArrayEquals(content, download());
+        // 从中断的位置续传
+        assertTrue(ranges.toString(), ranges.contains("bytes=4500-5999"));
+    }
+
+    @Test
+    public void testIfRangeMismatchFails() throws Exception {
+        changed = true;
+        try {
+            download();
+            fail();
+        } catch (HttpProcessException e) {
+            // 资源已变化，服务端返回完整内容，不能拼接到文件中
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.hason.shorturl.http.entity;
+
+import org.apache.http.entity.ContentType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FileChannelEntity、FileChannelBody Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class FileChannelEntityTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File newFile(byte[] content) throws Exception {
+        File file = folder.newFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static byte[] content() {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    @Test
+    public void testEntity() throws Exception {
+        byte[] content = content();
+        FileChannelEntity entity = new FileChannelEntity(newFile(content), ContentType.DEFAULT_BINARY);
+
+        assertEquals(content.length, entity.getContentLength());
+        assertEquals(ContentType.DEFAULT_BINARY.toString(), entity.getContentType().getValue());
+        assertTrue(entity.isRepeatable());
+        // 可重复发送
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            assertArrayEquals(content, out.toByteArray());
+        }
+    }
+
+    @Test
+    public void testBody() throws Exception {
+        byte[] content = content();
+        File file = newFile(content);
+        FileChannelBody body = new FileChannelBody(file);
+
+        assertEquals(content.length, body.getContentLength());
+        assertEquals(file.getName(), body.getFilename());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertArrayEquals(content, out.toByteArray());
+    }
+}
@@ -0,0 +1,81 @@
+package com.hason.shorturl.http.policy;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CircuitBreaker Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/11/20
+ */
+public class CircuitBreakerTest {
+
+    private CircuitBreaker breaker() {
+        return CircuitBreaker.custom("test")
+                .windowSize(10)
+                .minimumCalls(4)
+                .failureRateThreshold(50)
+                .slowCallDuration(1000)
+                .waitDurationInOpen(0)
+                .permittedCallsInHalfOpen(2)
+                .build();
+    }
+
+    @Test
+    public void testOpenOnFailureRate() {
+        CircuitBreaker breaker = breaker();
+        breaker.onSuccess(0);
+        breaker.onError(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testOpenOnSlowCallRate() {
+        CircuitBreaker breaker = CircuitBreaker.custom("slow")
+                .minimumCalls(2)
+                .slowCallRateThreshold(100)
+                .slowCallDuration(1)
+                .build();
+        breaker.onSuccess(2000000);
+        breaker.onSuccess(2000000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void testHalfOpenLimitsProbes() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(0);
+        }
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenFailureReopens() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(0);
+        }
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onError(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,120 @@
+package com.hason.shorturl.http.policy;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.hason.shorturl.http.transport.Transport;
+import com.hason.shorturl.http.transport.TransportResponse;
+import org.apache.http.concurrent.Cancellable;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * HedgingPolicy Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class HedgingPolicyTest {
+
+    private HedgingPolicy policy;
+
+    /**
+     * 第 n 次调用耗时 delays[n] 毫秒（超出时取最后一个），可被中止；响应内容为调用的序号
+     */
+    private static class SlowTransport implements Transport {
+
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        private final long[] delays;
+
+        SlowTransport(long... delays) {
+            this.delays = delays;
+        }
+
+        @Override
+        public TransportResponse execute(HttpConfig config) throws HttpProcessException {
+            int index;
+            synchronized (threads) {
+                index = threads.size();
+                threads.add(Thread.currentThread().getName());
+            }
+            final CountDownLatch aborted = new CountDownLatch(1);
+            config.attach(new Cancellable() {
+                @Override
+                public boolean cancel() {
+                    aborted.countDown();
+                    return true;
+                }
+            });
+            try {
+                if (aborted.await(delays[Math.min(index, delays.length - 1)], TimeUnit.MILLISECONDS)) {
+                    throw new HttpProcessException("aborted");
+                }
+            } catch (InterruptedException e) {
+                throw new HttpProcessException(e);
+            } finally {
+                config.attach(null);
+            }
+            return new TransportResponse(200, null, String.valueOf(index).getBytes(), "UTF-8");
+        }
+    }
+
+    private static HttpConfig get() {
+        return HttpConfig.custom().method(HttpMethod.GET).url("http://localhost/");
+    }
+
+    @After
+    public void close() {
+        policy.shutdown();
+    }
+
+    @Test
+    public void testNoHedgeBeforeDelay() throws Exception {
+        policy = HedgingPolicy.custom().delay(200, 200).build();
+        SlowTransport transport = new SlowTransport(0);
+
+        assertEquals("0", policy.execute(transport, get()).asString("UTF-8"));
+        Thread.sleep(300);
+        // 首个请求在调用方线程中执行，且在对冲延迟内返回，不发出对冲请求
+        assertEquals(Collections.singletonList(Thread.currentThread().getName()), transport.threads);
+    }
+
+    @Test
+    public void testHedgeAfterDelay() throws Exception {
+        policy = HedgingPolicy.custom().delay(50, 50).build();
+        SlowTransport transport = new SlowTransport(5000, 0);
+
+        long start = System.nanoTime();
+        TransportResponse response = policy.execute(transport, get());
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // 对冲请求先返回，首个请求被中止
+        assertEquals("1", response.asString("UTF-8"));
+        assertTrue(elapsed >= 50 && elapsed < 2000);
+        assertEquals(2, transport.threads.size());
+        assertNotEquals(Thread.currentThread().getName(), transport.threads.get(1));
+    }
+
+    @Test
+    public void testBudgetLimitsHedges() throws Exception {
+        // 只有初始的 1 个令牌，不再存入
+        policy = HedgingPolicy.custom().delay(20, 20).budget(0, 1).build();
+        SlowTransport transport = new SlowTransport(150);
+
+        policy.execute(transport, get());
+        assertEquals(2, transport.threads.size());
+        policy.execute(transport, get());
+        assertEquals(3, transport.threads.size());
+    }
+}
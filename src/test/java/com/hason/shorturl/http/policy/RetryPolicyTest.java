@@ -0,0 +1,71 @@
+package com.hason.shorturl.http.policy;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.junit.Test;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * RetryPolicy Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = RetryPolicy.custom().backoff(100, 1000).build();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.backoffMillis(1) <= 100);
+            assertTrue(policy.backoffMillis(3) <= 400);
+            // 不超过上限，attempt 很大时不溢出
+            long delay = policy.backoffMillis(100);
+            assertTrue(delay >= 0 && delay <= 1000);
+        }
+        assertEquals(0, RetryPolicy.custom().backoff(0, 0).build().backoffMillis(5));
+    }
+
+    @Test
+    public void testBudget() {
+        RetryPolicy policy = RetryPolicy.custom().maxAttempts(3).budget(0.5, 1).build();
+        assertTrue(policy.tryAcquireRetry(1));
+        // 预算耗尽
+        assertFalse(policy.tryAcquireRetry(1));
+        policy.onRequest();
+        assertFalse(policy.tryAcquireRetry(1));
+        policy.onRequest();
+        policy.onRequest();
+        // 不超过最大累积量
+        assertEquals(1, policy.getTokens(), 0);
+        // 超过最大执行次数
+        assertFalse(policy.tryAcquireRetry(3));
+        assertTrue(policy.tryAcquireRetry(2));
+    }
+
+    @Test
+    public void testRetryable() {
+        RetryPolicy policy = RetryPolicy.custom().build();
+        assertTrue(policy.isRetryable(new NoHttpResponseException("closed")));
+        assertTrue(policy.isRetryable(new UnknownHostException("a")));
+        assertTrue(policy.isRetryable(new IOException()));
+        assertFalse(policy.isRetryable(new RequestAbortedException("aborted")));
+        assertFalse(policy.isRetryable(new SSLException("handshake")));
+        assertFalse(policy.isRetryable(new SocketTimeoutException()));
+        assertTrue(RetryPolicy.custom().retryWhenInterruptedIO(true).build().isRetryable(new SocketTimeoutException()));
+
+        assertTrue(policy.isRetryable(503));
+        assertFalse(policy.isRetryable(500));
+        assertFalse(policy.isRetryable(429));
+        assertTrue(RetryPolicy.custom().retryStatusCodes(429).build().isRetryable(429));
+    }
+}
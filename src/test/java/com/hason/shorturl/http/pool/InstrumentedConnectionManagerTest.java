@@ -0,0 +1,41 @@
+package com.hason.shorturl.http.pool;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * InstrumentedConnectionManager Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/17
+ */
+public class InstrumentedConnectionManagerTest {
+
+    @Test
+    public void testStatsPrunedWhenRouteHasNoConnections() throws Exception {
+        InstrumentedConnectionManager manager = new InstrumentedConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.INSTANCE)
+                        .build());
+        HttpRoute route = new HttpRoute(new HttpHost("localhost", 80));
+
+        // 未建立连接即归还，连接不会放回连接池
+        HttpClientConnection connection = manager.requestConnection(route, null).get(1, TimeUnit.SECONDS);
+        manager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+        assertEquals(1, manager.getMetrics(route).getLeaseCount());
+
+        manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+        assertEquals(0, manager.getMetrics(route).getLeaseCount());
+        manager.shutdown();
+    }
+}
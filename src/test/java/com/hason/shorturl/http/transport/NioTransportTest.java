@@ -0,0 +1,142 @@
+package com.hason.shorturl.http.transport;
+
+import com.hason.shorturl.http.common.HttpConfig;
+import com.hason.shorturl.http.common.HttpHeader;
+import com.hason.shorturl.http.common.HttpMethod;
+import com.hason.shorturl.http.exception.HttpProcessException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.Header;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * NioTransport Unit Test，以本地 HttpServer 回显请求
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/16
+ */
+public class NioTransportTest {
+
+    private HttpServer server;
+    private NioTransport transport;
+    private String url;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] buffer = new byte[1024];
+                    for (int n; (n = in.read(buffer)) != -1; ) {
+                        body.write(buffer, 0, n);
+                    }
+                }
+                byte[] echo = (exchange.getRequestMethod() + " " + exchange.getRequestHeaders().getFirst("Content-Type")
+                        + " " + body.toString("UTF-8")).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, echo.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(echo);
+                }
+            }
+        });
+        server.createContext("/echo/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] echo = exchange.getRequestURI().getRawPath().getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, echo.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(echo);
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/short_url/shorten.json";
+        transport = NioTransport.custom().build();
+    }
+
+    @After
+    public void close() {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testPostJsonBody() throws Exception {
+        HttpConfig config = HttpConfig.custom().method(HttpMethod.POST).url(url)
+                .headers(HttpHeader.custom().contentType("application/x-www-form-urlencoded;charset=UTF-8").build())
+                .json("source=1&url_long=http%3A%2F%2Fa.com");
+
+        TransportResponse response = transport.execute(config);
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("POST application/x-www-form-urlencoded;charset=UTF-8 source=1&url_long=http%3A%2F%2Fa.com",
+                response.asString("UTF-8"));
+    }
+
+    @Test
+    public void testDefaultContentTypeFollowsEncoding() throws Exception {
+        // 相同的请求头数组，不同的请求编码
+        Header[] headers = HttpHeader.custom().build();
+        TransportResponse utf8 = transport.execute(HttpConfig.custom().method(HttpMethod.POST).url(url)
+                .headers(headers).inenc("UTF-8").json("a"));
+        TransportResponse gbk = transport.execute(HttpConfig.custom().method(HttpMethod.POST).url(url)
+                .headers(headers).inenc("GBK").json("a"));
+
+        assertEquals("POST text/plain; charset=UTF-8 a", utf8.asString("UTF-8"));
+        assertEquals("POST text/plain; charset=GBK a", gbk.asString("UTF-8"));
+    }
+
+    @Test
+    public void testExecuteAllPipelined() throws Exception {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo/";
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            urls.add(base + i);
+        }
+        urls.add(base + "短网址");
+
+        List<TransportResponse> responses = transport.executeAll(HttpConfig.custom(), urls);
+
+        assertEquals(urls.size(), responses.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("/echo/" + i, responses.get(i).asString("UTF-8"));
+        }
+        // 非 ASCII 字符按 UTF-8 百分号编码
+        assertEquals("/echo/%E7%9F%AD%E7%BD%91%E5%9D%80", responses.get(5).asString("UTF-8"));
+        // 全部请求在同一个连接上完成，连接放回空闲队列
+        assertEquals(1, transport.getIdleConnections());
+    }
+
+    @Test
+    public void testFormParametersRejected() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("url_long", "http://a.com");
+        try {
+            transport.execute(HttpConfig.custom().method(HttpMethod.POST).url(url).map(map));
+            fail();
+        } catch (HttpProcessException e) {
+            assertEquals("NioTransport 不支持表单参数，请使用 json", e.getMessage());
+        }
+    }
+}
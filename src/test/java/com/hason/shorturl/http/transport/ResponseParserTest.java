@@ -0,0 +1,138 @@
+package com.hason.shorturl.http.transport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ResponseParser Unit Test
+ *
+ * @author Huanghs
+ * @since 1.0
+ * @date 2018/12/5
+ */
+public class ResponseParserTest {
+
+    private static ByteBuffer buffer(String s) {
+        return ByteBuffer.wrap(s.getBytes());
+    }
+
+    @Test
+    public void testPipelinedResponses() throws Exception {
+        ByteBuffer in = buffer("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nContent-Type: text/plain; charset=UTF-8\r\n\r\nok"
+                + "HTTP/1.1 404 Not Found\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2;ext=1\r\nde\r\n0\r\n\r\n");
+        ResponseParser parser = new ResponseParser();
+
+        parser.reset(false);
+        assertTrue(parser.parse(in));
+        TransportResponse first = parser.toResponse();
+        assertEquals(200, first.getStatusCode());
+        assertEquals("ok", first.asString("ISO-8859-1"));
+        assertEquals("UTF-8", first.getCharset());
+        assertTrue(in.hasRemaining());
+
+        parser.reset(false);
+        assertTrue(parser.parse(in));
+        TransportResponse second = parser.toResponse();
+        assertEquals(404, second.getStatusCode());
+        assertEquals("abcde", second.asString("UTF-8"));
+        assertTrue(parser.isKeepAlive());
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    public void testIncrementalInput() throws Exception {
+        String response = "HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 5\r\nConnection: close\r\n\r\nhello";
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        for (int i = 0; i < response.length() - 1; i++) {
+            assertFalse(parser.parse(buffer(response.substring(i, i + 1))));
+        }
+        assertTrue(parser.parse(buffer(response.substring(response.length() - 1))));
+        assertEquals("hello", parser.toResponse().asString("UTF-8"));
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testBodyUntilClose() throws Exception {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        assertFalse(parser.parse(buffer("HTTP/1.0 200 OK\r\n\r\npartial")));
+        assertTrue(parser.endOfStream());
+        assertEquals("partial", parser.toResponse().asString("UTF-8"));
+        assertFalse(parser.isKeepAlive());
+    }
+
+    @Test
+    public void testHeadResponseHasNoBody() throws Exception {
+        ResponseParser parser = new ResponseParser();
+        parser.reset(true);
+        assertTrue(parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n")));
+        assertEquals(0, parser.toResponse().getBody().length);
+    }
+
+    @Test
+    public void testGzipChunkedDecodedIncrementally() throws Exception {
+        String json = repeat("{\"url_short\":\"http://t.cn/RgjXS2s\",\"type\":0},", 20);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json.getBytes("UTF-8"));
+        }
+        byte[] body = compressed.toByteArray();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        response.write(("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + Integer.toHexString(body.length) + "\r\n").getBytes());
+        response.write(body);
+        response.write("\r\n0\r\n\r\n".getBytes());
+        byte[] bytes = response.toByteArray();
+
+        ResponseParser parser = new ResponseParser();
+        parser.reset(false);
+        for (int i = 0; i < bytes.length - 1; i++) {
+            assertFalse(parser.parse(ByteBuffer.wrap(bytes, i, 1)));
+        }
+        assertTrue(parser.parse(ByteBuffer.wrap(bytes, bytes.length - 1, 1)));
+        TransportResponse decoded = parser.toResponse();
+        assertEquals(json, decoded.asString("UTF-8"));
+        assertNull(decoded.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void testRawAndZlibDeflate() throws Exception {
+        for (boolean nowrap : new boolean[]{false, true}) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflate = new DeflaterOutputStream(compressed, new Deflater(6, nowrap))) {
+                deflate.write("hello hello hello".getBytes());
+            }
+            byte[] body = compressed.toByteArray();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            response.write(("HTTP/1.1 200 OK\r\nContent-Encoding: deflate\r\nContent-Length: " + body.length
+                    + "\r\n\r\n").getBytes());
+            response.write(body);
+
+            ResponseParser parser = new ResponseParser();
+            parser.reset(false);
+            assertTrue(parser.parse(ByteBuffer.wrap(response.toByteArray())));
+            TransportResponse decoded = parser.toResponse();
+            assertEquals("hello hello hello", decoded.asString("UTF-8"));
+            assertNull(decoded.getHeader("Content-Length"));
+        }
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString();
+    }
+}